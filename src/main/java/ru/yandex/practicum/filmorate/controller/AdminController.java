@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.dal.ConnectionLimiter;
+import ru.yandex.practicum.filmorate.dto.CacheStatsDto;
+import ru.yandex.practicum.filmorate.dto.ConnectionLimiterStatsDto;
+import ru.yandex.practicum.filmorate.dto.PinningStatsDto;
+import ru.yandex.practicum.filmorate.dto.ReadCoalescingStatsDto;
+import ru.yandex.practicum.filmorate.dto.WriteBehindStatsDto;
+import ru.yandex.practicum.filmorate.model.LikesCountDrift;
+import ru.yandex.practicum.filmorate.service.VirtualThreadPinningMonitor;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.film.LikesCountReconciliationJob;
+
+import java.util.List;
+
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final LikesCountReconciliationJob likesCountReconciliationJob;
+    private final FilmService filmService;
+    private final ConnectionLimiter connectionLimiter;
+    private final VirtualThreadPinningMonitor pinningMonitor;
+
+    //Внеплановая сверка счетчиков лайков; возвращает найденные и исправленные расхождения
+    @PostMapping("/likes-count/reconcile")
+    public List<LikesCountDrift> reconcileLikesCount() {
+        log.debug("Начата внеплановая сверка счетчиков лайков");
+        return likesCountReconciliationJob.reconcile();
+    }
+
+    //Сверка рейтинга популярности в памяти с likeStorage; пустой список означает, что рейтинг согласован
+    @GetMapping("/popularity-index/check")
+    public List<LikesCountDrift> checkPopularityIndex() {
+        log.debug("Начата сверка рейтинга популярности с хранилищем лайков");
+        return filmService.checkPopularityIndex();
+    }
+
+    @GetMapping("/film-cache/stats")
+    public CacheStatsDto getFilmCacheStats() {
+        log.debug("Начат возврат статистики кэша фильмов");
+        return filmService.getFilmCacheStats();
+    }
+
+    //Сколько чтений фильма и рейтинга выполнено и сколько получили результат уже идущего одинакового чтения
+    @GetMapping("/read-coalescing/stats")
+    public ReadCoalescingStatsDto getReadCoalescingStats() {
+        log.debug("Начат возврат статистики объединения одинаковых чтений");
+        return filmService.getReadCoalescingStats();
+    }
+
+    @GetMapping("/likes-queue/stats")
+    public WriteBehindStatsDto getLikeWriteBehindStats() {
+        log.debug("Начат возврат статистики очереди записи лайков");
+        return filmService.getLikeWriteBehindStats();
+    }
+
+    //Внеочередная запись очереди лайков в базу
+    @PostMapping("/likes-queue/flush")
+    public void flushLikeWriteBehind() {
+        log.debug("Начата внеочередная запись очереди лайков");
+        filmService.flushLikeWriteBehind();
+    }
+
+    @GetMapping("/connection-limiter/stats")
+    public ConnectionLimiterStatsDto getConnectionLimiterStats() {
+        log.debug("Начат возврат статистики ограничения соединений с базой");
+        return connectionLimiter.getStats();
+    }
+
+    //Стеки, на которых виртуальные потоки закреплялись за несущим потоком дольше порога
+    @GetMapping("/virtual-threads/pinning")
+    public PinningStatsDto getPinningStats() {
+        log.debug("Начат возврат статистики закрепления виртуальных потоков");
+        return pinningMonitor.getStats();
+    }
+
+    @PostMapping("/popularity-index/rebuild")
+    public void rebuildPopularityIndex() {
+        log.debug("Начата перестройка рейтинга популярности");
+        filmService.rebuildPopularityIndex();
+    }
+
+    //Перечитать справочники жанров и MPA после изменения их в базе
+    @PostMapping("/reference-data/reload")
+    public void reloadReferenceData() {
+        log.debug("Начата перезагрузка справочников");
+        filmService.reloadReferenceData();
+    }
+}
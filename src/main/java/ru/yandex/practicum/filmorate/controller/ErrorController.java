@@ -2,6 +2,8 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.ValidationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.transaction.CannotCreateTransactionException;
 
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -10,6 +12,8 @@ import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exceptions.ErrorResponse;
 import ru.yandex.practicum.filmorate.exceptions.InvalidLoginException;
+import ru.yandex.practicum.filmorate.exceptions.SearchLimitExceededException;
+import ru.yandex.practicum.filmorate.exceptions.WriteQueueFullException;
 
 @RestControllerAdvice
 public class ErrorController {
@@ -38,6 +42,23 @@ public class ErrorController {
         return new ErrorResponse(e.getMessage());
     }
 
+    //Запрос слишком дорогой (например, цепочка дружбы не найдена за бюджет просмотренных связей)
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY) // Error 422
+    public ErrorResponse handlerSearchLimitExceededException(SearchLimitExceededException e) {
+        return new ErrorResponse(e.getMessage());
+    }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE) // Error 503
+    public ErrorResponse handlerWriteQueueFullException(WriteQueueFullException e) {
+        return new ErrorResponse(e.getMessage());
+    }
 
+    //Соединение с базой не получено за отведенное время (пул или ConnectionLimiter исчерпаны)
+    @ExceptionHandler({CannotGetJdbcConnectionException.class, CannotCreateTransactionException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE) // Error 503
+    public ErrorResponse handlerConnectionUnavailable(RuntimeException e) {
+        return new ErrorResponse("Хранилище перегружено, повторите запрос позже");
+    }
 }
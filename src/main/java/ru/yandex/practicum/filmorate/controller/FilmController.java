@@ -1,15 +1,26 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.dto.EdgeImportResultDto;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.film.PopularFilmsStream;
+import ru.yandex.practicum.filmorate.util.NdjsonWriter;
 
+import java.io.InputStream;
 import java.util.List;
 
 @Slf4j
@@ -18,7 +29,16 @@ import java.util.List;
 @RequestMapping("/films")
 public class FilmController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_POPULAR_COUNT = 1000;
+    private static final int MAX_POPULAR_STREAM_COUNT = 100;
+    private static final int MAX_TRENDING_COUNT = 1000;
+
     private final FilmService filmService;
+    private final PopularFilmsStream popularFilmsStream;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     public FilmDto create(@Valid @RequestBody Film film) {
@@ -44,10 +64,55 @@ public class FilmController {
         return filmService.delete(filmId);
     }
 
+    //Без limit и after возвращается весь список, как и раньше.
+    //С ними - страница по ключу id, курсор следующей страницы передается в заголовке X-Next-Cursor.
     @GetMapping
-    public List<FilmDto> getAll() {
-        log.debug("Начат возврат всех фильмов");
-        return filmService.getAll();
+    public ResponseEntity<List<FilmDto>> getAll(@Positive @Max(MAX_PAGE_SIZE) @RequestParam(required = false) Integer limit,
+                                                @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            log.debug("Начат возврат всех фильмов");
+            return ResponseEntity.ok(filmService.getAll());
+        }
+        log.debug("Начат возврат страницы фильмов после курсора {} размером {}", after, limit);
+        PageDto<FilmDto> page = filmService.getPage(limit == null ? DEFAULT_PAGE_SIZE : limit, after);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    //Потоковая выгрузка всех фильмов построчно в NDJSON
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAll() {
+        log.debug("Начата выгрузка всех фильмов в NDJSON");
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                filmService.exportAll(writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    //Потоковый импорт фильмов из NDJSON или JSON-массива. Записи вставляются порциями, по каждой записи
+    //в ответ пишется строка NDJSON с ее номером и id либо текстом ошибки.
+    @PostMapping(value = "/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> bulkCreate(InputStream body) {
+        log.debug("Начат потоковый импорт фильмов");
+        StreamingResponseBody response = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                filmService.bulkCreate(body, writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(response);
+    }
+
+    //Пакетная загрузка лайков из NDJSON или JSON-массива ({"filmId":1,"userId":2,"likedAt":"..."}).
+    //Отвечает итогом загрузки и первыми ошибками.
+    @PostMapping("/likes/bulk")
+    public EdgeImportResultDto bulkAddLikes(InputStream body) {
+        log.debug("Начата пакетная загрузка лайков");
+        return filmService.bulkAddLikes(body);
     }
 
     //Возврат объекта filmService для целей тестирования
@@ -66,6 +131,14 @@ public class FilmController {
         return filmService.addLikeToFilm(filmId, userId);
     }
 
+    //Учитывает и лайки, еще не записанные в базу при отложенной записи
+    @GetMapping("/{id}/like/{userId}")
+    public boolean hasLike(@NotNull @Positive @PathVariable("id") Long filmId,
+                           @NotNull @Positive @PathVariable Long userId) {
+        log.debug("Начата проверка лайка фильма с Id {} от пользователя с Id {}", filmId, userId);
+        return filmService.hasLike(filmId, userId);
+    }
+
     @DeleteMapping("/{id}/like/{userId}")
     public Long removeLikeFromFilm(@NotNull @Positive @PathVariable("id") Long filmId,
                                    @NotNull @Positive @PathVariable Long userId) {
@@ -74,8 +147,30 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public List<FilmDto> getListOfPopularFilms(@Positive @RequestParam(defaultValue = "10") Integer count) {
+    public List<FilmDto> getListOfPopularFilms(@Positive @Max(MAX_POPULAR_COUNT)
+                                               @RequestParam(defaultValue = "10") Integer count,
+                                               @Positive @RequestParam(required = false) Integer genreId,
+                                               @Positive @RequestParam(required = false) Integer mpaId,
+                                               @Positive @RequestParam(required = false) Integer year) {
         log.debug("Начат возврат фильмов, отсортированных по кол-ву лайков и в кол-ве count = {}", count);
-        return filmService.getListOfPopularFilms(count);
+        return filmService.getListOfPopularFilms(count, genreId, mpaId, year);
+    }
+
+    //Подписка на рейтинг популярных фильмов (Server-Sent Events): событие snapshot с текущим рейтингом,
+    //затем событие diff с изменившимися местами, как только рейтинг меняется (не чаще filmorate.popular-stream.tick)
+    @GetMapping(value = "/popular/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPopularFilms(@Positive @Max(MAX_POPULAR_STREAM_COUNT)
+                                         @RequestParam(defaultValue = "10") Integer count) {
+        log.debug("Начата подписка на рейтинг популярных фильмов в кол-ве count = {}", count);
+        return popularFilmsStream.subscribe(count);
+    }
+
+    //Фильмы с максимумом лайков за последний час (1h), сутки (24h) или неделю (7d)
+    @GetMapping("/trending")
+    public List<FilmDto> getTrendingFilms(@RequestParam(defaultValue = "24h") String window,
+                                          @Positive @Max(MAX_TRENDING_COUNT)
+                                          @RequestParam(defaultValue = "10") Integer count) {
+        log.debug("Начат возврат трендовых фильмов за окно {} в кол-ве count = {}", window, count);
+        return filmService.getTrendingFilms(window, count);
     }
 }
@@ -1,15 +1,28 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.dto.EdgeImportResultDto;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FriendSuggestionDto;
+import ru.yandex.practicum.filmorate.dto.FriendshipPathDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
 import ru.yandex.practicum.filmorate.service.user.UserService;
+import ru.yandex.practicum.filmorate.util.NdjsonWriter;
 
+import java.io.InputStream;
 import java.util.List;
 
 @Slf4j
@@ -18,7 +31,17 @@ import java.util.List;
 @RequestMapping("/users")
 public class UserController {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_FRIEND_SUGGESTIONS = 100;
+    private static final int MAX_RECOMMENDATIONS = 100;
+    private static final int MAX_CONTENT_RECOMMENDATIONS = 100;
+    private static final int MAX_PATH_DEPTH = 10;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     public UserDto create(@Valid @RequestBody User user) {
@@ -38,10 +61,55 @@ public class UserController {
         return userService.delete(userId);
     }
 
+    //Без limit и after возвращается весь список, как и раньше.
+    //С ними - страница по ключу id, курсор следующей страницы передается в заголовке X-Next-Cursor.
     @GetMapping
-    public List<UserDto> getAll() {
-        log.debug("Начат возврат всех пользователей");
-        return userService.getAll();
+    public ResponseEntity<List<UserDto>> getAll(@Positive @Max(MAX_PAGE_SIZE) @RequestParam(required = false) Integer limit,
+                                                @RequestParam(required = false) String after) {
+        if (limit == null && after == null) {
+            log.debug("Начат возврат всех пользователей");
+            return ResponseEntity.ok(userService.getAll());
+        }
+        log.debug("Начат возврат страницы пользователей после курсора {} размером {}", after, limit);
+        PageDto<UserDto> page = userService.getPage(limit == null ? DEFAULT_PAGE_SIZE : limit, after);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    //Потоковый импорт пользователей из NDJSON или JSON-массива. Записи вставляются порциями, по каждой записи
+    //в ответ пишется строка NDJSON с ее номером и id либо текстом ошибки.
+    @PostMapping(value = "/bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> bulkCreate(InputStream body) {
+        log.debug("Начат потоковый импорт пользователей");
+        StreamingResponseBody response = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                userService.bulkCreate(body, writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(response);
+    }
+
+    //Пакетная загрузка дружбы из NDJSON или JSON-массива ({"userId":1,"friendId":2}).
+    //Отвечает итогом загрузки и первыми ошибками.
+    @PostMapping("/friends/bulk")
+    public EdgeImportResultDto bulkAddFriends(InputStream body) {
+        log.debug("Начата пакетная загрузка дружбы");
+        return userService.bulkAddFriends(body);
+    }
+
+    //Потоковая выгрузка всех пользователей построчно в NDJSON
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAll() {
+        log.debug("Начата выгрузка всех пользователей в NDJSON");
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                userService.exportAll(writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     //Для целей тестирования
@@ -79,4 +147,41 @@ public class UserController {
         return userService.getListOfCommonFriends(userId, otherId);
     }
 
+    //"Возможно, вы знакомы": не друзья пользователя по убыванию числа общих друзей
+    @GetMapping("/{id}/friends/suggestions")
+    public List<FriendSuggestionDto> getFriendSuggestions(@NotNull @Positive @PathVariable("id") Long userId,
+                                                          @Positive @Max(MAX_FRIEND_SUGGESTIONS)
+                                                          @RequestParam(defaultValue = "10") Integer limit) {
+        log.debug("Начат возврат {} подсказок друзей для пользователя с ID {}", limit, userId);
+        return userService.getFriendSuggestions(userId, limit);
+    }
+
+    //Кратчайшая цепочка дружбы: каждый следующий пользователь - друг предыдущего
+    @GetMapping("/{id}/path/{otherId}")
+    public FriendshipPathDto getFriendshipPath(@NotNull @Positive @PathVariable("id") Long userId,
+                                               @NotNull @Positive @PathVariable Long otherId,
+                                               @Positive @Max(MAX_PATH_DEPTH)
+                                               @RequestParam(defaultValue = "6") Integer maxDepth) {
+        log.debug("Начат поиск цепочки дружбы от пользователя с ID {} к пользователю с ID {}", userId, otherId);
+        return userService.getFriendshipPath(userId, otherId, maxDepth);
+    }
+
+    //Рекомендации фильмов по лайкам пользователя: фильмы, похожие на уже понравившиеся
+    @GetMapping("/{id}/recommendations")
+    public List<FilmDto> getRecommendations(@NotNull @Positive @PathVariable("id") Long userId,
+                                            @Positive @Max(MAX_RECOMMENDATIONS)
+                                            @RequestParam(defaultValue = "10") Integer count) {
+        log.debug("Начат возврат {} рекомендованных фильмов для пользователя с ID {}", count, userId);
+        return filmService.getRecommendations(userId, count);
+    }
+
+    //Рекомендации только по жанрам и MPA лайкнутых фильмов
+    @GetMapping("/{id}/recommendations/content")
+    public List<FilmDto> getContentRecommendations(@NotNull @Positive @PathVariable("id") Long userId,
+                                                   @Positive @Max(MAX_CONTENT_RECOMMENDATIONS)
+                                                   @RequestParam(defaultValue = "10") Integer count) {
+        log.debug("Начат возврат {} фильмов, близких по содержанию к лайкам пользователя с ID {}", count, userId);
+        return filmService.getContentRecommendations(userId, count);
+    }
+
 }
@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.ConnectionLimiterStatsDto;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Ограничение числа одновременно выданных соединений при обработке запросов на виртуальных потоках
+//(spring.threads.virtual.enabled). Число потоков больше не ограничено пулом Tomcat, и тысячи запросов
+//ждали бы соединение внутри пула. Вместо этого они ждут разрешение в честной (FIFO) очереди семафора
+//с числом разрешений по размеру пула. Кто не дождался за acquire-timeout, получает 503,
+//а не висит до таймаута пула.
+//На платформенных потоках выключено: одновременность там ограничивает пул потоков Tomcat.
+@Slf4j
+@Component
+public class ConnectionLimiter implements BeanPostProcessor {
+
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    private final boolean enabled;
+    private final int maxConcurrentConnections;
+    private final Duration acquireTimeout;
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile Semaphore permits;
+    private volatile int limit;
+
+    public ConnectionLimiter(@Value("${spring.threads.virtual.enabled:false}") boolean enabled,
+                             @Value("${filmorate.datasource.max-concurrent-connections:0}") int maxConcurrentConnections,
+                             @Value("${filmorate.datasource.acquire-timeout:PT5S}") Duration acquireTimeout) {
+        this.enabled = enabled;
+        this.maxConcurrentConnections = maxConcurrentConnections;
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!enabled || !(bean instanceof DataSource dataSource) || bean instanceof LimitedDataSource) {
+            return bean;
+        }
+        //По умолчанию разрешений столько же, сколько соединений в пуле. Пока пул не запущен, Hikari
+        //возвращает -1 для незаданного размера и подставляет 10 только при старте
+        limit = maxConcurrentConnections > 0 ? maxConcurrentConnections
+                : dataSource instanceof HikariDataSource hikari && hikari.getMaximumPoolSize() > 0
+                ? hikari.getMaximumPoolSize() : DEFAULT_POOL_SIZE;
+        permits = new Semaphore(limit, true);
+        log.info("Одновременных соединений с базой не больше {}, ожидание соединения не дольше {}", limit,
+                acquireTimeout);
+        return new LimitedDataSource(dataSource);
+    }
+
+    public ConnectionLimiterStatsDto getStats() {
+        Semaphore current = permits;
+        if (current == null) {
+            return new ConnectionLimiterStatsDto(false, 0, 0, 0, acquired.get(), rejected.get());
+        }
+        return new ConnectionLimiterStatsDto(true, limit, current.availablePermits(), current.getQueueLength(),
+                acquired.get(), rejected.get());
+    }
+
+    private void acquire() throws SQLException {
+        try {
+            if (!permits.tryAcquire(acquireTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.incrementAndGet();
+                throw new SQLTransientConnectionException("Нет свободного соединения с базой за " + acquireTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Ожидание соединения с базой прервано", e);
+        }
+        acquired.incrementAndGet();
+    }
+
+    //Разрешение возвращается при закрытии соединения (возврате в пул), один раз
+    private Connection guard(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                        permits.release();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private class LimitedDataSource extends DelegatingDataSource {
+
+        LimitedDataSource(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            acquire();
+            try {
+                return guard(super.getConnection());
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            acquire();
+            try {
+                return guard(super.getConnection(username, password));
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+    }
+}
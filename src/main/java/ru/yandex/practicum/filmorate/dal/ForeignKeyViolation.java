@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Разбор нарушения внешнего ключа H2 (код 23506). Запись связи не проверяет заранее, что фильм и пользователи
+//существуют: это делает внешний ключ, а по его колонке в сообщении H2 видно, какой именно записи нет.
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ForeignKeyViolation {
+
+    private static final Pattern FOREIGN_KEY_COLUMN = Pattern.compile("FOREIGN KEY\\((\\w+)\\) REFERENCES");
+
+    //Колонка нарушенного внешнего ключа в верхнем регистре (например, USER_ID) или null, если ошибка другая
+    public static String column(DataIntegrityViolationException ex) {
+        String message = ex.getMostSpecificCause().getMessage();
+        if (message == null) {
+            return null;
+        }
+        Matcher matcher = FOREIGN_KEY_COLUMN.matcher(message);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+}
@@ -0,0 +1,191 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Групповая фиксация: одиночные записи, пришедшие от разных запросов почти одновременно, пишутся одним пакетом
+//в одной транзакции. Порцию собирает отдельный поток: получив первую запись, он ждет следующие не дольше window
+//или до maxBatch записей. Вызывающий поток ждет фиксации порции и получает результат своей записи,
+//поэтому запись подтверждается клиенту только после коммита.
+//Если у вызывающего потока уже есть транзакция, запись выполняется в ней же, без очереди.
+@Slf4j
+public class GroupCommitter<T> {
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    @FunctionalInterface
+    public interface BatchWriter<T> {
+
+        //Пишет порцию в текущей транзакции и возвращает по каждой записи ее ошибку или null.
+        //Ошибки отдельных записей (например, повтор) возвращаются, а не бросаются, чтобы не откатить всю порцию.
+        List<RuntimeException> write(List<T> items);
+    }
+
+    private final String name;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final TransactionTemplate transactionTemplate;
+    private final BatchWriter<T> writer;
+    private final BlockingQueue<Request<T>> queue = new LinkedBlockingQueue<>();
+    private final Thread committer;
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private volatile boolean running;
+
+    //enabled = false - каждая запись пишется сразу в своей транзакции, как без групповой фиксации
+    GroupCommitter(String name, boolean enabled, Duration window, int maxBatch,
+                   TransactionTemplate transactionTemplate, BatchWriter<T> writer) {
+        this.name = name;
+        this.windowNanos = window.toNanos();
+        this.maxBatch = maxBatch;
+        this.transactionTemplate = transactionTemplate;
+        this.writer = writer;
+        if (enabled) {
+            running = true;
+            committer = new Thread(this::run, "group-commit-" + name);
+            committer.setDaemon(true);
+            committer.start();
+        } else {
+            committer = null;
+        }
+    }
+
+    //Записывает item и возвращает управление после фиксации; бросает ошибку именно этой записи
+    public void submit(T item) {
+        if (!running || TransactionSynchronizationManager.isActualTransactionActive()) {
+            writeNow(item);
+            return;
+        }
+        Request<T> request = new Request<>(item);
+        queue.add(request);
+        //Остановка могла начаться после проверки: если запись еще в очереди, пишем ее сами
+        if (!running && queue.remove(request)) {
+            writeNow(item);
+            return;
+        }
+        try {
+            request.done.join();
+        } catch (CompletionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getItems() {
+        return items.get();
+    }
+
+    //Дописывает уже принятые записи и останавливает поток фиксации
+    void close() {
+        if (committer == null) {
+            return;
+        }
+        running = false;
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.debug("Групповая фиксация {} остановлена: записей {}, транзакций {}", name, items.get(), batches.get());
+    }
+
+    private void writeNow(T item) {
+        RuntimeException error = transactionTemplate.execute(status -> writer.write(List.of(item))).getFirst();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void run() {
+        List<Request<T>> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                Request<T> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                queue.drainTo(batch, maxBatch - batch.size());
+                while (batch.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    Request<T> next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatch - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            commit(batch);
+            batch.clear();
+        }
+        while (!queue.isEmpty()) {
+            queue.drainTo(batch, maxBatch);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<Request<T>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<RuntimeException> errors;
+        try {
+            errors = transactionTemplate.execute(status -> writer.write(batch.stream().map(Request::item).toList()));
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                batch.getFirst().complete(e);
+                return;
+            }
+            //Нарушение ограничения одной записью откатило всю порцию: пишем записи по одной,
+            //чтобы ошибку получил только ее автор
+            log.debug("Порция {} из {} записей откатилась ({}), пишем по одной", name, batch.size(), e.getMessage());
+            batch.forEach(request -> commit(List.of(request)));
+            return;
+        } catch (RuntimeException e) {
+            log.warn("Порция {} из {} записей не записана: {}", name, batch.size(), e.getMessage());
+            batch.forEach(request -> request.complete(e));
+            return;
+        }
+        batches.incrementAndGet();
+        items.addAndGet(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(errors.get(i));
+        }
+    }
+
+    private record Request<T>(T item, CompletableFuture<Void> done) {
+
+        Request(T item) {
+            this(item, new CompletableFuture<>());
+        }
+
+        void complete(RuntimeException error) {
+            if (error == null) {
+                done.complete(null);
+            } else {
+                done.completeExceptionally(error);
+            }
+        }
+    }
+}
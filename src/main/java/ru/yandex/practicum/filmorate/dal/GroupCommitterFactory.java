@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//Общие настройки групповой фиксации (filmorate.group-commit.*) для репозиториев.
+//Потоки фиксации останавливаются вместе с контекстом, до закрытия пула соединений.
+@Slf4j
+@Component
+public class GroupCommitterFactory {
+
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration window;
+    private final int maxBatch;
+    private final List<GroupCommitter<?>> committers = new CopyOnWriteArrayList<>();
+
+    public GroupCommitterFactory(TransactionTemplate transactionTemplate,
+                                 @Value("${filmorate.group-commit.enabled:true}") boolean enabled,
+                                 @Value("${filmorate.group-commit.window:PT0.0002S}") Duration window,
+                                 @Value("${filmorate.group-commit.max-batch:500}") int maxBatch) {
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.window = window;
+        this.maxBatch = maxBatch;
+        log.debug("Групповая фиксация: {}, окно {}, порция до {} записей", enabled ? "включена" : "выключена",
+                window, maxBatch);
+    }
+
+    public <T> GroupCommitter<T> create(String name, GroupCommitter.BatchWriter<T> writer) {
+        GroupCommitter<T> committer = new GroupCommitter<>(name, enabled, window, maxBatch, transactionTemplate,
+                writer);
+        committers.add(committer);
+        return committer;
+    }
+
+    @PreDestroy
+    void close() {
+        committers.forEach(GroupCommitter::close);
+    }
+}
@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//Потоковое чтение больших выборок из H2. В режиме LAZY_QUERY_EXECUTION строки формируются по мере движения курсора,
+//а не собираются целиком до возврата первой строки, поэтому расход памяти не зависит от размера таблицы.
+//Режим включается только на время действия и выключается перед возвратом соединения в пул.
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class LazyQueryExecution {
+
+    public static final int FETCH_SIZE = 1000;
+
+    @FunctionalInterface
+    public interface SqlAction {
+        void run() throws SQLException;
+    }
+
+    public static Void run(Connection connection, SqlAction action) throws SQLException {
+        setLazy(connection, true);
+        try {
+            action.run();
+        } finally {
+            setLazy(connection, false);
+        }
+        return null;
+    }
+
+    public static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(FETCH_SIZE);
+        return statement;
+    }
+
+    private static void setLazy(Connection connection, boolean lazy) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + lazy);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+//Счет фильмов по столбцам признаков FilmFeatureIndex: для i < size
+//scores[i] = сумма weights[k] * columns[features[k]][i] по всем k (признаки с нулевым весом заранее отброшены)
+interface FeatureScorer {
+
+    void score(float[][] columns, int[] features, float[] weights, int size, float[] scores);
+
+    String name();
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.CacheStatsDto;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+//Ограниченный кэш собранных фильмов (с жанрами и MPA) со сквозным чтением.
+//Вытеснение - W-TinyLFU из Caffeine: редко запрашиваемые фильмы не вытесняют часто запрашиваемые.
+//Наружу отдаются копии, поэтому изменение полученного фильма не портит кэш.
+@Slf4j
+@Component
+public class FilmCache {
+
+    private final Cache<Long, Film> cache;
+
+    public FilmCache(@Value("${filmorate.film-cache.maximum-size:10000}") long maximumSize,
+                     @Value("${filmorate.film-cache.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        log.debug("Кэш фильмов: не более {} фильмов, время жизни {}", maximumSize, expireAfterWrite);
+    }
+
+    //loader возвращает null, если фильма нет; отсутствие фильма не кэшируется
+    public Film get(long filmId, LongFunction<Film> loader) {
+        Film film = cache.get(filmId, loader::apply);
+        return film == null ? null : copy(film);
+    }
+
+    //Возвращает фильмы из кэша, недостающие загружаются одним вызовом loader
+    public Map<Long, Film> getAll(List<Long> filmIds,
+                                  Function<Set<? extends Long>, Map<? extends Long, ? extends Film>> loader) {
+        Map<Long, Film> films = new HashMap<>();
+        cache.getAll(filmIds, loader).forEach((filmId, film) -> films.put(filmId, copy(film)));
+        return films;
+    }
+
+    public void invalidate(long filmId) {
+        cache.invalidate(filmId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStatsDto getStats() {
+        CacheStats stats = cache.stats();
+        return new CacheStatsDto(cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.evictionCount(), stats.averageLoadPenalty() / 1_000_000);
+    }
+
+    private static Film copy(Film film) {
+        return new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(),
+                film.getMpa(), new ArrayList<>(film.getGenres()), film.getLikesCount());
+    }
+}
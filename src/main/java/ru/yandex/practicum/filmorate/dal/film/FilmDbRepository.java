@@ -1,24 +1,50 @@
 package ru.yandex.practicum.filmorate.dal.film;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.dal.ForeignKeyViolation;
+import ru.yandex.practicum.filmorate.dal.GroupCommitter;
+import ru.yandex.practicum.filmorate.dal.GroupCommitterFactory;
+import ru.yandex.practicum.filmorate.dal.LazyQueryExecution;
+import ru.yandex.practicum.filmorate.dal.film.PopularityIndex.FilmFacets;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.FilmGenreCollection;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genres;
-import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.LikesCountDrift;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
+import java.sql.Array;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
@@ -26,42 +52,95 @@ public class FilmDbRepository implements FilmStorage {
 
     protected final JdbcTemplate jdbc;
     protected final RowMapper<Film> mapper;
-    protected final RowMapper<Genres> genreRowMapper;
-    protected final RowMapper<Mpa> mpaRowMapper;
-    protected final RowMapper<FilmGenreCollection> filmGenreCollectionRowMapper;
+    protected final ReferenceDataRegistry references;
+    protected final PopularityIndex popularityIndex;
+    protected final TrendingIndex trendingIndex;
+    protected final FilmCache filmCache;
+    protected final LikeMatrix likeMatrix;
+    protected final FilmSimilarityIndex similarityIndex;
+    protected final FilmFeatureIndex featureIndex;
+    private final GroupCommitter<FilmLike> likeCommitter;
 
     @Autowired
-    public FilmDbRepository(JdbcTemplate jdbc, RowMapper<Film> mapper, RowMapper<Genres> genreRowMapper, RowMapper<Mpa> mpaRowMapper,
-                            RowMapper<FilmGenreCollection> filmGenreCollectionRowMapper) {
+    public FilmDbRepository(JdbcTemplate jdbc, RowMapper<Film> mapper, ReferenceDataRegistry references,
+                            PopularityIndex popularityIndex, TrendingIndex trendingIndex, FilmCache filmCache,
+                            LikeMatrix likeMatrix, FilmSimilarityIndex similarityIndex, FilmFeatureIndex featureIndex,
+                            GroupCommitterFactory groupCommitters) {
         this.jdbc = jdbc;
         this.mapper = mapper;
-        this.genreRowMapper = genreRowMapper;
-        this.mpaRowMapper = mpaRowMapper;
-        this.filmGenreCollectionRowMapper = filmGenreCollectionRowMapper;
+        this.references = references;
+        this.popularityIndex = popularityIndex;
+        this.trendingIndex = trendingIndex;
+        this.filmCache = filmCache;
+        this.likeMatrix = likeMatrix;
+        this.similarityIndex = similarityIndex;
+        this.featureIndex = featureIndex;
+        this.likeCommitter = groupCommitters.create("likes", this::writeLikeBatch);
     }
 
     private static final String INSERT_QUERY = "INSERT INTO filmStorage(name, description, releaseDate, duration, rating_mpa_ID) " +
             "VALUES (?, ?, ?, ?, ?)";
-    private static final String UPDATE_QUERY = "UPDATE filmStorage SET name = ?, description = ?, releaseDate = ?, " +
-            "duration = ?, rating_mpa_ID = ?  WHERE film_ID = ?";
-    private static final String DELETE_QUERY = "DELETE FROM filmStorage WHERE film_ID = ?";
+    //Многострочная вставка для импорта: значения подставляются в конец, id возвращаются в порядке строк VALUES
+    private static final String INSERT_ALL_QUERY = "SELECT film_ID FROM FINAL TABLE (INSERT INTO filmStorage" +
+            "(name, description, releaseDate, duration, rating_mpa_ID) VALUES %s) ORDER BY film_ID";
+    private static final String INSERT_ALL_ROW = "(?, ?, ?, ?, ?)";
+    //Обновление сразу возвращает счетчик лайков фильма; пустой результат означает, что фильм не найден
+    private static final String UPDATE_QUERY = "SELECT likes_count FROM FINAL TABLE (UPDATE filmStorage " +
+            "SET name = ?, description = ?, releaseDate = ?, duration = ?, rating_mpa_ID = ?  WHERE film_ID = ?)";
+    //Удаление сразу возвращает удаленный фильм с его жанрами (связи в filmGenres удаляются каскадно)
+    private static final String DELETE_QUERY = "SELECT f.*, (SELECT ARRAY_AGG(fg.genre_ID ORDER BY fg.genre_ID) " +
+            "FROM filmGenres AS fg WHERE fg.film_ID = f.film_ID) AS genre_IDs " +
+            "FROM OLD TABLE (DELETE FROM filmStorage WHERE film_ID = ?) AS f";
     private static final String FIND_ALL_QUERY = "SELECT * FROM filmStorage";
+    private static final String FIND_ALL_ORDERED_QUERY = "SELECT * FROM filmStorage ORDER BY film_ID";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM filmStorage WHERE film_ID > ? ORDER BY film_ID LIMIT ?";
     private static final String DELETE_ALL_QUERY = "DELETE FROM filmStorage";
-    private static final String FIND_BY_ID_QUERY = "SELECT * FROM filmStorage WHERE film_ID = ?";
-    private static final String SELECT_MAX_LIKES_FILMS_IN_QTY_OF = "SELECT fs.*, COUNT(ls.user_ID) AS likes_count " +
-            "FROM filmStorage AS fs LEFT JOIN likeStorage AS ls ON fs.film_ID = ls.film_ID GROUP BY fs.film_ID " +
-            "ORDER BY likes_count DESC LIMIT ?";
-    private static final String INSERT_LIKE = "INSERT INTO likeStorage (film_ID, user_ID) VALUES (?, ?)";
-    private static final String REMOVE_LIKE = "DELETE FROM likeStorage WHERE film_ID = ? AND user_ID = ?";
+    //Фильм со всеми жанрами одним запросом: строка на каждый жанр фильма (или одна строка без жанра).
+    //Названия жанров и MPA берутся из ReferenceDataRegistry.
+    private static final String FIND_COMPLETE_FILM_QUERY = "SELECT f.*, fg.genre_ID FROM filmStorage AS f " +
+            "LEFT JOIN filmGenres AS fg ON fg.film_ID = f.film_ID WHERE f.film_ID = ? ORDER BY fg.genre_ID";
+    private static final String FIND_BY_IDS_QUERY = "SELECT * FROM filmStorage WHERE film_ID = ANY(?)";
+    private static final String FIND_ACTUAL_LIKES = "SELECT f.film_ID, f.rating_mpa_ID, f.releaseDate, " +
+            "(SELECT COUNT(*) FROM likeStorage AS l WHERE l.film_ID = f.film_ID) AS likes FROM filmStorage AS f";
+    //Удаление лайка сразу возвращает время его постановки, оно нужно рейтингу трендов
+    private static final String REMOVE_LIKE = "SELECT created_at FROM OLD TABLE " +
+            "(DELETE FROM likeStorage WHERE film_ID = ? AND user_ID = ?)";
+    private static final String FIND_EXISTING_IDS = "SELECT film_ID FROM filmStorage WHERE film_ID = ANY(?)";
+    //Только для ответа 404, когда снимать было нечего: есть ли пользователь и фильм
+    private static final String COUNT_USER_AND_FILM = "SELECT (SELECT COUNT(*) FROM userStorage WHERE user_ID = ?), " +
+            "(SELECT COUNT(*) FROM filmStorage WHERE film_ID = ?)";
+    private static final String HAS_LIKE = "SELECT COUNT(*) FROM likeStorage WHERE film_ID = ? AND user_ID = ?";
+    //Пакетное удаление лайков по первичному ключу; возвращает каждый удаленный лайк с временем постановки
+    private static final String REMOVE_LIKES_QUERY = "SELECT film_ID, user_ID, created_at FROM OLD TABLE " +
+            "(DELETE FROM likeStorage WHERE (film_ID, user_ID) IN (%s))";
+    private static final String REMOVE_LIKES_ROW = "(?, ?)";
+    //Все лайки пользователя; без этого их удалил бы каскад likeStorage в обход счетчиков likes_count
+    private static final String REMOVE_USER_LIKES = "SELECT film_ID, user_ID, created_at FROM OLD TABLE " +
+            "(DELETE FROM likeStorage WHERE user_ID = ?)";
+    //Пакетная запись лайка: строка вставляется, только если такого лайка еще нет (счетчик обновлений 1 или 0)
+    private static final String INSERT_LIKE_IF_ABSENT = "INSERT INTO likeStorage (film_ID, user_ID, created_at) " +
+            "SELECT CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS TIMESTAMP) WHERE NOT EXISTS " +
+            "(SELECT 1 FROM likeStorage WHERE film_ID = ? AND user_ID = ?)";
+    private static final String ADD_LIKES_COUNT = "UPDATE filmStorage SET likes_count = likes_count + ? " +
+            "WHERE film_ID = ?";
+    private static final String FIND_LIKES_SINCE = "SELECT film_ID, created_at FROM likeStorage WHERE created_at > ?";
+    private static final String DECREMENT_LIKES_COUNT = "UPDATE filmStorage SET likes_count = likes_count - 1 " +
+            "WHERE film_ID = ?";
+    private static final String FIND_LIKES_COUNT_DRIFT = "SELECT film_ID, likes_count, actual_count FROM " +
+            "(SELECT f.film_ID, f.likes_count, (SELECT COUNT(*) FROM likeStorage AS l WHERE l.film_ID = f.film_ID) " +
+            "AS actual_count FROM filmStorage AS f) WHERE likes_count <> actual_count ORDER BY film_ID";
+    private static final String RECOUNT_LIKES_COUNT = "UPDATE filmStorage SET likes_count = " +
+            "(SELECT COUNT(*) FROM likeStorage WHERE film_ID = ?) WHERE film_ID = ?";
     private static final String INSERT_FILM_GENRE = "INSERT INTO filmGenres (film_ID, genre_ID) VALUES (?, ?)";
-    private static final String GET_GENRES_BY_FILM_ID = "SELECT g.genre_ID, g.genre_name FROM filmGenres AS fg " +
-            "JOIN genres g ON fg.genre_ID = g.genre_ID WHERE fg.film_ID = ?";
-    private static final String DELETE_FILM_GENRES = "DELETE FROM filmGenres WHERE film_ID = ?";
-    private static final String GET_MPA_NAME_BY_FILM_ID = "SELECT r.* FROM ratingOfFilmByMpa AS r JOIN " +
-            "filmStorage AS f ON r.rating_mpa_ID = f.rating_mpa_ID WHERE f.film_ID = ?";
-    private static final String FIND_ALL_FILM_GENRE_COLLECTION = "SELECT * FROM filmGenres";
-    private static final String FIND_ALL_MPA = "SELECT * FROM ratingOfFilmByMpa";
-    private static final String FIND_ALL_GENRES = "SELECT * FROM genres";
+    private static final String DELETE_FILM_GENRE = "DELETE FROM filmGenres WHERE film_ID = ? AND genre_ID = ?";
+    private static final String FIND_FILM_GENRE_IDS = "SELECT genre_ID FROM filmGenres WHERE film_ID = ?";
+    //Все лайки для матрицы рекомендаций, лайки одного пользователя подряд
+    private static final String FIND_ALL_LIKES = "SELECT user_ID, film_ID FROM likeStorage ORDER BY user_ID, film_ID";
+    private static final String FIND_ALL_FILM_GENRES = "SELECT film_ID, genre_ID FROM filmGenres ORDER BY film_ID, genre_ID";
+    private static final String FIND_FILM_GENRES_BY_IDS = "SELECT film_ID, genre_ID FROM filmGenres " +
+            "WHERE film_ID = ANY(?) ORDER BY film_ID, genre_ID";
+    private static final String FIND_FILM_GENRES_IN_RANGE = "SELECT film_ID, genre_ID FROM filmGenres " +
+            "WHERE film_ID BETWEEN ? AND ? ORDER BY film_ID, genre_ID";
 
     @Transactional
     @Override
@@ -81,69 +160,189 @@ public class FilmDbRepository implements FilmStorage {
             throw new DataNotFoundException("Не удалось получить ID созданного фильма");
         }
         film.setId(id);
-        addGenresToFilmDataBase(film);
+        batchUpdateFilmGenres(INSERT_FILM_GENRE, id, genreIdsOf(film));
+        FilmFacets facets = FilmFacets.of(film);
+        applyInMemory(() -> {
+            popularityIndex.put(id, 0, facets);
+            featureIndex.put(id, facets);
+        }, () -> {
+            popularityIndex.remove(id);
+            featureIndex.remove(id);
+        });
         log.debug("Фильм добавлен в базу данных. Id = {}", id);
         return film;
     }
 
+    //Пакетное создание для импорта: фильмы вставляются одним многострочным INSERT, связи с жанрами - одним пакетом
+    @Transactional
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        String sql = INSERT_ALL_QUERY.formatted(String.join(", ", Collections.nCopies(films.size(), INSERT_ALL_ROW)));
+        Object[] params = new Object[films.size() * 5];
+        int i = 0;
+        for (Film film : films) {
+            params[i++] = film.getName();
+            params[i++] = film.getDescription();
+            params[i++] = Timestamp.valueOf(film.getReleaseDate().atStartOfDay());
+            params[i++] = film.getDuration();
+            params[i++] = film.getMpa().getId();
+        }
+        List<Long> ids = jdbc.queryForList(sql, Long.class, params);
+        if (ids.size() != films.size()) {
+            throw new DataNotFoundException("Не удалось получить ID созданных фильмов");
+        }
+        List<Object[]> genreLinks = new ArrayList<>();
+        for (int j = 0; j < films.size(); j++) {
+            Film film = films.get(j);
+            film.setId(ids.get(j));
+            for (Integer genreId : genreIdsOf(film)) {
+                genreLinks.add(new Object[]{film.getId(), genreId});
+            }
+        }
+        if (!genreLinks.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_GENRE, genreLinks);
+        }
+        for (Film film : films) {
+            long id = film.getId();
+            FilmFacets facets = FilmFacets.of(film);
+            applyInMemory(() -> {
+                popularityIndex.put(id, 0, facets);
+                featureIndex.put(id, facets);
+            }, () -> {
+                popularityIndex.remove(id);
+                featureIndex.remove(id);
+            });
+        }
+        log.debug("В базу данных добавлено фильмов: {}", films.size());
+        return films;
+    }
+
     @Transactional
     @Override
     public Film update(Film film) {
-        int rowsUpdated = jdbc.update(UPDATE_QUERY, film.getName(), film.getDescription(),
+        List<Long> likesCount = jdbc.queryForList(UPDATE_QUERY, Long.class, film.getName(), film.getDescription(),
                 Timestamp.valueOf(film.getReleaseDate().atStartOfDay()), film.getDuration(), film.getMpa().getId(),
                 film.getId());
-        if (rowsUpdated == 0) {
+        if (likesCount.isEmpty()) {
             throw new DataNotFoundException("Не удалось обновить данные, фильм с id = " + film.getId() + " не найден");
         }
-        addGenresToFilmDataBase(film);
+        film.setLikesCount(likesCount.getFirst());
+        updateFilmGenres(film);
+        invalidateCachedFilm(film.getId());
+        FilmFacets oldFacets = popularityIndex.getFacets(film.getId());
+        FilmFacets facets = FilmFacets.of(film);
+        applyInMemory(() -> {
+            popularityIndex.changeFacets(film.getId(), facets);
+            featureIndex.put(film.getId(), facets);
+        }, () -> {
+            if (oldFacets != null) {
+                popularityIndex.changeFacets(film.getId(), oldFacets);
+                featureIndex.put(film.getId(), oldFacets);
+            }
+        });
         log.debug("Фильм найден и обновлен в хранилище");
         return film;
     }
 
     @Override
     public Film delete(Long filmId) {
-        Film film = getFilmById(filmId);
-        int rowsUpdated = jdbc.update(DELETE_QUERY, filmId);
-        if (rowsUpdated == 0) {
+        List<Film> deleted = jdbc.query(DELETE_QUERY, (rs, rowNum) -> {
+            Film film = mapper.mapRow(rs, rowNum);
+            FilmHydrator.resolveMpa(references, film);
+            List<Genres> genres = new ArrayList<>();
+            Array genreIds = rs.getArray("genre_IDs");
+            if (genreIds != null) {
+                for (Object genreId : (Object[]) genreIds.getArray()) {
+                    genres.add(FilmHydrator.genre(references, ((Number) genreId).intValue()));
+                }
+            }
+            film.setGenres(genres);
+            return film;
+        }, filmId);
+        if (deleted.isEmpty()) {
             throw new DataNotFoundException("Не удалось удалить фильм с id = " + filmId);
         }
+        invalidateCachedFilm(filmId);
+        long likes = popularityIndex.getLikes(filmId, 0);
+        FilmFacets facets = popularityIndex.getFacets(filmId);
+        long[] likedBy = likeMatrix.getUsersWhoLiked(filmId);
+        applyInMemory(() -> {
+            popularityIndex.remove(filmId);
+            featureIndex.remove(filmId);
+            likeMatrix.removeFilm(filmId);
+        }, () -> {
+            if (facets != null) {
+                popularityIndex.put(filmId, likes, facets);
+                featureIndex.put(filmId, facets);
+            }
+            for (long userId : likedBy) {
+                likeMatrix.add(filmId, userId);
+            }
+        });
+        //Корзины трендов фильма после удаления не восстановить, поэтому из трендов он убирается после фиксации
+        applyAfterCommit(() -> trendingIndex.remove(filmId));
         log.debug("Фильм найден и удален из хранилища");
-        return film;
+        return deleted.getFirst();
     }
 
     @Override
     public List<Film> getAll() {
         log.debug("Возвращаем все фильмы из хранилища");
         List<Film> films = jdbc.query(FIND_ALL_QUERY, mapper);
-        List<Genres> genres = jdbc.query(FIND_ALL_GENRES, genreRowMapper);
-        List<FilmGenreCollection> filmGenreCollections = jdbc.query(FIND_ALL_FILM_GENRE_COLLECTION, filmGenreCollectionRowMapper);
-        List<Mpa> mpas = jdbc.query(FIND_ALL_MPA, mpaRowMapper);
+        FilmHydrator hydrator = new FilmHydrator(films, references);
+        jdbc.query(FIND_ALL_FILM_GENRES, (RowCallbackHandler) rs ->
+                hydrator.addGenre(rs.getLong("film_ID"), rs.getInt("genre_ID")));
+        return hydrator.hydrate();
+    }
 
-        List<Film> completeFilms = new ArrayList<>();
+    //Страница строится по ключу film_ID, поэтому стоимость запроса не зависит от глубины листания.
+    //Жанры выбираются только в диапазоне id фильмов текущей страницы.
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        log.debug("Возвращаем страницу фильмов после id = {} размером {}", afterId, limit);
+        List<Film> films = jdbc.query(FIND_PAGE_QUERY, mapper, afterId, limit);
+        if (films.isEmpty()) {
+            return films;
+        }
+        FilmHydrator hydrator = new FilmHydrator(films, references);
+        jdbc.query(FIND_FILM_GENRES_IN_RANGE, (RowCallbackHandler) rs ->
+                        hydrator.addGenre(rs.getLong("film_ID"), rs.getInt("genre_ID")),
+                films.getFirst().getId(), films.getLast().getId());
+        return hydrator.hydrate();
+    }
 
-        for (Film film : films) {
-            List<Integer> idOfGenresOfEachFilm = new ArrayList<>();
-            List<Genres> genresOfEachFilm = new ArrayList<>();
-            Long id = film.getId();
-            List<FilmGenreCollection> genresById = filmGenreCollections.stream()
-                    .filter(item -> id == item.getFilmId()).toList();
-            for (FilmGenreCollection item : genresById) {
-                idOfGenresOfEachFilm.add(item.getGenreId());
-            }
-            genresOfEachFilm = idOfGenresOfEachFilm.stream().map(genreId -> new Genres(genreId,
-                    genres.stream().filter(item -> item.getId() == genreId)
-                            .map(Genres::getName).findFirst().orElse(null)
-            )).toList();
-            film.setGenres(genresOfEachFilm);
-            Mpa mpaOfFilm = new Mpa();
-            mpaOfFilm.setId(film.getMpa().getId());
-            mpaOfFilm.setName(mpas.stream().filter(mpa -> mpa.getId() == film.getMpa().getId())
-                    .findFirst()
-                    .map(mpa -> mpa.getName())
-                    .orElse(null));
-            completeFilms.add(film);
-        }
-        return completeFilms;
+    //Выгрузка идет двумя курсорами, упорядоченными по film_ID: по фильмам и по их жанрам.
+    //Жанры присоединяются к фильму совместным проходом, поэтому в памяти держится только текущий фильм.
+    @Override
+    public void exportAll(Consumer<Film> consumer) {
+        log.debug("Начинаем потоковую выгрузку всех фильмов из хранилища");
+        jdbc.execute((ConnectionCallback<Void>) connection -> LazyQueryExecution.run(connection, () -> {
+            try (PreparedStatement filmsStatement = LazyQueryExecution.prepare(connection, FIND_ALL_ORDERED_QUERY);
+                 PreparedStatement genresStatement = LazyQueryExecution.prepare(connection, FIND_ALL_FILM_GENRES);
+                 ResultSet filmRows = filmsStatement.executeQuery();
+                 ResultSet genreRows = genresStatement.executeQuery()) {
+                boolean hasGenre = genreRows.next();
+                int rowNum = 0;
+                while (filmRows.next()) {
+                    Film film = mapper.mapRow(filmRows, rowNum++);
+                    long filmId = film.getId();
+                    List<Genres> genres = new ArrayList<>();
+                    while (hasGenre && genreRows.getLong("film_ID") < filmId) {
+                        hasGenre = genreRows.next();
+                    }
+                    while (hasGenre && genreRows.getLong("film_ID") == filmId) {
+                        genres.add(FilmHydrator.genre(references, genreRows.getInt("genre_ID")));
+                        hasGenre = genreRows.next();
+                    }
+                    film.setGenres(genres);
+                    FilmHydrator.resolveMpa(references, film);
+                    consumer.accept(film);
+                }
+            }
+        }));
     }
 
     //Метод очистки хранилища для целей тестирования
@@ -151,6 +350,12 @@ public class FilmDbRepository implements FilmStorage {
     public void clear() {
         log.trace("Очищаем хранилище фильмов для целей Тестирования");
         int rowsUpdated = jdbc.update(DELETE_ALL_QUERY);
+        popularityIndex.clear();
+        trendingIndex.clear();
+        likeMatrix.clear();
+        similarityIndex.clear();
+        featureIndex.clear();
+        filmCache.invalidateAll();
         log.debug("Удалено {} записей", rowsUpdated);
     }
 
@@ -159,62 +364,497 @@ public class FilmDbRepository implements FilmStorage {
         if (filmId == null) {
             throw new IllegalArgumentException("ID фильма не может быть null");
         }
-        try {
-            log.debug("Возвращаем фильм с id = {} из хранилища", filmId);
-            return getCompleteFilm(filmId);
-        } catch (EmptyResultDataAccessException ex) {
+        log.debug("Возвращаем фильм с id = {} из хранилища", filmId);
+        Film film = filmCache.get(filmId, this::getCompleteFilm);
+        if (film == null) {
             log.debug("Фильм не найден - вернем null в сервис");
-            return null;
         }
+        return film;
     }
 
-    private void addGenresToFilmDataBase(Film film) {
-        if (film.getGenres() == null || film.getGenres().isEmpty()) {
+    //При обновлении меняем только разницу между текущими и новыми жанрами фильма:
+    //неизменившиеся связи не удаляются и не вставляются заново. Пустой список жанров удаляет все связи.
+    private void updateFilmGenres(Film film) {
+        Set<Integer> newGenreIds = genreIdsOf(film);
+        Set<Integer> removedGenreIds = new LinkedHashSet<>(jdbc.queryForList(FIND_FILM_GENRE_IDS, Integer.class,
+                film.getId()));
+        Set<Integer> addedGenreIds = new LinkedHashSet<>(newGenreIds);
+        addedGenreIds.removeAll(removedGenreIds);
+        removedGenreIds.removeAll(newGenreIds);
+        batchUpdateFilmGenres(DELETE_FILM_GENRE, film.getId(), removedGenreIds);
+        batchUpdateFilmGenres(INSERT_FILM_GENRE, film.getId(), addedGenreIds);
+        log.trace("Жанры фильма с id = {}: добавлено {}, удалено {}", film.getId(), addedGenreIds, removedGenreIds);
+    }
+
+    //Один пакетный запрос на все пары (film_ID, genre_ID) вместо запроса на каждый жанр
+    private void batchUpdateFilmGenres(String sql, long filmId, Collection<Integer> genreIds) {
+        if (genreIds.isEmpty()) {
             return;
         }
-        List<Genres> uniqueGenres = film.getGenres().stream()
-                .distinct()
-                .toList();
-        //Удаляем старые жанры (для случая update)
-        jdbc.update(DELETE_FILM_GENRES, film.getId());
-
-        for (Genres genre : uniqueGenres) {
-            jdbc.update(INSERT_FILM_GENRE, film.getId(), genre.getId());
+        if (genreIds.size() == 1) {
+            jdbc.update(sql, filmId, genreIds.iterator().next());
+            return;
         }
+        jdbc.batchUpdate(sql, genreIds, genreIds.size(), (ps, genreId) -> {
+            ps.setLong(1, filmId);
+            ps.setInt(2, genreId);
+        });
     }
 
-    private Film getCompleteFilm(Long filmId) {
-        Film film = jdbc.queryForObject(FIND_BY_ID_QUERY, mapper, filmId);
-        if (film == null) {
-            return null;
+    private static Set<Integer> genreIdsOf(Film film) {
+        if (film.getGenres() == null) {
+            return Set.of();
         }
-        Mpa mpa = jdbc.queryForObject(GET_MPA_NAME_BY_FILM_ID, mpaRowMapper, filmId);
-        film.setMpa(mpa);
-
-        List<Genres> genres = jdbc.query(GET_GENRES_BY_FILM_ID, genreRowMapper, filmId);
-        film.setGenres(genres);
+        Set<Integer> genreIds = new LinkedHashSet<>();
+        for (Genres genre : film.getGenres()) {
+            genreIds.add(genre.getId());
+        }
+        return genreIds;
+    }
 
-        return film;
+    private Film getCompleteFilm(long filmId) {
+        return jdbc.query(FIND_COMPLETE_FILM_QUERY, rs -> {
+            if (!rs.next()) {
+                return null;
+            }
+            Film film = mapper.mapRow(rs, 0);
+            FilmHydrator.resolveMpa(references, film);
+            List<Genres> genres = new ArrayList<>();
+            do {
+                int genreId = rs.getInt("genre_ID");
+                if (!rs.wasNull()) {
+                    genres.add(FilmHydrator.genre(references, genreId));
+                }
+            } while (rs.next());
+            film.setGenres(genres);
+            return film;
+        }, filmId);
     }
 
     //Ниже приведена логика работы с фильмами и лайками.
     //Предлагается всегда возвращать айди пользователя, кто поставил лайк. Тогда не будет путаницы, что за айди вернулся.
+    //Счетчик likes_count меняется в одной транзакции с likeStorage и только если запись о лайке действительно
+    //добавлена или удалена.
+    //Одновременные лайки разных запросов пишутся одной транзакцией через групповую фиксацию (filmorate.group-commit.*)
+    //Фильм и пользователь заранее не читаются: если кого-то из них нет, запись отклоняет внешний ключ likeStorage
     @Override
     public Long addLikeToFilm(Long filmId, Long userId) {
-        jdbc.update(INSERT_LIKE, filmId, userId);
+        try {
+            likeCommitter.submit(new FilmLike(filmId, userId, null));
+        } catch (DuplicateKeyException ex) {
+            //Тот же лайк одновременно записан другой транзакцией
+            throw duplicatedLike(filmId, userId);
+        } catch (DataIntegrityViolationException ex) {
+            String column = ForeignKeyViolation.column(ex);
+            if ("FILM_ID".equals(column)) {
+                throw new DataNotFoundException("Фильм с Id: " + filmId + " не найден");
+            }
+            if ("USER_ID".equals(column)) {
+                throw new DataNotFoundException("Пользователь с Id: " + userId + " не найден");
+            }
+            throw ex;
+        }
         return userId;
     }
 
+    //Порция групповой фиксации: лайк, который уже стоял, получает DuplicatedDataException, остальные записываются
+    private List<RuntimeException> writeLikeBatch(List<FilmLike> likes) {
+        boolean[] added = mergeLikes(likes);
+        List<RuntimeException> errors = new ArrayList<>(likes.size());
+        for (int i = 0; i < likes.size(); i++) {
+            FilmLike like = likes.get(i);
+            errors.add(added[i] ? null : duplicatedLike(like.getFilmId(), like.getUserId()));
+        }
+        return errors;
+    }
+
+    private static DuplicatedDataException duplicatedLike(Long filmId, Long userId) {
+        return new DuplicatedDataException("Пользователь с Id: " + userId + " уже ставил лайк фильму" +
+                " с Id: " + filmId);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbc.queryForList(FIND_EXISTING_IDS, Long.class, (Object) filmIds.toArray(new Long[0])));
+    }
+
+    //Лайки пишутся одним пакетом вставок без повторов, затем одним пакетом увеличиваются счетчики likes_count фильмов
+    //и один раз обновляются рейтинги в памяти
+    @Transactional
+    @Override
+    public int addLikes(List<FilmLike> likes) {
+        int added = 0;
+        for (boolean isAdded : mergeLikes(likes)) {
+            if (isAdded) {
+                added++;
+            }
+        }
+        log.debug("Записано новых лайков: {} из {}", added, likes.size());
+        return added;
+    }
+
+    //Возвращает по каждому лайку, был ли он записан (false - такой лайк уже стоял)
+    private boolean[] mergeLikes(List<FilmLike> likes) {
+        boolean[] isAdded = new boolean[likes.size()];
+        if (likes.isEmpty()) {
+            return isAdded;
+        }
+        //Время лайка без likedAt задается здесь, чтобы в базе и в рейтинге трендов оно совпадало
+        Instant now = Instant.now();
+        List<FilmLike> stamped = likes.stream()
+                .map(like -> like.getLikedAt() != null ? like : new FilmLike(like.getFilmId(), like.getUserId(), now))
+                .toList();
+        int[][] counts = jdbc.batchUpdate(INSERT_LIKE_IF_ABSENT, stamped, stamped.size(), (ps, like) -> {
+            ps.setLong(1, like.getFilmId());
+            ps.setLong(2, like.getUserId());
+            ps.setTimestamp(3, Timestamp.from(like.getLikedAt()));
+            ps.setLong(4, like.getFilmId());
+            ps.setLong(5, like.getUserId());
+        });
+        Map<Long, Integer> addedByFilmId = new HashMap<>();
+        List<FilmLike> added = new ArrayList<>();
+        for (int i = 0; i < stamped.size(); i++) {
+            if (counts[0][i] > 0) {
+                isAdded[i] = true;
+                FilmLike like = stamped.get(i);
+                addedByFilmId.merge(like.getFilmId(), 1, Integer::sum);
+                added.add(like);
+            }
+        }
+        jdbc.batchUpdate(ADD_LIKES_COUNT, addedByFilmId.entrySet(), addedByFilmId.size(), (ps, entry) -> {
+            ps.setInt(1, entry.getValue());
+            ps.setLong(2, entry.getKey());
+        });
+        applyInMemory(() -> {
+            addedByFilmId.forEach((filmId, delta) -> popularityIndex.changeLikes(filmId, delta));
+            added.forEach(like -> {
+                trendingIndex.addLike(like.getFilmId(), like.getLikedAt(), 1);
+                likeMatrix.add(like.getFilmId(), like.getUserId());
+            });
+        }, () -> {
+            addedByFilmId.forEach((filmId, delta) -> popularityIndex.changeLikes(filmId, -delta));
+            added.forEach(like -> {
+                trendingIndex.addLike(like.getFilmId(), like.getLikedAt(), -1);
+                likeMatrix.remove(like.getFilmId(), like.getUserId());
+            });
+        });
+        addedByFilmId.keySet().forEach(this::invalidateCachedFilm);
+        return isAdded;
+    }
+
+    //Лайки удаляются одним запросом, счетчики likes_count уменьшаются одним пакетом
+    @Transactional
+    @Override
+    public int removeLikes(List<FilmLike> likes) {
+        if (likes.isEmpty()) {
+            return 0;
+        }
+        String sql = REMOVE_LIKES_QUERY.formatted(String.join(", ",
+                Collections.nCopies(likes.size(), REMOVE_LIKES_ROW)));
+        Object[] params = new Object[likes.size() * 2];
+        int i = 0;
+        for (FilmLike like : likes) {
+            params[i++] = like.getFilmId();
+            params[i++] = like.getUserId();
+        }
+        Map<Long, Integer> removedByFilmId = new HashMap<>();
+        List<FilmLike> removed = new ArrayList<>();
+        jdbc.query(sql, (RowCallbackHandler) rs -> {
+            long filmId = rs.getLong("film_ID");
+            removedByFilmId.merge(filmId, 1, Integer::sum);
+            removed.add(new FilmLike(filmId, rs.getLong("user_ID"), rs.getTimestamp("created_at").toInstant()));
+        }, params);
+        jdbc.batchUpdate(ADD_LIKES_COUNT, removedByFilmId.entrySet(), removedByFilmId.size(), (ps, entry) -> {
+            ps.setInt(1, -entry.getValue());
+            ps.setLong(2, entry.getKey());
+        });
+        //Как и при снятии одного лайка, он вычитается из той корзины трендов, в которую был учтен
+        applyInMemory(() -> {
+            removedByFilmId.forEach((filmId, delta) -> popularityIndex.changeLikes(filmId, -delta));
+            removed.forEach(like -> {
+                trendingIndex.addLike(like.getFilmId(), like.getLikedAt(), -1);
+                likeMatrix.remove(like.getFilmId(), like.getUserId());
+            });
+        }, () -> {
+            removedByFilmId.forEach((filmId, delta) -> popularityIndex.changeLikes(filmId, delta));
+            removed.forEach(like -> {
+                trendingIndex.addLike(like.getFilmId(), like.getLikedAt(), 1);
+                likeMatrix.add(like.getFilmId(), like.getUserId());
+            });
+        });
+        removedByFilmId.keySet().forEach(this::invalidateCachedFilm);
+        log.debug("Удалено лайков: {} из {}", removed.size(), likes.size());
+        return removed.size();
+    }
+
+    //Лайки удаляются одним запросом, счетчики likes_count уменьшаются одним пакетом, как в removeLikes
+    @Transactional
+    @Override
+    public int removeLikesOfUser(Long userId) {
+        Map<Long, Integer> removedByFilmId = new HashMap<>();
+        List<FilmLike> removed = new ArrayList<>();
+        jdbc.query(REMOVE_USER_LIKES, (RowCallbackHandler) rs -> {
+            long filmId = rs.getLong("film_ID");
+            removedByFilmId.merge(filmId, 1, Integer::sum);
+            removed.add(new FilmLike(filmId, rs.getLong("user_ID"), rs.getTimestamp("created_at").toInstant()));
+        }, userId);
+        jdbc.batchUpdate(ADD_LIKES_COUNT, removedByFilmId.entrySet(), removedByFilmId.size(), (ps, entry) -> {
+            ps.setInt(1, -entry.getValue());
+            ps.setLong(2, entry.getKey());
+        });
+        applyInMemory(() -> {
+            removedByFilmId.forEach((filmId, delta) -> popularityIndex.changeLikes(filmId, -delta));
+            removed.forEach(like -> trendingIndex.addLike(like.getFilmId(), like.getLikedAt(), -1));
+            likeMatrix.removeUser(userId);
+        }, () -> {
+            removedByFilmId.forEach((filmId, delta) -> popularityIndex.changeLikes(filmId, delta));
+            removed.forEach(like -> {
+                trendingIndex.addLike(like.getFilmId(), like.getLikedAt(), 1);
+                likeMatrix.add(like.getFilmId(), userId);
+            });
+        });
+        removedByFilmId.keySet().forEach(this::invalidateCachedFilm);
+        log.debug("Удалено лайков пользователя с id = {}: {}", userId, removed.size());
+        return removed.size();
+    }
+
+    @Override
+    public boolean hasLike(Long filmId, Long userId) {
+        return jdbc.queryForObject(HAS_LIKE, Integer.class, filmId, userId) > 0;
+    }
+
+    @Transactional
     @Override
     public Long removeLikeFromFilm(Long filmId, Long userId) {
-        jdbc.update(REMOVE_LIKE, filmId, userId);
+        List<Timestamp> removed = jdbc.queryForList(REMOVE_LIKE, Timestamp.class, filmId, userId);
+        if (!removed.isEmpty()) {
+            Instant likedAt = removed.getFirst().toInstant();
+            jdbc.update(DECREMENT_LIKES_COUNT, filmId);
+            //Лайк вычитается из той корзины трендов, в которую был учтен при постановке
+            applyInMemory(() -> {
+                popularityIndex.changeLikes(filmId, -1);
+                trendingIndex.addLike(filmId, likedAt, -1);
+                likeMatrix.remove(filmId, userId);
+            }, () -> {
+                popularityIndex.changeLikes(filmId, 1);
+                trendingIndex.addLike(filmId, likedAt, 1);
+                likeMatrix.add(filmId, userId);
+            });
+            invalidateCachedFilm(filmId);
+        } else {
+            requireUserAndFilm(userId, filmId);
+        }
         return userId;
     }
 
+    //Лайка не было: отдельный запрос нужен только чтобы отличить отсутствующие фильм или пользователя (404)
+    //от снятия несуществующего лайка, которое ничего не меняет
+    private void requireUserAndFilm(Long userId, Long filmId) {
+        jdbc.query(COUNT_USER_AND_FILM, (RowCallbackHandler) rs -> {
+            if (rs.getInt(1) == 0) {
+                throw new DataNotFoundException("Пользователь с Id: " + userId + " не найден");
+            }
+            if (rs.getInt(2) == 0) {
+                throw new DataNotFoundException("Фильм с Id: " + filmId + " не найден");
+            }
+        }, userId, filmId);
+    }
+
+    //Порядок фильмов берется из PopularityIndex без обращения к базе, затем фильмы собираются одним пакетом.
+    //Фильтры по жанру, MPA и году читают заранее построенные рейтинги срезов, а не весь рейтинг.
+    @Override
+    public List<Film> getListOfPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
+        log.debug("Возвращаем {} фильмов из хранилища, отсортированных по максимуму лайков, с фильтрами: " +
+                "жанр {}, MPA {}, год {}", count, genreId, mpaId, year);
+        return findFilmsByIds(popularityIndex.getTop(count, genreId, mpaId, year));
+    }
+
+    //Возвращает фильмы в порядке переданных id; отсутствующие в базе id пропускаются.
+    //Фильмы берутся из кэша, недостающие загружаются одним пакетом.
+    private List<Film> findFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Film> filmsById = filmCache.getAll(ids, this::loadFilmsByIds);
+        List<Film> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Film film = filmsById.get(id);
+            if (film != null) {
+                result.add(film);
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, Film> loadFilmsByIds(Set<? extends Long> ids) {
+        Long[] idsParam = ids.toArray(new Long[0]);
+        List<Film> films = jdbc.query(FIND_BY_IDS_QUERY, mapper, (Object) idsParam);
+        FilmHydrator hydrator = new FilmHydrator(films, references);
+        jdbc.query(FIND_FILM_GENRES_BY_IDS, (RowCallbackHandler) rs ->
+                hydrator.addGenre(rs.getLong("film_ID"), rs.getInt("genre_ID")), (Object) idsParam);
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : hydrator.hydrate()) {
+            filmsById.put(film.getId(), film);
+        }
+        return filmsById;
+    }
+
+    @Override
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        log.debug("Возвращаем {} фильмов из хранилища с максимумом лайков за окно {}", count, window.getCode());
+        return findFilmsByIds(trendingIndex.getTop(window, count));
+    }
+
+    //Рекомендации считаются по заранее вычисленным похожим фильмам без обращения к базе,
+    //затем фильмы собираются одним пакетом
+    @Override
+    public List<Film> getRecommendedFilms(Long userId, int count) {
+        log.debug("Возвращаем {} рекомендованных фильмов для пользователя с id = {}", count, userId);
+        return findFilmsByIds(similarityIndex.recommend(userId, count));
+    }
+
+    //Вкус пользователя собирается по атрибутам лайкнутых фильмов из PopularityIndex, каталог оценивается
+    //в FilmFeatureIndex; база нужна только для сборки найденных фильмов
+    @Override
+    public List<Film> getContentRecommendedFilms(Long userId, int count) {
+        log.debug("Возвращаем {} фильмов, близких по жанрам и MPA к лайкам пользователя с id = {}", count, userId);
+        long[] liked = likeMatrix.getFilmsLikedBy(userId);
+        List<FilmFacets> likedFacets = new ArrayList<>(liked.length);
+        for (long filmId : liked) {
+            FilmFacets facets = popularityIndex.getFacets(filmId);
+            if (facets != null) {
+                likedFacets.add(facets);
+            }
+        }
+        return findFilmsByIds(featureIndex.recommend(likedFacets, liked, count));
+    }
+
+    //Рейтинги заполняются из likeStorage при старте и при ручной перестройке:
+    //популярность - фактическим числом лайков, тренды - лайками последних 7 дней.
+    //Вместе с ними перечитываются признаки фильмов и матрица лайков для рекомендаций,
+    //похожие фильмы пересчитываются в фоне
+    @PostConstruct
+    @Override
+    public void rebuildPopularityIndex() {
+        Map<Long, List<Integer>> genresByFilmId = new HashMap<>();
+        jdbc.query(FIND_ALL_FILM_GENRES, (RowCallbackHandler) rs -> genresByFilmId
+                .computeIfAbsent(rs.getLong("film_ID"), id -> new ArrayList<>())
+                .add(rs.getInt("genre_ID")));
+        PopularityIndex.Loader popularityLoader = popularityIndex.loader();
+        FilmFeatureIndex.Loader featureLoader = featureIndex.loader();
+        jdbc.query(FIND_ACTUAL_LIKES, (RowCallbackHandler) rs -> {
+            long filmId = rs.getLong("film_ID");
+            int[] genreIds = genresByFilmId.getOrDefault(filmId, List.of()).stream()
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            FilmFacets facets = new FilmFacets(rs.getInt("rating_mpa_ID"),
+                    rs.getTimestamp("releaseDate").toLocalDateTime().getYear(), genreIds);
+            popularityLoader.put(filmId, rs.getLong("likes"), facets);
+            featureLoader.put(filmId, facets);
+        });
+        popularityLoader.publish();
+        featureLoader.publish();
+        log.debug("Рейтинг популярности и признаки фильмов построены по likeStorage");
+
+        TrendingIndex.Loader loader = trendingIndex.loader();
+        Timestamp since = Timestamp.from(Instant.now().minus(7, ChronoUnit.DAYS));
+        jdbc.query(FIND_LIKES_SINCE, (RowCallbackHandler) rs ->
+                loader.add(rs.getLong("film_ID"), rs.getTimestamp("created_at").toInstant()), since);
+        loader.publish();
+        log.debug("Рейтинг трендов построен по лайкам с {}", since);
+
+        LikeMatrix.Loader likesLoader = likeMatrix.loader();
+        jdbc.query(FIND_ALL_LIKES, (RowCallbackHandler) rs ->
+                likesLoader.put(rs.getLong("user_ID"), rs.getLong("film_ID")));
+        likesLoader.publish();
+        log.debug("Матрица лайков для рекомендаций построена по likeStorage");
+    }
+
+    //Сравнивает число лайков в PopularityIndex с likeStorage. Фильм, которого нет в базе, но который остался в индексе,
+    //попадает в отчет с фактическим числом лайков 0. Лайки, поставленные во время проверки, могут дать ложное расхождение.
+    @Override
+    public List<LikesCountDrift> checkPopularityIndex() {
+        Map<Long, Long> indexed = popularityIndex.snapshot();
+        List<LikesCountDrift> drifts = new ArrayList<>();
+        loadActualLikes().forEach((filmId, actual) -> {
+            Long stored = indexed.remove(filmId);
+            if (stored == null || stored.longValue() != actual) {
+                drifts.add(new LikesCountDrift(filmId, stored == null ? 0 : stored, actual));
+            }
+        });
+        indexed.forEach((filmId, stored) -> drifts.add(new LikesCountDrift(filmId, stored, 0)));
+        drifts.sort(Comparator.comparing(LikesCountDrift::getFilmId));
+        log.debug("Проверка рейтинга популярности: расхождений {}", drifts.size());
+        return drifts;
+    }
+
+    private Map<Long, Long> loadActualLikes() {
+        Map<Long, Long> likesByFilmId = new HashMap<>();
+        jdbc.query(FIND_ACTUAL_LIKES, (RowCallbackHandler) rs ->
+                likesByFilmId.put(rs.getLong("film_ID"), rs.getLong("likes")));
+        return likesByFilmId;
+    }
+
+    //Изменение рейтингов применяется сразу, а при откате транзакции отменяется обратным действием.
+    //Счетчик лайков в кэше фильмов так не меняется: запись сбрасывается через invalidateCachedFilm
+    private void applyInMemory(Runnable change, Runnable compensation) {
+        change.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        compensation.run();
+                    }
+                }
+            });
+        }
+    }
+
+    //Изменение, которое нельзя отменить обратным действием, выполняется только после фиксации транзакции
+    private void applyAfterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    //Запись кэша сбрасывается сразу и еще раз по завершении транзакции: так в кэше не останется ни версия,
+    //прочитанная другим потоком до фиксации, ни неподтвержденная версия, если транзакция откатится
+    private void invalidateCachedFilm(long filmId) {
+        filmCache.invalidate(filmId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    filmCache.invalidate(filmId);
+                }
+            });
+        }
+    }
+
+    //Пересчитывает likes_count по likeStorage у фильмов, где счетчик разошелся с фактом, и возвращает расхождения.
+    //Новое значение берется подзапросом в момент исправления, поэтому лайки, пришедшие после проверки, не теряются.
+    @Transactional
     @Override
-    public List<Film> getListOfPopularFilms(Integer count) {
-        log.debug("Возвращаем {} фильмов из хранилища, отсортированных по максимуму лайков", count);
-        return jdbc.query(SELECT_MAX_LIKES_FILMS_IN_QTY_OF, mapper, count);
+    public List<LikesCountDrift> reconcileLikesCount() {
+        List<LikesCountDrift> drifts = jdbc.query(FIND_LIKES_COUNT_DRIFT, (rs, rowNum) -> new LikesCountDrift(
+                rs.getLong("film_ID"), rs.getLong("likes_count"), rs.getLong("actual_count")));
+        jdbc.batchUpdate(RECOUNT_LIKES_COUNT, drifts.stream()
+                .map(drift -> new Object[]{drift.getFilmId(), drift.getFilmId()})
+                .toList());
+        drifts.forEach(drift -> invalidateCachedFilm(drift.getFilmId()));
+        log.debug("Пересчитаны счетчики лайков у {} фильмов", drifts.size());
+        return drifts;
     }
 
     //Метод только для целей тестирования
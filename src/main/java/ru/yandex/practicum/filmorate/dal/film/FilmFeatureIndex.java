@@ -0,0 +1,272 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.film.PopularityIndex.FilmFacets;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+//Признаки фильмов для рекомендаций по содержанию, по столбцам: на каждый жанр и каждый рейтинг MPA - массив float
+//по всем фильмам (ячейка фильма одна и та же во всех столбцах), id фильма в ячейке - в filmIds.
+//Жанры фильма весят 1/sqrt(число жанров), его MPA - 1. Вкус пользователя - средний вектор лайкнутых фильмов,
+//оценка фильма - скалярное произведение вкуса на его признаки; весь каталог считается одним проходом
+//по столбцам с ненулевым весом (Vector API при подключенном модуле jdk.incubator.vector, иначе скалярно).
+//Изменения пишутся в ячейки на месте под блокировкой записи, чтение идет без блокировок: параллельный счет может
+//увидеть фильм наполовину обновленным, для рекомендаций это допустимо. Ячейки удаленных фильмов (id 0)
+//пропускаются и занимаются следующими новыми фильмами.
+@Slf4j
+@Component
+public class FilmFeatureIndex {
+
+    private static final String VECTOR_SCORER = "ru.yandex.practicum.filmorate.dal.film.VectorFeatureScorer";
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long NO_FILM = 0;
+
+    //Худший кандидат - первый: меньше оценка, при равенстве больший id
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingDouble(Candidate::score)
+            .thenComparing(Comparator.comparingLong(Candidate::filmId).reversed());
+
+    private final FeatureScorer scorer;
+    private final int genreColumns;
+    private final int mpaColumns;
+    private final Object writeLock = new Object();
+    private volatile Columns columns;
+    private volatile int size;
+    //Поля ниже меняются и читаются только под writeLock
+    private LongIntHashMap slots = new LongIntHashMap();
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    @Autowired
+    public FilmFeatureIndex(ReferenceDataRegistry references,
+                            @Value("${filmorate.content-recommendations.vector-api:true}") boolean vectorApi) {
+        this(references.getAllGenres().stream().mapToInt(Genres::getId).max().orElse(0) + 1,
+                references.getAllMpas().stream().mapToInt(Mpa::getId).max().orElse(0) + 1, createScorer(vectorApi));
+    }
+
+    FilmFeatureIndex(int genreColumns, int mpaColumns, FeatureScorer scorer) {
+        this.genreColumns = genreColumns;
+        this.mpaColumns = mpaColumns;
+        this.scorer = scorer;
+        this.columns = emptyColumns();
+        log.info("Признаки фильмов: {} столбцов жанров и {} столбцов MPA, счет: {}", genreColumns, mpaColumns,
+                scorer.name());
+    }
+
+    //Vector API берется, только если модуль jdk.incubator.vector подключен к JVM и VectorFeatureScorer собран
+    //(профиль vector-api), поэтому класс загружается по имени
+    static FeatureScorer createScorer(boolean vectorApi) {
+        if (vectorApi && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (FeatureScorer) Class.forName(VECTOR_SCORER).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("Vector API недоступен, фильмы считаются скалярно: {}", e.toString());
+            }
+        }
+        return new ScalarFeatureScorer();
+    }
+
+    public String getScorerName() {
+        return scorer.name();
+    }
+
+    public void put(long filmId, FilmFacets facets) {
+        synchronized (writeLock) {
+            int slot = slots.get(filmId, -1);
+            boolean appended = false;
+            if (slot < 0 && freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else if (slot < 0) {
+                if (size == columns.filmIds().length) {
+                    columns = grow(columns, size * 2);
+                }
+                slot = size;
+                appended = true;
+            }
+            slots.put(filmId, slot);
+            Columns current = columns;
+            write(current, slot, facets);
+            current.filmIds()[slot] = filmId;
+            //Новая ячейка становится видна читателям только после записи
+            if (appended) {
+                size = slot + 1;
+            }
+        }
+    }
+
+    public void remove(long filmId) {
+        synchronized (writeLock) {
+            int slot = slots.remove(filmId, -1);
+            if (slot < 0) {
+                return;
+            }
+            Columns current = columns;
+            current.filmIds()[slot] = NO_FILM;
+            for (float[] column : current.features()) {
+                column[slot] = 0f;
+            }
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    public void clear() {
+        synchronized (writeLock) {
+            columns = emptyColumns();
+            size = 0;
+            slots = new LongIntHashMap();
+            freeCount = 0;
+        }
+    }
+
+    //Фильмы, наиболее близкие к вкусу по лайкнутым фильмам liked, кроме excluded (отсортированные id);
+    //фильмы без общих с вкусом признаков не рекомендуются
+    public List<Long> recommend(List<FilmFacets> liked, long[] excluded, int count) {
+        if (liked.isEmpty()) {
+            return List.of();
+        }
+        float[] taste = new float[genreColumns + mpaColumns];
+        for (FilmFacets facets : liked) {
+            addFeatures(taste, facets, 1f / liked.size());
+        }
+        int nonZero = 0;
+        int[] features = new int[taste.length];
+        float[] weights = new float[taste.length];
+        for (int feature = 0; feature < taste.length; feature++) {
+            if (taste[feature] != 0f) {
+                features[nonZero] = feature;
+                weights[nonZero++] = taste[feature];
+            }
+        }
+        Columns current = columns;
+        int filmCount = Math.min(size, current.filmIds().length);
+        float[] scores = new float[filmCount];
+        scorer.score(current.features(), Arrays.copyOf(features, nonZero), Arrays.copyOf(weights, nonZero),
+                filmCount, scores);
+        return top(current.filmIds(), scores, filmCount, excluded, count);
+    }
+
+    private static List<Long> top(long[] filmIds, float[] scores, int filmCount, long[] excluded, int count) {
+        PriorityQueue<Candidate> best = new PriorityQueue<>(count + 1, WORST_FIRST);
+        for (int slot = 0; slot < filmCount; slot++) {
+            float score = scores[slot];
+            long filmId = filmIds[slot];
+            if (score <= 0f || filmId == NO_FILM) {
+                continue;
+            }
+            //Большинство фильмов отсеивается этим сравнением, без создания объекта и поиска в excluded
+            if (best.size() == count && (score < best.peek().score()
+                    || score == best.peek().score() && filmId > best.peek().filmId())) {
+                continue;
+            }
+            if (Arrays.binarySearch(excluded, filmId) >= 0) {
+                continue;
+            }
+            best.add(new Candidate(filmId, score));
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        List<Candidate> sorted = new ArrayList<>(best);
+        sorted.sort(WORST_FIRST.reversed());
+        List<Long> result = new ArrayList<>(sorted.size());
+        for (Candidate candidate : sorted) {
+            result.add(candidate.filmId());
+        }
+        return result;
+    }
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    private Columns emptyColumns() {
+        return new Columns(new long[INITIAL_CAPACITY], new float[genreColumns + mpaColumns][INITIAL_CAPACITY]);
+    }
+
+    private static Columns grow(Columns current, int capacity) {
+        float[][] features = new float[current.features().length][];
+        for (int feature = 0; feature < features.length; feature++) {
+            features[feature] = Arrays.copyOf(current.features()[feature], capacity);
+        }
+        return new Columns(Arrays.copyOf(current.filmIds(), capacity), features);
+    }
+
+    private void write(Columns target, int slot, FilmFacets facets) {
+        for (float[] column : target.features()) {
+            column[slot] = 0f;
+        }
+        float[] vector = new float[genreColumns + mpaColumns];
+        addFeatures(vector, facets, 1f);
+        for (int feature = 0; feature < vector.length; feature++) {
+            if (vector[feature] != 0f) {
+                target.features()[feature][slot] = vector[feature];
+            }
+        }
+    }
+
+    //Неизвестные жанры и рейтинги (добавленные в справочник после запуска) не учитываются
+    private void addFeatures(float[] vector, FilmFacets facets, float scale) {
+        int genres = 0;
+        for (int genreId : facets.genreIds()) {
+            if (genreId >= 0 && genreId < genreColumns) {
+                genres++;
+            }
+        }
+        float genreWeight = genres == 0 ? 0f : scale / (float) Math.sqrt(genres);
+        for (int genreId : facets.genreIds()) {
+            if (genreId >= 0 && genreId < genreColumns) {
+                vector[genreId] += genreWeight;
+            }
+        }
+        if (facets.mpaId() >= 0 && facets.mpaId() < mpaColumns) {
+            vector[genreColumns + facets.mpaId()] += scale;
+        }
+    }
+
+    private record Columns(long[] filmIds, float[][] features) {
+    }
+
+    private record Candidate(long filmId, float score) {
+    }
+
+    //Заполнение новых столбцов; читатели видят их только после publish(), до этого - прежние
+    public final class Loader {
+
+        private final LongIntHashMap loadedSlots = new LongIntHashMap();
+        private Columns loaded = emptyColumns();
+        private int loadedSize;
+
+        private Loader() {
+        }
+
+        public void put(long filmId, FilmFacets facets) {
+            if (loadedSize == loaded.filmIds().length) {
+                loaded = grow(loaded, loadedSize * 2);
+            }
+            write(loaded, loadedSize, facets);
+            loaded.filmIds()[loadedSize] = filmId;
+            loadedSlots.put(filmId, loadedSize++);
+        }
+
+        public void publish() {
+            synchronized (writeLock) {
+                columns = loaded;
+                size = loadedSize;
+                slots = loadedSlots;
+                freeCount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Сборка фильмов за один проход: связи фильм-жанр раскладываются по фильмам через карту id -> позиция в списке,
+//а жанры и рейтинги MPA берутся из ReferenceDataRegistry - все фильмы ссылаются на одни и те же объекты.
+class FilmHydrator {
+
+    private final List<Film> films;
+    private final LongIntHashMap positionByFilmId;
+    private final ReferenceDataRegistry references;
+
+    FilmHydrator(List<Film> films, ReferenceDataRegistry references) {
+        this.films = films;
+        this.references = references;
+        this.positionByFilmId = new LongIntHashMap(films.size());
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setGenres(new ArrayList<>());
+            positionByFilmId.put(film.getId(), i);
+        }
+    }
+
+    void addGenre(long filmId, int genreId) {
+        int position = positionByFilmId.get(filmId, -1);
+        if (position >= 0) {
+            films.get(position).getGenres().add(genre(references, genreId));
+        }
+    }
+
+    List<Film> hydrate() {
+        for (Film film : films) {
+            resolveMpa(references, film);
+        }
+        return films;
+    }
+
+    static Genres genre(ReferenceDataRegistry references, int genreId) {
+        Genres genre = references.getGenre(genreId);
+        return genre != null ? genre : new Genres(genreId, null);
+    }
+
+    static void resolveMpa(ReferenceDataRegistry references, Film film) {
+        Integer mpaId = film.getMpa() == null ? null : film.getMpa().getId();
+        Mpa mpa = mpaId == null ? null : references.getMpa(mpaId);
+        if (mpa != null) {
+            film.setMpa(mpa);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Похожие фильмы для рекомендаций (item-item): для каждого фильма хранится не больше neighbors самых похожих
+//с весом - косинусной мерой по лайкам cos(i, j) = общие лайки / sqrt(лайки i * лайки j), умноженной на SCALE.
+//Общие лайки считаются по LikeMatrix в LongIntHashMap: пользователи, лайкнувшие фильм (не больше max-users-per-film),
+//и их лайки (не больше max-likes-per-user), обе выборки равномерные с шагом, поэтому у популярных фильмов мера
+//оценочная. Лайки сверх max-likes-per-user не досчитываются: пользователь, лайкающий все подряд, мало говорит
+//о сходстве фильмов, и без этого его лайки связали бы все его фильмы между собой.
+//Пересчет идет в фоне раз в refresh-interval и только по фильмам, у которых изменились лайки; мера симметрична,
+//поэтому пересчитанный фильм заодно обновляет свой вес в строках соседей.
+//Рекомендация пользователю - сумма весов соседей его лайкнутых фильмов, без уже лайкнутых.
+@Slf4j
+@Component
+public class FilmSimilarityIndex {
+
+    static final int SCALE = 10_000;
+
+    //Худший кандидат - первый: меньше вес, при равенстве больший id
+    private static final Comparator<Scored> WORST_FIRST = Comparator.comparingInt(Scored::weight)
+            .thenComparing(Comparator.comparingLong(Scored::filmId).reversed());
+
+    private final LikeMatrix likes;
+    private final int neighbors;
+    private final int maxUsersPerFilm;
+    private final int maxLikesPerUser;
+    private final ConcurrentHashMap<Long, Neighbors> rows = new ConcurrentHashMap<>();
+
+    public FilmSimilarityIndex(LikeMatrix likes,
+                               @Value("${filmorate.recommendations.neighbors:50}") int neighbors,
+                               @Value("${filmorate.recommendations.max-users-per-film:1000}") int maxUsersPerFilm,
+                               @Value("${filmorate.recommendations.max-likes-per-user:1000}") int maxLikesPerUser) {
+        this.likes = likes;
+        this.neighbors = neighbors;
+        this.maxUsersPerFilm = maxUsersPerFilm;
+        this.maxLikesPerUser = maxLikesPerUser;
+    }
+
+    //Рекомендуемые фильмы в порядке убывания суммарного веса. У пользователя с множеством лайков учитываются
+    //не больше max-likes-per-user из них, исключаются же все
+    public List<Long> recommend(long userId, int count) {
+        long[] liked = likes.getFilmsLikedBy(userId);
+        long[] sampled = SortedLongArrays.sample(liked, maxLikesPerUser);
+        LongIntHashMap scores = new LongIntHashMap(sampled.length * neighbors);
+        for (long filmId : sampled) {
+            Neighbors row = rows.get(filmId);
+            if (row == null) {
+                continue;
+            }
+            for (int i = 0; i < row.filmIds().length; i++) {
+                scores.addTo(row.filmIds()[i], row.weights()[i]);
+            }
+        }
+        List<Long> result = new ArrayList<>();
+        for (Scored scored : top(scores, liked, count)) {
+            result.add(scored.filmId());
+        }
+        return result;
+    }
+
+    //Похожие фильмы с весами, от более похожего
+    public List<Scored> getNeighbors(long filmId) {
+        Neighbors row = rows.get(filmId);
+        if (row == null) {
+            return List.of();
+        }
+        List<Scored> result = new ArrayList<>(row.filmIds().length);
+        for (int i = 0; i < row.filmIds().length; i++) {
+            result.add(new Scored(row.filmIds()[i], row.weights()[i]));
+        }
+        return result;
+    }
+
+    //Пересчитывает фильмы, изменившиеся с прошлого раза; возвращает их число
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.refresh-interval:PT10S}")
+    public int refresh() {
+        List<Long> changed = likes.drainChangedFilms();
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        for (Long filmId : changed) {
+            refresh(filmId);
+        }
+        log.debug("Похожие фильмы пересчитаны для {} фильмов за {} мс", changed.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        return changed.size();
+    }
+
+    private void refresh(long filmId) {
+        long[] users = likes.getUsersWhoLiked(filmId);
+        Neighbors previous = users.length == 0 ? rows.remove(filmId) : rows.get(filmId);
+        LongIntHashMap weights = users.length == 0 ? new LongIntHashMap() : similarities(filmId, users);
+        weights.forEach((otherId, weight) -> patch(otherId, filmId, weight));
+        //Сосед, с которым общих лайков не осталось, в weights не попал: его вес обнуляется отдельно
+        if (previous != null) {
+            for (long otherId : previous.filmIds()) {
+                if (!weights.containsKey(otherId)) {
+                    patch(otherId, filmId, 0);
+                }
+            }
+        }
+        if (users.length > 0) {
+            List<Scored> best = top(weights, SortedLongArrays.EMPTY, neighbors);
+            rows.put(filmId, Neighbors.of(best));
+        }
+    }
+
+    private LongIntHashMap similarities(long filmId, long[] users) {
+        long[] sampledUsers = SortedLongArrays.sample(users, maxUsersPerFilm);
+        LongIntHashMap common = new LongIntHashMap();
+        for (long userId : sampledUsers) {
+            for (long otherId : SortedLongArrays.sample(likes.getFilmsLikedBy(userId), maxLikesPerUser)) {
+                if (otherId != filmId) {
+                    common.addTo(otherId, 1);
+                }
+            }
+        }
+        //Общие лайки по выборке пользователей пересчитываются на всех пользователей фильма
+        double usersScale = (double) users.length / sampledUsers.length;
+        LongIntHashMap weights = new LongIntHashMap(common.size());
+        common.forEach((otherId, count) -> {
+            int otherLikes = likes.getUsersWhoLiked(otherId).length;
+            if (otherLikes == 0) {
+                return;
+            }
+            double cosine = count * usersScale / Math.sqrt((double) users.length * otherLikes);
+            int weight = (int) Math.min(SCALE, Math.round(cosine * SCALE));
+            if (weight > 0) {
+                weights.addTo(otherId, weight);
+            }
+        });
+        return weights;
+    }
+
+    //Обновляет вес filmId в строке otherId: запись меняется, если filmId уже в строке или теперь в нее проходит
+    private void patch(long otherId, long filmId, int weight) {
+        rows.computeIfPresent(otherId, (id, row) -> row.with(filmId, weight, neighbors));
+    }
+
+    public void clear() {
+        rows.clear();
+    }
+
+    private static List<Scored> top(LongIntHashMap weights, long[] excluded, int count) {
+        PriorityQueue<Scored> best = new PriorityQueue<>(count + 1, WORST_FIRST);
+        weights.forEach((filmId, weight) -> {
+            if (Arrays.binarySearch(excluded, filmId) >= 0) {
+                return;
+            }
+            best.add(new Scored(filmId, weight));
+            if (best.size() > count) {
+                best.poll();
+            }
+        });
+        List<Scored> result = new ArrayList<>(best);
+        result.sort(WORST_FIRST.reversed());
+        return result;
+    }
+
+    public record Scored(long filmId, int weight) {
+    }
+
+    //Строка соседей фильма, упорядоченная от более похожего; после публикации не меняется
+    private record Neighbors(long[] filmIds, int[] weights) {
+
+        private static Neighbors of(List<Scored> scored) {
+            long[] filmIds = new long[scored.size()];
+            int[] weights = new int[scored.size()];
+            for (int i = 0; i < scored.size(); i++) {
+                filmIds[i] = scored.get(i).filmId();
+                weights[i] = scored.get(i).weight();
+            }
+            return new Neighbors(filmIds, weights);
+        }
+
+        //Копия с новым весом filmId (0 - без filmId); та же строка, если filmId в нее не проходит
+        private Neighbors with(long filmId, int weight, int capacity) {
+            int index = -1;
+            for (int i = 0; i < filmIds.length; i++) {
+                if (filmIds[i] == filmId) {
+                    index = i;
+                    break;
+                }
+            }
+            boolean fits = weight > 0 && (filmIds.length < capacity
+                    || WORST_FIRST.compare(new Scored(filmId, weight),
+                    new Scored(filmIds[filmIds.length - 1], weights[weights.length - 1])) > 0);
+            if (index < 0 && !fits) {
+                return this;
+            }
+            List<Scored> scored = new ArrayList<>(filmIds.length + 1);
+            for (int i = 0; i < filmIds.length; i++) {
+                if (i != index) {
+                    scored.add(new Scored(filmIds[i], weights[i]));
+                }
+            }
+            if (weight > 0) {
+                scored.add(new Scored(filmId, weight));
+            }
+            scored.sort(WORST_FIRST.reversed());
+            return of(scored.size() > capacity ? scored.subList(0, capacity) : scored);
+        }
+    }
+}
@@ -1,19 +1,32 @@
 package ru.yandex.practicum.filmorate.dal.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.LikesCountDrift;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     Film create(Film film);
 
+    //Фильмы создаются в одной транзакции; возвращается тот же список с заполненными id
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     Film delete(Long filmId);
 
     List<Film> getAll();
 
+    List<Film> getPage(long afterId, int limit);
+
+    void exportAll(Consumer<Film> consumer);
+
     void clear();
 
     Film getFilmById(Long filmId);
@@ -22,5 +35,34 @@ public interface FilmStorage {
 
     Long removeLikeFromFilm(Long filmId, Long userId);
 
-    List<Film> getListOfPopularFilms(Integer count);
+    //Какие из переданных id фильмов есть в хранилище
+    Set<Long> findExistingIds(Collection<Long> filmIds);
+
+    //Пакетная запись лайков без повторов; уже существующие лайки пропускаются. Возвращает число новых лайков
+    int addLikes(List<FilmLike> likes);
+
+    //Пакетное удаление лайков; отсутствующие лайки пропускаются. Возвращает число удаленных лайков
+    int removeLikes(List<FilmLike> likes);
+
+    //Удаляет все лайки пользователя вместе со счетчиками фильмов (перед удалением самого пользователя).
+    //Возвращает число удаленных лайков
+    int removeLikesOfUser(Long userId);
+
+    boolean hasLike(Long filmId, Long userId);
+
+    List<Film> getListOfPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year);
+
+    List<Film> getTrendingFilms(TrendingWindow window, int count);
+
+    //Фильмы, похожие по лайкам на понравившиеся пользователю, кроме уже лайкнутых им
+    List<Film> getRecommendedFilms(Long userId, int count);
+
+    //Фильмы, близкие по жанрам и MPA к понравившимся пользователю, кроме уже лайкнутых им
+    List<Film> getContentRecommendedFilms(Long userId, int count);
+
+    List<LikesCountDrift> reconcileLikesCount();
+
+    void rebuildPopularityIndex();
+
+    List<LikesCountDrift> checkPopularityIndex();
 }
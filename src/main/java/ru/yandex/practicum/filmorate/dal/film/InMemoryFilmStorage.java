@@ -4,8 +4,12 @@ import lombok.extern.slf4j.Slf4j;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.LikesCountDrift;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 //@Component
@@ -25,6 +29,12 @@ public class InMemoryFilmStorage implements FilmStorage {
         return film;
     }
 
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        films.forEach(this::create);
+        return films;
+    }
+
     @Override
     public Film update(Film film) {
         if (!filmStorage.containsKey(film.getId()) | film.getId() == null) {
@@ -54,6 +64,24 @@ public class InMemoryFilmStorage implements FilmStorage {
         return new ArrayList<>(filmStorage.values());
     }
 
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        log.debug("Возвращаем страницу фильмов после id = {} размером {}", afterId, limit);
+        return filmStorage.values().stream()
+                .filter(film -> film.getId() > afterId)
+                .sorted(Comparator.comparing(Film::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public void exportAll(Consumer<Film> consumer) {
+        log.debug("Выгружаем все фильмы из хранилища");
+        filmStorage.values().stream()
+                .sorted(Comparator.comparing(Film::getId))
+                .forEach(consumer);
+    }
+
     //Метод для целей тестирования
     @Override
     public void clear() {
@@ -119,10 +147,63 @@ public class InMemoryFilmStorage implements FilmStorage {
     }
 
     @Override
-    public List<Film> getListOfPopularFilms(Integer count) {
+    public Set<Long> findExistingIds(Collection<Long> filmIds) {
+        Set<Long> existing = new HashSet<>();
+        for (Long filmId : filmIds) {
+            if (filmStorage.containsKey(filmId)) {
+                existing.add(filmId);
+            }
+        }
+        return existing;
+    }
+
+    @Override
+    public int addLikes(List<FilmLike> likes) {
+        int added = 0;
+        for (FilmLike like : likes) {
+            if (likeStorage.computeIfAbsent(like.getFilmId(), id -> new HashSet<>()).add(like.getUserId())) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public int removeLikes(List<FilmLike> likes) {
+        int removed = 0;
+        for (FilmLike like : likes) {
+            if (likeStorage.getOrDefault(like.getFilmId(), Set.of()).contains(like.getUserId())) {
+                likeStorage.get(like.getFilmId()).remove(like.getUserId());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public int removeLikesOfUser(Long userId) {
+        int removed = 0;
+        for (Set<Long> users : likeStorage.values()) {
+            if (users.remove(userId)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean hasLike(Long filmId, Long userId) {
+        return likeStorage.getOrDefault(filmId, Set.of()).contains(userId);
+    }
+
+    @Override
+    public List<Film> getListOfPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
         log.debug("Возвращаем фильмы из хранилища в кол-ве count = {} и отсортированными по кол-ву лайков", count);
         return getAll().stream()
                 .filter(Objects::nonNull)
+                .filter(film -> genreId == null || film.getGenres().stream().anyMatch(g -> genreId.equals(g.getId())))
+                .filter(film -> mpaId == null || mpaId.equals(film.getMpa().getId()))
+                .filter(film -> year == null || year == film.getReleaseDate().getYear())
                 .sorted(Comparator.comparingInt(
                                 (Film film) -> likeStorage.getOrDefault(film.getId(), Collections.emptySet()).size()
                         ).reversed()
@@ -130,4 +211,87 @@ public class InMemoryFilmStorage implements FilmStorage {
                 .limit(count)
                 .toList();
     }
+
+    //Время лайков здесь не хранится, поэтому тренды совпадают с популярными фильмами за все время
+    @Override
+    public List<Film> getTrendingFilms(TrendingWindow window, int count) {
+        return getListOfPopularFilms(count, null, null, null);
+    }
+
+    //Без заранее вычисленных похожих фильмов: фильмы упорядочены по числу пользователей, которые лайкнули их
+    //вместе с каким-либо фильмом из лайков пользователя
+    @Override
+    public List<Film> getRecommendedFilms(Long userId, int count) {
+        Set<Long> liked = new HashSet<>();
+        likeStorage.forEach((filmId, users) -> {
+            if (users.contains(userId)) {
+                liked.add(filmId);
+            }
+        });
+        Map<Long, Integer> scores = new HashMap<>();
+        for (Long filmId : liked) {
+            for (Long otherUserId : likeStorage.get(filmId)) {
+                likeStorage.forEach((otherFilmId, users) -> {
+                    if (!liked.contains(otherFilmId) && users.contains(otherUserId)) {
+                        scores.merge(otherFilmId, 1, Integer::sum);
+                    }
+                });
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(entry -> filmStorage.get(entry.getKey()))
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    //Оценка фильма - сколько раз его жанры и MPA встречаются у лайкнутых пользователем фильмов
+    @Override
+    public List<Film> getContentRecommendedFilms(Long userId, int count) {
+        Map<Integer, Integer> genreCounts = new HashMap<>();
+        Map<Integer, Integer> mpaCounts = new HashMap<>();
+        Set<Long> liked = new HashSet<>();
+        likeStorage.forEach((filmId, users) -> {
+            Film film = filmStorage.get(filmId);
+            if (film != null && users.contains(userId)) {
+                liked.add(filmId);
+                film.getGenres().forEach(genre -> genreCounts.merge(genre.getId(), 1, Integer::sum));
+                mpaCounts.merge(film.getMpa().getId(), 1, Integer::sum);
+            }
+        });
+        Map<Long, Integer> scores = new HashMap<>();
+        filmStorage.values().stream()
+                .filter(film -> !liked.contains(film.getId()))
+                .forEach(film -> {
+                    int score = mpaCounts.getOrDefault(film.getMpa().getId(), 0) + film.getGenres().stream()
+                            .mapToInt(genre -> genreCounts.getOrDefault(genre.getId(), 0))
+                            .sum();
+                    if (score > 0) {
+                        scores.put(film.getId(), score);
+                    }
+                });
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(entry -> filmStorage.get(entry.getKey()))
+                .toList();
+    }
+
+    //Лайки считаются по likeStorage при каждом запросе, расходиться нечему
+    @Override
+    public List<LikesCountDrift> reconcileLikesCount() {
+        return List.of();
+    }
+
+    @Override
+    public void rebuildPopularityIndex() {
+    }
+
+    @Override
+    public List<LikesCountDrift> checkPopularityIndex() {
+        return List.of();
+    }
 }
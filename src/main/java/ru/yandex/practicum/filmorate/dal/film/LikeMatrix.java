@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Разреженная матрица лайков пользователь × фильм в памяти для рекомендаций: по каждому пользователю - отсортированный
+//массив id понравившихся фильмов, по каждому фильму - отсортированный массив id пользователей, поставивших лайк.
+//Как и в FriendshipGraph, массивы копируются при изменении, чтение идет без блокировок.
+//Фильмы, у которых изменился состав лайков, копятся до очередного пересчета похожих фильмов (FilmSimilarityIndex).
+@Component
+public class LikeMatrix {
+
+    private volatile State state = new State(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+    private final Set<Long> changedFilms = ConcurrentHashMap.newKeySet();
+
+    //Возвращает общий с матрицей массив, изменять его нельзя
+    public long[] getFilmsLikedBy(long userId) {
+        return state.filmsByUser().getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    //Возвращает общий с матрицей массив, изменять его нельзя
+    public long[] getUsersWhoLiked(long filmId) {
+        return state.usersByFilm().getOrDefault(filmId, SortedLongArrays.EMPTY);
+    }
+
+    public void add(long filmId, long userId) {
+        State current = state;
+        current.filmsByUser().compute(userId, (id, films) -> insert(films, filmId));
+        current.usersByFilm().compute(filmId, (id, users) -> insert(users, userId));
+        changedFilms.add(filmId);
+    }
+
+    public void remove(long filmId, long userId) {
+        State current = state;
+        current.filmsByUser().computeIfPresent(userId, (id, films) -> remove(films, filmId));
+        current.usersByFilm().computeIfPresent(filmId, (id, users) -> remove(users, userId));
+        changedFilms.add(filmId);
+    }
+
+    public void removeFilm(long filmId) {
+        State current = state;
+        long[] users = current.usersByFilm().remove(filmId);
+        if (users != null) {
+            for (long userId : users) {
+                current.filmsByUser().computeIfPresent(userId, (id, films) -> remove(films, filmId));
+            }
+        }
+        changedFilms.add(filmId);
+    }
+
+    //Лайки удаленного пользователя удаляются из базы каскадно, здесь - вместе с ним
+    public void removeUser(long userId) {
+        State current = state;
+        long[] films = current.filmsByUser().remove(userId);
+        if (films == null) {
+            return;
+        }
+        for (long filmId : films) {
+            current.usersByFilm().computeIfPresent(filmId, (id, users) -> remove(users, userId));
+            changedFilms.add(filmId);
+        }
+    }
+
+    //Прежние фильмы помечаются измененными, чтобы их похожие фильмы тоже были убраны при пересчете
+    public void clear() {
+        State previous = state;
+        state = new State(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        changedFilms.addAll(previous.usersByFilm().keySet());
+    }
+
+    //Фильмы, изменившиеся с прошлого вызова; изменения во время вызова попадут в этот или в следующий
+    public List<Long> drainChangedFilms() {
+        List<Long> drained = new ArrayList<>();
+        for (Long filmId : changedFilms) {
+            if (changedFilms.remove(filmId)) {
+                drained.add(filmId);
+            }
+        }
+        return drained;
+    }
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    private static long[] insert(long[] ids, long id) {
+        return ids == null ? new long[]{id} : SortedLongArrays.insert(ids, id);
+    }
+
+    private static long[] remove(long[] ids, long id) {
+        long[] changed = SortedLongArrays.remove(ids, id);
+        return changed.length == 0 ? null : changed;
+    }
+
+    private record State(ConcurrentHashMap<Long, long[]> filmsByUser, ConcurrentHashMap<Long, long[]> usersByFilm) {
+    }
+
+    //Заполнение новой матрицы; читатели видят ее только после publish(), до этого - прежнюю.
+    //После публикации все фильмы, старые и новые, считаются измененными
+    public final class Loader {
+
+        private final ConcurrentHashMap<Long, long[]> filmsByUser = new ConcurrentHashMap<>();
+        private final Map<Long, LongList> usersByFilm = new HashMap<>();
+        private final LongList films = new LongList();
+        private long userId;
+
+        private Loader() {
+        }
+
+        //Лайки одного пользователя должны идти подряд
+        public void put(long userId, long filmId) {
+            if (films.size > 0 && userId != this.userId) {
+                finishUser();
+            }
+            this.userId = userId;
+            films.add(filmId);
+            usersByFilm.computeIfAbsent(filmId, id -> new LongList()).add(userId);
+        }
+
+        public void publish() {
+            if (films.size > 0) {
+                finishUser();
+            }
+            ConcurrentHashMap<Long, long[]> loadedUsersByFilm = new ConcurrentHashMap<>(usersByFilm.size());
+            usersByFilm.forEach((filmId, users) -> loadedUsersByFilm.put(filmId, users.toSortedArray()));
+            State previous = state;
+            state = new State(filmsByUser, loadedUsersByFilm);
+            changedFilms.addAll(previous.usersByFilm().keySet());
+            changedFilms.addAll(loadedUsersByFilm.keySet());
+        }
+
+        private void finishUser() {
+            filmsByUser.put(userId, films.toSortedArray());
+            films.size = 0;
+        }
+    }
+
+    private static final class LongList {
+
+        private long[] values = new long[4];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
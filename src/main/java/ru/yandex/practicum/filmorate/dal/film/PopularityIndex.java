@@ -0,0 +1,221 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.LongConsumer;
+
+//Рейтинг фильмов по числу лайков в памяти: упорядоченное множество пар (лайки, id фильма).
+//Изменение счетчика фильма - O(log n) под блокировкой только этого фильма (compute в ConcurrentHashMap),
+//чтение первых count фильмов идет без блокировок и стоит O(count).
+//Кроме общего рейтинга ведутся такие же рейтинги по каждому жанру, рейтингу MPA и году выпуска,
+//поэтому выборка с фильтром читает только фильмы нужного среза.
+@Component
+public class PopularityIndex {
+
+    private static final Comparator<Entry> RANKING_ORDER = Comparator.comparingLong(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private static final int GENRE_FACET = 1;
+    private static final int MPA_FACET = 2;
+    private static final int YEAR_FACET = 3;
+
+    private volatile State state = new State();
+
+    public void put(long filmId, long likes, FilmFacets facets) {
+        State current = state;
+        current.entries.compute(filmId, (id, old) -> current.replace(old, new Entry(likes, id, facets)));
+    }
+
+    public void changeLikes(long filmId, long delta) {
+        State current = state;
+        current.entries.computeIfPresent(filmId, (id, old) ->
+                current.replace(old, new Entry(old.likes() + delta, id, old.facets())));
+    }
+
+    public void changeFacets(long filmId, FilmFacets facets) {
+        State current = state;
+        current.entries.computeIfPresent(filmId, (id, old) -> current.replace(old, new Entry(old.likes(), id, facets)));
+    }
+
+    public void remove(long filmId) {
+        State current = state;
+        current.entries.computeIfPresent(filmId, (id, old) -> current.replace(old, null));
+    }
+
+    public long getLikes(long filmId, long defaultValue) {
+        Entry entry = state.entries.get(filmId);
+        return entry == null ? defaultValue : entry.likes();
+    }
+
+    public FilmFacets getFacets(long filmId) {
+        Entry entry = state.entries.get(filmId);
+        return entry == null ? null : entry.facets();
+    }
+
+    public List<Long> getTop(int count) {
+        return getTop(count, null, null, null);
+    }
+
+    //Параметр фильтра null означает отсутствие фильтра. Читается рейтинг самого узкого среза
+    //(год, затем жанр, затем MPA), остальные условия проверяются по атрибутам фильма в записи.
+    //Новая позиция фильма добавляется раньше, чем удаляется старая, поэтому при конкурентном изменении
+    //фильм может встретиться дважды - повтор пропускается. Буферы - не больше числа фильмов в индексе,
+    //а не count, который может быть сколь угодно большим.
+    public List<Long> getTop(int count, Integer genreId, Integer mpaId, Integer year) {
+        State current = state;
+        NavigableSet<Entry> ranking;
+        if (year != null) {
+            ranking = current.facetRankings.get(facetKey(YEAR_FACET, year));
+        } else if (genreId != null) {
+            ranking = current.facetRankings.get(facetKey(GENRE_FACET, genreId));
+        } else if (mpaId != null) {
+            ranking = current.facetRankings.get(facetKey(MPA_FACET, mpaId));
+        } else {
+            ranking = current.ranking;
+        }
+        int capacity = Math.min(count, current.entries.size());
+        List<Long> result = new ArrayList<>(capacity);
+        if (ranking == null) {
+            return result;
+        }
+        LongIntHashMap seen = new LongIntHashMap(capacity);
+        for (Entry entry : ranking) {
+            if (result.size() == count) {
+                break;
+            }
+            if (entry.facets().matches(genreId, mpaId, year) && !seen.containsKey(entry.filmId())) {
+                seen.put(entry.filmId(), 0);
+                result.add(entry.filmId());
+            }
+        }
+        return result;
+    }
+
+    public Map<Long, Long> snapshot() {
+        Map<Long, Long> result = new HashMap<>();
+        state.entries.forEach((filmId, entry) -> result.put(filmId, entry.likes()));
+        return result;
+    }
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    public void clear() {
+        state = new State();
+    }
+
+    private static long facetKey(int facet, int value) {
+        return ((long) facet << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    //Атрибуты фильма, по которым строятся срезы рейтинга
+    public record FilmFacets(int mpaId, int releaseYear, int[] genreIds) {
+
+        public static FilmFacets of(Film film) {
+            int[] genreIds = film.getGenres() == null ? new int[0] : film.getGenres().stream()
+                    .mapToInt(Genres::getId)
+                    .distinct()
+                    .toArray();
+            return new FilmFacets(film.getMpa().getId(), film.getReleaseDate().getYear(), genreIds);
+        }
+
+        private boolean matches(Integer genreId, Integer mpaId, Integer year) {
+            return (mpaId == null || mpaId == this.mpaId)
+                    && (year == null || year == releaseYear)
+                    && (genreId == null || hasGenre(genreId));
+        }
+
+        private boolean hasGenre(int genreId) {
+            for (int id : genreIds) {
+                if (id == genreId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    //Заполнение нового состояния индекса; читатели видят его только после publish(),
+    //поэтому частично заполненный рейтинг никогда не отдается
+    public final class Loader {
+
+        private final State loaded = new State();
+
+        private Loader() {
+        }
+
+        public void put(long filmId, long likes, FilmFacets facets) {
+            loaded.entries.put(filmId, loaded.replace(null, new Entry(likes, filmId, facets)));
+        }
+
+        public void publish() {
+            state = loaded;
+        }
+    }
+
+    private record Entry(long likes, long filmId, FilmFacets facets) {
+    }
+
+    private static final class State {
+
+        private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(RANKING_ORDER);
+        private final ConcurrentHashMap<Long, ConcurrentSkipListSet<Entry>> facetRankings = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+        //Обычно новая позиция добавляется раньше, чем удаляется старая, и читатель не теряет фильм.
+        //Если позиция та же (изменились только атрибуты), множество считает записи равными: add не добавил бы
+        //новую, а remove удалил бы единственную. Тогда в срезах, где фильм остается, запись заменяется на месте,
+        //из срезов только старых атрибутов удаляется, в срезы только новых добавляется
+        private Entry replace(Entry old, Entry fresh) {
+            boolean samePosition = old != null && fresh != null && RANKING_ORDER.compare(old, fresh) == 0;
+            Entry replaced = samePosition ? old : null;
+            if (fresh != null) {
+                put(ranking, replaced, fresh);
+                forEachFacet(fresh.facets(), facet -> put(facetRankings
+                        .computeIfAbsent(facet, key -> new ConcurrentSkipListSet<>(RANKING_ORDER)), replaced, fresh));
+            }
+            if (old != null) {
+                LongIntHashMap kept = new LongIntHashMap();
+                if (samePosition) {
+                    forEachFacet(fresh.facets(), facet -> kept.put(facet, 0));
+                } else {
+                    ranking.remove(old);
+                }
+                forEachFacet(old.facets(), facet -> {
+                    ConcurrentSkipListSet<Entry> facetRanking = facetRankings.get(facet);
+                    if (facetRanking != null && !kept.containsKey(facet)) {
+                        facetRanking.remove(old);
+                    }
+                });
+            }
+            return fresh;
+        }
+
+        private static void put(ConcurrentSkipListSet<Entry> ranking, Entry replaced, Entry fresh) {
+            if (replaced != null) {
+                ranking.remove(replaced);
+            }
+            ranking.add(fresh);
+        }
+
+        private static void forEachFacet(FilmFacets facets, LongConsumer action) {
+            action.accept(facetKey(MPA_FACET, facets.mpaId()));
+            action.accept(facetKey(YEAR_FACET, facets.releaseYear()));
+            for (int genreId : facets.genreIds()) {
+                action.accept(facetKey(GENRE_FACET, genreId));
+            }
+        }
+    }
+}
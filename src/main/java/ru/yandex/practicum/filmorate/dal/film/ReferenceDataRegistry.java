@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.util.Comparator;
+import java.util.List;
+
+//Справочники жанров и рейтингов MPA, загруженные из базы при старте.
+//Хранятся в массивах, индексированных по id: поиск - O(1) без обращения к базе и без создания объектов.
+//Объекты общие для всех фильмов и ответов (flyweight) - изменять их нельзя.
+//Справочники меняются только через data.sql, после их изменения нужно вызвать reload().
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class ReferenceDataRegistry {
+
+    private final GenreStorage genreStorage;
+    private final MpaStorage mpaStorage;
+
+    private volatile Snapshot snapshot = new Snapshot(new Genres[0], new Mpa[0], List.of(), List.of());
+
+    @PostConstruct
+    public void reload() {
+        List<Genres> genres = genreStorage.getAllGenres().stream()
+                .sorted(Comparator.comparing(Genres::getId))
+                .toList();
+        List<Mpa> mpas = mpaStorage.getAllMpas().stream()
+                .sorted(Comparator.comparing(Mpa::getId))
+                .toList();
+        Genres[] genresById = new Genres[genres.isEmpty() ? 0 : genres.getLast().getId() + 1];
+        for (Genres genre : genres) {
+            genresById[genre.getId()] = genre;
+        }
+        Mpa[] mpasById = new Mpa[mpas.isEmpty() ? 0 : mpas.getLast().getId() + 1];
+        for (Mpa mpa : mpas) {
+            mpasById[mpa.getId()] = mpa;
+        }
+        snapshot = new Snapshot(genresById, mpasById, genres, mpas);
+        log.debug("Справочники загружены: жанров {}, рейтингов MPA {}", genres.size(), mpas.size());
+    }
+
+    //null, если жанра с таким id нет
+    public Genres getGenre(int genreId) {
+        Genres[] genresById = snapshot.genresById();
+        return genreId >= 0 && genreId < genresById.length ? genresById[genreId] : null;
+    }
+
+    //null, если рейтинга с таким id нет
+    public Mpa getMpa(int mpaId) {
+        Mpa[] mpasById = snapshot.mpasById();
+        return mpaId >= 0 && mpaId < mpasById.length ? mpasById[mpaId] : null;
+    }
+
+    //Неизменяемые списки, упорядоченные по id
+    public List<Genres> getAllGenres() {
+        return snapshot.genres();
+    }
+
+    public List<Mpa> getAllMpas() {
+        return snapshot.mpas();
+    }
+
+    private record Snapshot(Genres[] genresById, Mpa[] mpasById, List<Genres> genres, List<Mpa> mpas) {
+    }
+}
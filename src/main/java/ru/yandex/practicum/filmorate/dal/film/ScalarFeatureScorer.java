@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.util.Arrays;
+
+//Запасной вариант без Vector API: столбцы проходятся по одному, внутренний цикл по фильмам JIT векторизует сам,
+//но scores читается и пишется заново на каждый признак
+final class ScalarFeatureScorer implements FeatureScorer {
+
+    @Override
+    public void score(float[][] columns, int[] features, float[] weights, int size, float[] scores) {
+        Arrays.fill(scores, 0, size, 0f);
+        for (int k = 0; k < features.length; k++) {
+            float[] column = columns[features[k]];
+            float weight = weights[k];
+            for (int i = 0; i < size; i++) {
+                scores[i] += weight * column[i];
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
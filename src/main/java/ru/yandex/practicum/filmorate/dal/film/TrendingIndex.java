@@ -0,0 +1,207 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Лайки фильмов за последние 1ч/24ч/7д в кольцевых буферах счетчиков: 60 поминутных и 168 почасовых корзин.
+//Суммы по окнам поддерживаются при каждом изменении и при сдвиге корзин, поэтому окно не пересчитывается.
+//Сдвиг выполняется лениво при обращении к фильму, а планировщик раз в минуту сдвигает все фильмы
+//и убирает те, у которых за 7 дней не осталось лайков.
+@Slf4j
+@Component
+public class TrendingIndex {
+
+    private static final int MINUTE_BUCKETS = 60;
+    private static final int HOUR_BUCKETS = 168;
+    private static final int DAY_HOURS = 24;
+
+    private final Clock clock;
+    private volatile ConcurrentHashMap<Long, FilmTrend> trends = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TrendingIndex() {
+        this(Clock.systemUTC());
+    }
+
+    TrendingIndex(Clock clock) {
+        this.clock = clock;
+    }
+
+    //delta = 1 для лайка и -1 для снятия лайка, likedAt - время постановки лайка
+    public void addLike(long filmId, Instant likedAt, int delta) {
+        Instant now = clock.instant();
+        //Лайк старше недели ни в одно окно не попадает (например, исторический лайк из пакетной загрузки)
+        if (FilmTrend.epochHour(likedAt) <= FilmTrend.epochHour(now) - HOUR_BUCKETS) {
+            return;
+        }
+        trends.compute(filmId, (id, trend) -> {
+            FilmTrend result = trend == null ? new FilmTrend(now) : trend;
+            result.advanceTo(now);
+            result.add(likedAt.isAfter(now) ? now : likedAt, delta);
+            return result;
+        });
+    }
+
+    public void remove(long filmId) {
+        trends.remove(filmId);
+    }
+
+    //Очередь - не больше числа фильмов в индексе, а не count, который может быть сколь угодно большим
+    public List<Long> getTop(TrendingWindow window, int count) {
+        Instant now = clock.instant();
+        ConcurrentHashMap<Long, FilmTrend> films = trends;
+        PriorityQueue<long[]> top = new PriorityQueue<>(Math.min(count, films.size()) + 1, Comparator
+                .comparingLong((long[] entry) -> entry[1])
+                .thenComparing((long[] entry) -> entry[0], Comparator.reverseOrder()));
+        for (Long filmId : films.keySet()) {
+            FilmTrend trend = films.computeIfPresent(filmId, (id, current) -> {
+                current.advanceTo(now);
+                return current;
+            });
+            long likes = trend == null ? 0 : trend.total(window);
+            if (likes > 0) {
+                top.add(new long[]{filmId, likes});
+                if (top.size() > count) {
+                    top.poll();
+                }
+            }
+        }
+        List<Long> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(top.poll()[0]);
+        }
+        return result.reversed();
+    }
+
+    @Scheduled(fixedRate = 60_000)
+    public void rotate() {
+        Instant now = clock.instant();
+        int before = trends.size();
+        for (Long filmId : trends.keySet()) {
+            trends.computeIfPresent(filmId, (id, trend) -> {
+                trend.advanceTo(now);
+                return trend.total(TrendingWindow.SEVEN_DAYS) == 0 ? null : trend;
+            });
+        }
+        log.trace("Сдвиг корзин трендов: фильмов было {}, осталось {}", before, trends.size());
+    }
+
+    public Loader loader() {
+        return new Loader(clock.instant());
+    }
+
+    public void clear() {
+        trends = new ConcurrentHashMap<>();
+    }
+
+    //Заполнение нового состояния индекса; читатели видят его только после publish()
+    public final class Loader {
+
+        private final Instant now;
+        private final ConcurrentHashMap<Long, FilmTrend> loaded = new ConcurrentHashMap<>();
+
+        private Loader(Instant now) {
+            this.now = now;
+        }
+
+        public void add(long filmId, Instant likedAt) {
+            loaded.computeIfAbsent(filmId, id -> new FilmTrend(now)).add(likedAt.isAfter(now) ? now : likedAt, 1);
+        }
+
+        public void publish() {
+            trends = loaded;
+        }
+    }
+
+    //Изменяется только внутри compute() карты trends, т.е. под блокировкой своего фильма
+    private static final class FilmTrend {
+
+        private final int[] minuteBuckets = new int[MINUTE_BUCKETS];
+        private final int[] hourBuckets = new int[HOUR_BUCKETS];
+        private long minute;
+        private long hour;
+        private long hourTotal;
+        private long dayTotal;
+        private long weekTotal;
+
+        private FilmTrend(Instant now) {
+            minute = epochMinute(now);
+            hour = epochHour(now);
+        }
+
+        private void add(Instant likedAt, int delta) {
+            long likedMinute = epochMinute(likedAt);
+            long likedHour = epochHour(likedAt);
+            if (likedMinute > minute - MINUTE_BUCKETS) {
+                minuteBuckets[Math.floorMod(likedMinute, MINUTE_BUCKETS)] += delta;
+                hourTotal += delta;
+            }
+            if (likedHour > hour - HOUR_BUCKETS) {
+                hourBuckets[Math.floorMod(likedHour, HOUR_BUCKETS)] += delta;
+                weekTotal += delta;
+                if (likedHour > hour - DAY_HOURS) {
+                    dayTotal += delta;
+                }
+            }
+        }
+
+        //Корзины, вышедшие за границу окна, вычитаются из сумм и обнуляются
+        private void advanceTo(Instant now) {
+            long nowMinute = epochMinute(now);
+            if (nowMinute - minute >= MINUTE_BUCKETS) {
+                Arrays.fill(minuteBuckets, 0);
+                hourTotal = 0;
+            } else {
+                for (long m = minute + 1; m <= nowMinute; m++) {
+                    int slot = Math.floorMod(m, MINUTE_BUCKETS);
+                    hourTotal -= minuteBuckets[slot];
+                    minuteBuckets[slot] = 0;
+                }
+            }
+            minute = Math.max(minute, nowMinute);
+
+            long nowHour = epochHour(now);
+            if (nowHour - hour >= HOUR_BUCKETS) {
+                Arrays.fill(hourBuckets, 0);
+                dayTotal = 0;
+                weekTotal = 0;
+            } else {
+                for (long h = hour + 1; h <= nowHour; h++) {
+                    dayTotal -= hourBuckets[Math.floorMod(h - DAY_HOURS, HOUR_BUCKETS)];
+                    int slot = Math.floorMod(h, HOUR_BUCKETS);
+                    weekTotal -= hourBuckets[slot];
+                    hourBuckets[slot] = 0;
+                }
+            }
+            hour = Math.max(hour, nowHour);
+        }
+
+        private long total(TrendingWindow window) {
+            return switch (window) {
+                case ONE_HOUR -> hourTotal;
+                case ONE_DAY -> dayTotal;
+                case SEVEN_DAYS -> weekTotal;
+            };
+        }
+
+        private static long epochMinute(Instant instant) {
+            return Math.floorDiv(instant.getEpochSecond(), 60);
+        }
+
+        private static long epochHour(Instant instant) {
+            return Math.floorDiv(instant.getEpochSecond(), 3600);
+        }
+    }
+}
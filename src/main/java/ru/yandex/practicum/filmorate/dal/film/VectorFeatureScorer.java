@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+//Счет на Vector API (модуль jdk.incubator.vector): фильмы идут блоками по ширине регистра, сумма по всем признакам
+//блока копится в регистре и пишется в scores один раз. Умножение и сложение раздельные, а не fma: округление
+//то же, что в ScalarFeatureScorer, и оба дают одинаковые оценки, а значит и одинаковый порядок при равенстве.
+//Собирается только в профиле vector-api (mvn -Pvector-api) и загружается, только если модуль подключен
+//(--add-modules jdk.incubator.vector), иначе FilmFeatureIndex берет ScalarFeatureScorer.
+final class VectorFeatureScorer implements FeatureScorer {
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void score(float[][] columns, int[] features, float[] weights, int size, float[] scores) {
+        FloatVector[] broadcast = new FloatVector[features.length];
+        for (int k = 0; k < features.length; k++) {
+            broadcast[k] = FloatVector.broadcast(SPECIES, weights[k]);
+        }
+        int step = SPECIES.length();
+        int bound = SPECIES.loopBound(size);
+        int i = 0;
+        for (; i < bound; i += step) {
+            FloatVector sum = FloatVector.zero(SPECIES);
+            for (int k = 0; k < features.length; k++) {
+                sum = FloatVector.fromArray(SPECIES, columns[features[k]], i).mul(broadcast[k]).add(sum);
+            }
+            sum.intoArray(scores, i);
+        }
+        for (; i < size; i++) {
+            float sum = 0f;
+            for (int k = 0; k < features.length; k++) {
+                sum = weights[k] * columns[features[k]][i] + sum;
+            }
+            scores[i] = sum;
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector " + SPECIES.vectorBitSize() + " bit";
+    }
+}
@@ -18,6 +18,7 @@ public class FilmRowMapper implements RowMapper<Film> {
         film.setReleaseDate(rs.getTimestamp("releaseDate").toLocalDateTime().toLocalDate());
         film.setDuration(rs.getLong("duration"));
         film.getMpa().setId(rs.getInt("rating_mpa_ID"));
+        film.setLikesCount(rs.getLong("likes_count"));
 
         return film;
     }
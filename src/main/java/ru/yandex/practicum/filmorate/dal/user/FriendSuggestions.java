@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+//"Возможно, вы знакомы": не друзья пользователя, упорядоченные по числу общих с ним друзей (друзья друзей).
+//Считается по FriendshipGraph в два шага: друзья пользователя, затем их друзья; счетчики кандидатов - в
+//LongIntHashMap без упаковки. Разветвление ограничено: у пользователя берется не больше max-friends друзей,
+//у каждого друга - не больше max-friends-of-friend его друзей (равномерной выборкой с шагом по отсортированному
+//массиву), поэтому для популярных пользователей число общих друзей оценочное.
+//Если второй шаг затрагивает не меньше parallel-threshold связей, он делится между потоками общего ForkJoinPool.
+//Для пользователей с не меньше cached-min-friends друзей подсказки кэшируются и пересчитываются в фоне раз
+//в cache-refresh; кто за это время стал другом, из выдачи убирается при чтении. В кэше хранится cached-candidates
+//кандидатов с запасом на ставших друзьями; запрос большего limit считается без кэша.
+@Slf4j
+@Component
+public class FriendSuggestions {
+
+    //Столько связей второго шага считает одна задача ForkJoin, не деля свой диапазон дальше
+    private static final long LEAF_EDGES = 50_000;
+
+    //Худший кандидат - первый: меньше общих друзей, при равенстве больший id
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingInt(Candidate::mutualFriends)
+            .thenComparing(Comparator.comparingLong(Candidate::userId).reversed());
+
+    private final FriendshipGraph graph;
+    private final int maxFriends;
+    private final int maxFriendsOfFriend;
+    private final long parallelThreshold;
+    private final int cachedMinFriends;
+    private final int cachedCandidates;
+    private final LoadingCache<Long, List<Candidate>> heavyUsers;
+
+    public FriendSuggestions(FriendshipGraph graph,
+                             @Value("${filmorate.friend-suggestions.max-friends:1000}") int maxFriends,
+                             @Value("${filmorate.friend-suggestions.max-friends-of-friend:1000}") int maxFriendsOfFriend,
+                             @Value("${filmorate.friend-suggestions.parallel-threshold:100000}") long parallelThreshold,
+                             @Value("${filmorate.friend-suggestions.cached-min-friends:10000}") int cachedMinFriends,
+                             @Value("${filmorate.friend-suggestions.cached-candidates:200}") int cachedCandidates,
+                             @Value("${filmorate.friend-suggestions.cache-refresh:PT5M}") Duration cacheRefresh,
+                             @Value("${filmorate.friend-suggestions.cache-size:1000}") long cacheSize) {
+        this.graph = graph;
+        this.maxFriends = maxFriends;
+        this.maxFriendsOfFriend = maxFriendsOfFriend;
+        this.parallelThreshold = parallelThreshold;
+        this.cachedMinFriends = cachedMinFriends;
+        this.cachedCandidates = cachedCandidates;
+        this.heavyUsers = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .refreshAfterWrite(cacheRefresh)
+                .build(userId -> compute(userId, cachedCandidates));
+        log.debug("Подсказки друзей: не больше {} друзей и {} друзей друга, параллельно от {} связей, " +
+                "кэш от {} друзей", maxFriends, maxFriendsOfFriend, parallelThreshold, cachedMinFriends);
+    }
+
+    public List<Candidate> suggest(long userId, int limit) {
+        if (limit > cachedCandidates || graph.getFriends(userId).length < cachedMinFriends) {
+            return compute(userId, limit);
+        }
+        return heavyUsers.get(userId).stream()
+                .filter(candidate -> !graph.hasFriend(userId, candidate.userId()))
+                .limit(limit)
+                .toList();
+    }
+
+    private List<Candidate> compute(long userId, int limit) {
+        long[] friends = graph.getFriends(userId);
+        long[] sampled = SortedLongArrays.sample(friends, maxFriends);
+        LongIntHashMap counts = edges(sampled, 0, sampled.length) >= parallelThreshold
+                ? ForkJoinPool.commonPool().invoke(new CountTask(sampled, 0, sampled.length))
+                : count(sampled, 0, sampled.length);
+        return top(counts, userId, friends, limit);
+    }
+
+    //Кандидаты считаются вместе с самим пользователем и его друзьями, они отсеиваются один раз при выборе лучших
+    private LongIntHashMap count(long[] sampled, int from, int to) {
+        LongIntHashMap counts = new LongIntHashMap();
+        for (int i = from; i < to; i++) {
+            long[] friendsOfFriend = graph.getFriends(sampled[i]);
+            int step = SortedLongArrays.step(friendsOfFriend.length, maxFriendsOfFriend);
+            for (int j = 0; j < friendsOfFriend.length; j += step) {
+                counts.addTo(friendsOfFriend[j], 1);
+            }
+        }
+        return counts;
+    }
+
+    private long edges(long[] sampled, int from, int to) {
+        long edges = 0;
+        for (int i = from; i < to; i++) {
+            edges += Math.min(graph.getFriends(sampled[i]).length, maxFriendsOfFriend);
+        }
+        return edges;
+    }
+
+    private static List<Candidate> top(LongIntHashMap counts, long userId, long[] friends, int limit) {
+        PriorityQueue<Candidate> best = new PriorityQueue<>(limit + 1, WORST_FIRST);
+        counts.forEach((candidateId, mutualFriends) -> {
+            if (candidateId == userId || Arrays.binarySearch(friends, candidateId) >= 0) {
+                return;
+            }
+            best.add(new Candidate(candidateId, mutualFriends));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        });
+        List<Candidate> result = new ArrayList<>(best);
+        result.sort(WORST_FIRST.reversed());
+        return result;
+    }
+
+    public record Candidate(long userId, int mutualFriends) {
+    }
+
+    //Диапазон друзей пользователя делится пополам, пока в нем больше LEAF_EDGES связей второго шага;
+    //счетчики половин складываются в больший из двух
+    private final class CountTask extends RecursiveTask<LongIntHashMap> {
+
+        private final long[] sampled;
+        private final int from;
+        private final int to;
+
+        private CountTask(long[] sampled, int from, int to) {
+            this.sampled = sampled;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected LongIntHashMap compute() {
+            if (to - from <= 1 || edges(sampled, from, to) <= LEAF_EDGES) {
+                return count(sampled, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(sampled, from, middle);
+            left.fork();
+            LongIntHashMap right = new CountTask(sampled, middle, to).compute();
+            LongIntHashMap leftCounts = left.join();
+            LongIntHashMap larger = leftCounts.size() >= right.size() ? leftCounts : right;
+            LongIntHashMap smaller = larger == right ? leftCounts : right;
+            smaller.forEach(larger::addTo);
+            return larger;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Граф дружбы в памяти: для каждого пользователя отсортированный массив id его друзей (дружба односторонняя,
+//как в friendsStorage). Массивы не меняются после публикации: добавление и удаление друга копируют массив
+//пользователя под блокировкой только его записи (compute в ConcurrentHashMap), чтение идет без блокировок.
+//Общие друзья - пересечение двух отсортированных массивов: слиянием при близких размерах и галопирующим
+//поиском элементов меньшего массива в большем, когда размеры отличаются в GALLOP_RATIO раз и больше.
+//Для обратного хода поиска цепочек хранится и обратный граф (у кого пользователь в друзьях). Версия графа растет
+//после каждого изменения: по ней кэши, посчитанные по графу, узнают, что устарели.
+@Component
+public class FriendshipGraph {
+
+    private static final int GALLOP_RATIO = 32;
+
+    private final AtomicLong version = new AtomicLong();
+    private volatile ConcurrentHashMap<Long, long[]> adjacency = new ConcurrentHashMap<>();
+    private volatile ConcurrentHashMap<Long, long[]> reverse = new ConcurrentHashMap<>();
+
+    //Возвращает общий с графом массив, изменять его нельзя
+    public long[] getFriends(long userId) {
+        return adjacency.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    //Отсортированные id пользователей, у которых userId в друзьях; массив общий с графом, изменять его нельзя
+    public long[] getFriendedBy(long userId) {
+        return reverse.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public boolean hasFriend(long userId, long friendId) {
+        return Arrays.binarySearch(getFriends(userId), friendId) >= 0;
+    }
+
+    //Отсортированные id друзей, общих для обоих пользователей
+    public long[] getCommonFriends(long userId, long otherId) {
+        return intersect(getFriends(userId), getFriends(otherId));
+    }
+
+    public void add(long userId, long friendId) {
+        insert(adjacency, userId, friendId);
+        insert(reverse, friendId, userId);
+        version.incrementAndGet();
+    }
+
+    public void remove(long userId, long friendId) {
+        delete(adjacency, userId, friendId);
+        delete(reverse, friendId, userId);
+        version.incrementAndGet();
+    }
+
+    public void clear() {
+        adjacency = new ConcurrentHashMap<>();
+        reverse = new ConcurrentHashMap<>();
+        version.incrementAndGet();
+    }
+
+    public Loader loader() {
+        return new Loader();
+    }
+
+    private static void insert(ConcurrentHashMap<Long, long[]> graph, long userId, long friendId) {
+        graph.compute(userId, (id, friends) ->
+                friends == null ? new long[]{friendId} : SortedLongArrays.insert(friends, friendId));
+    }
+
+    private static void delete(ConcurrentHashMap<Long, long[]> graph, long userId, long friendId) {
+        graph.computeIfPresent(userId, (id, friends) -> {
+            long[] changed = SortedLongArrays.remove(friends, friendId);
+            return changed.length == 0 ? null : changed;
+        });
+    }
+
+    static long[] intersect(long[] left, long[] right) {
+        long[] small = left.length <= right.length ? left : right;
+        long[] large = small == left ? right : left;
+        if (small.length == 0) {
+            return SortedLongArrays.EMPTY;
+        }
+        long[] common = new long[small.length];
+        int size = large.length / small.length >= GALLOP_RATIO ? gallop(small, large, common)
+                : merge(small, large, common);
+        return size == common.length ? common : Arrays.copyOf(common, size);
+    }
+
+    private static int merge(long[] small, long[] large, long[] common) {
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < small.length && j < large.length) {
+            if (small[i] < large[j]) {
+                i++;
+            } else if (small[i] > large[j]) {
+                j++;
+            } else {
+                common[size++] = small[i];
+                i++;
+                j++;
+            }
+        }
+        return size;
+    }
+
+    //Для каждого элемента меньшего массива граница в большем ищется удвоением шага от предыдущей найденной
+    //позиции, затем двоичным поиском внутри последнего шага: O(m log(n/m)) вместо O(n + m)
+    private static int gallop(long[] small, long[] large, long[] common) {
+        int size = 0;
+        int from = 0;
+        for (long id : small) {
+            int step = 1;
+            while (from + step < large.length && large[from + step] < id) {
+                step <<= 1;
+            }
+            int index = Arrays.binarySearch(large, from + (step >> 1), Math.min(from + step + 1, large.length), id);
+            if (index >= 0) {
+                common[size++] = id;
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+            if (from >= large.length) {
+                break;
+            }
+        }
+        return size;
+    }
+
+    //Заполнение нового графа; читатели видят его только после publish(), до этого - прежний граф
+    public final class Loader {
+
+        private final ConcurrentHashMap<Long, long[]> loaded = new ConcurrentHashMap<>();
+        //Входящие связи считаются по ходу загрузки, обратный граф собирается в publish()
+        private final LongIntHashMap incoming = new LongIntHashMap();
+        private long userId;
+        private long[] friends = new long[16];
+        private int size;
+
+        private Loader() {
+        }
+
+        //Связи одного пользователя должны идти подряд
+        public void put(long userId, long friendId) {
+            if (size > 0 && userId != this.userId) {
+                finishUser();
+            }
+            this.userId = userId;
+            if (size == friends.length) {
+                friends = Arrays.copyOf(friends, size * 2);
+            }
+            friends[size++] = friendId;
+            incoming.addTo(friendId, 1);
+        }
+
+        public void publish() {
+            if (size > 0) {
+                finishUser();
+            }
+            ConcurrentHashMap<Long, long[]> loadedReverse = new ConcurrentHashMap<>(incoming.size());
+            LongIntHashMap filled = new LongIntHashMap(incoming.size());
+            incoming.forEach((friendId, count) -> loadedReverse.put(friendId, new long[count]));
+            loaded.forEach((userId, userFriends) -> {
+                for (long friendId : userFriends) {
+                    loadedReverse.get(friendId)[filled.addTo(friendId, 1) - 1] = userId;
+                }
+            });
+            loadedReverse.values().forEach(Arrays::sort);
+            adjacency = loaded;
+            reverse = loadedReverse;
+            version.incrementAndGet();
+        }
+
+        private void finishUser() {
+            long[] sorted = Arrays.copyOf(friends, size);
+            Arrays.sort(sorted);
+            loaded.put(userId, sorted);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.SortedLongArrays;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+//Кратчайшая цепочка дружбы от пользователя к другому: каждый следующий в цепочке - друг предыдущего.
+//Двунаправленный поиск в ширину по FriendshipGraph: прямой ход от первого пользователя по его друзьям, обратный
+//от второго по тем, у кого он в друзьях; каждый шаг расширяет на уровень ту сторону, у границы которой меньше связей.
+//Посещенные пользователи стороны лежат в массиве id в порядке обхода (граница - его последний отрезок), родитель -
+//позиция в int-массиве, поиск посещенного - LongIntHashMap id -> позиция, без упаковки.
+//Каждая просмотренная связь тратит единицу бюджета max-expansions; когда он исчерпан, поиск прекращается.
+//Результаты кэшируются (Caffeine удерживает часто запрашиваемые пары) вместе с версией графа на начало поиска:
+//после любого изменения дружбы версия растет, и запись считается заново.
+@Slf4j
+@Component
+public class FriendshipPaths {
+
+    private final FriendshipGraph graph;
+    private final long maxExpansions;
+    private final Cache<Query, Cached> cache;
+
+    public FriendshipPaths(FriendshipGraph graph,
+                           @Value("${filmorate.friend-paths.max-expansions:1000000}") long maxExpansions,
+                           @Value("${filmorate.friend-paths.cache-size:10000}") long cacheSize) {
+        this.graph = graph;
+        this.maxExpansions = maxExpansions;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .build();
+        log.debug("Цепочки дружбы: не больше {} просмотренных связей на поиск, кэш на {} пар", maxExpansions,
+                cacheSize);
+    }
+
+    public Path find(long from, long to, int maxDepth) {
+        Query query = new Query(from, to, maxDepth);
+        long version = graph.getVersion();
+        Cached cached = cache.getIfPresent(query);
+        if (cached != null && cached.version() == version) {
+            return cached.path();
+        }
+        Path path = new Search(from, to).run(maxDepth);
+        //Поиск по более старой версии графа не вытесняет уже записанный более новый
+        cache.asMap().merge(query, new Cached(version, path),
+                (current, fresh) -> current.version() > fresh.version() ? current : fresh);
+        return path;
+    }
+
+    //userIds - цепочка от первого пользователя ко второму включительно; пустая, если цепочка не найдена
+    //за maxDepth шагов или поиск прерван по бюджету (exhausted)
+    public record Path(long[] userIds, boolean exhausted) {
+
+        private static final Path NOT_FOUND = new Path(SortedLongArrays.EMPTY, false);
+        private static final Path EXHAUSTED = new Path(SortedLongArrays.EMPTY, true);
+
+        public boolean found() {
+            return userIds.length > 0;
+        }
+    }
+
+    private record Query(long from, long to, int maxDepth) {
+    }
+
+    private record Cached(long version, Path path) {
+    }
+
+    private final class Search {
+
+        private final Side forward;
+        private final Side backward;
+        private long budget = maxExpansions;
+        private boolean exhausted;
+
+        private Search(long from, long to) {
+            this.forward = new Side(from, graph::getFriends);
+            this.backward = new Side(to, graph::getFriendedBy);
+        }
+
+        private Path run(int maxDepth) {
+            if (forward.ids[0] == backward.ids[0]) {
+                return new Path(new long[]{forward.ids[0]}, false);
+            }
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                if (forward.frontierEmpty() || backward.frontierEmpty()) {
+                    return Path.NOT_FOUND;
+                }
+                boolean forwardFirst = forward.frontierEdges() <= backward.frontierEdges();
+                long meet = forwardFirst ? expand(forward, backward) : expand(backward, forward);
+                if (exhausted) {
+                    return Path.EXHAUSTED;
+                }
+                if (meet != Side.NONE) {
+                    return join(meet);
+                }
+            }
+            return Path.NOT_FOUND;
+        }
+
+        //Расширяет границу side на один уровень. Первый пользователь, уже посещенный другой стороной, - середина
+        //кратчайшей цепочки: ни одна пара посещенных до этого уровня не совпадала, значит короче цепочек нет
+        private long expand(Side side, Side other) {
+            int end = side.size;
+            for (int position = side.levelStart; position < end; position++) {
+                for (long next : side.neighbors.apply(side.ids[position])) {
+                    if (--budget < 0) {
+                        exhausted = true;
+                        return Side.NONE;
+                    }
+                    if (side.position(next) >= 0) {
+                        continue;
+                    }
+                    side.add(next, position);
+                    if (other.position(next) >= 0) {
+                        return next;
+                    }
+                }
+            }
+            side.levelStart = end;
+            return Side.NONE;
+        }
+
+        private Path join(long meet) {
+            long[] head = forward.chain(meet);
+            long[] tail = backward.chain(meet);
+            long[] userIds = new long[head.length + tail.length - 1];
+            for (int i = 0; i < head.length; i++) {
+                userIds[i] = head[head.length - 1 - i];
+            }
+            System.arraycopy(tail, 1, userIds, head.length, tail.length - 1);
+            return new Path(userIds, false);
+        }
+    }
+
+    //Посещенные одной стороной поиска: ids[i] найден из ids[parents[i]], у начального пользователя родителя нет
+    private static final class Side {
+
+        private static final long NONE = Long.MIN_VALUE;
+        private static final int NO_PARENT = -1;
+
+        private final LongFunction<long[]> neighbors;
+        private final LongIntHashMap positions = new LongIntHashMap();
+        private long[] ids = new long[16];
+        private int[] parents = new int[16];
+        private int size;
+        private int levelStart;
+
+        private Side(long start, LongFunction<long[]> neighbors) {
+            this.neighbors = neighbors;
+            add(start, NO_PARENT);
+        }
+
+        private void add(long id, int parent) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+            }
+            ids[size] = id;
+            parents[size] = parent;
+            positions.put(id, size++);
+        }
+
+        private int position(long id) {
+            return positions.get(id, NO_PARENT);
+        }
+
+        private boolean frontierEmpty() {
+            return levelStart == size;
+        }
+
+        private long frontierEdges() {
+            long edges = 0;
+            for (int position = levelStart; position < size; position++) {
+                edges += neighbors.apply(ids[position]).length;
+            }
+            return edges;
+        }
+
+        //Пользователь id и его предки до начального пользователя стороны
+        private long[] chain(long id) {
+            int length = 0;
+            for (int position = position(id); position != NO_PARENT; position = parents[position]) {
+                length++;
+            }
+            long[] chain = new long[length];
+            int i = 0;
+            for (int position = position(id); position != NO_PARENT; position = parents[position]) {
+                chain[i++] = ids[position];
+            }
+            return chain;
+        }
+    }
+}
@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.dal.user;
 import lombok.extern.slf4j.Slf4j;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -26,6 +29,12 @@ public class InMemoryUserStorage implements UserStorage {
         return user;
     }
 
+    @Override
+    public List<User> createAll(List<User> users) {
+        users.forEach(this::create);
+        return users;
+    }
+
     @Override
     public User update(User user) {
         if (!userStorage.containsKey(user.getId()) | user.getId() == null) {
@@ -55,6 +64,24 @@ public class InMemoryUserStorage implements UserStorage {
         return new ArrayList<>(userStorage.values());
     }
 
+    @Override
+    public List<User> getPage(long afterId, int limit) {
+        log.debug("Возвращаем страницу пользователей после id = {} размером {}", afterId, limit);
+        return userStorage.values().stream()
+                .filter(user -> user.getId() > afterId)
+                .sorted(Comparator.comparing(User::getId))
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public void exportAll(Consumer<User> consumer) {
+        log.debug("Выгружаем всех пользователей из хранилища");
+        userStorage.values().stream()
+                .sorted(Comparator.comparing(User::getId))
+                .forEach(consumer);
+    }
+
     //Метод очистки хранилища для целей тестирования
     @Override
     public void clear() {
@@ -191,4 +218,70 @@ public class InMemoryUserStorage implements UserStorage {
             throw new DataNotFoundException("Друг (или пользователь) с Id: " + userId + " не найден");
         }
     }
+
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(Long userId, int limit) {
+        Set<Long> friends = friendsStorage.getOrDefault(userId, Set.of());
+        Map<Long, Integer> mutualFriends = new HashMap<>();
+        for (Long friendId : friends) {
+            for (Long candidateId : friendsStorage.getOrDefault(friendId, Set.of())) {
+                if (!candidateId.equals(userId) && !friends.contains(candidateId)) {
+                    mutualFriends.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+        return mutualFriends.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(entry -> new FriendSuggestion(userStorage.get(entry.getKey()), entry.getValue()))
+                .toList();
+    }
+
+    //Обычный поиск в ширину от userId по друзьям, без бюджета и кэша
+    @Override
+    public List<User> getFriendshipPath(Long userId, Long otherId, int maxDepth) {
+        Map<Long, Long> parents = new HashMap<>();
+        parents.put(userId, userId);
+        List<Long> level = List.of(userId);
+        for (int depth = 0; depth < maxDepth && !parents.containsKey(otherId) && !level.isEmpty(); depth++) {
+            List<Long> next = new ArrayList<>();
+            for (Long id : level) {
+                for (Long friendId : friendsStorage.getOrDefault(id, Set.of())) {
+                    if (parents.putIfAbsent(friendId, id) == null) {
+                        next.add(friendId);
+                    }
+                }
+            }
+            level = next;
+        }
+        if (!parents.containsKey(otherId)) {
+            throw new DataNotFoundException("Цепочка дружбы от пользователя " + userId + " к пользователю " +
+                    otherId + " не длиннее " + maxDepth + " не найдена");
+        }
+        LinkedList<User> path = new LinkedList<>();
+        for (Long id = otherId; !id.equals(userId); id = parents.get(id)) {
+            path.addFirst(userStorage.get(id));
+        }
+        path.addFirst(userStorage.get(userId));
+        return path;
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> userIds) {
+        return userIds.stream()
+                .filter(userStorage::containsKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public int addFriends(List<Friendship> friendships) {
+        int added = 0;
+        for (Friendship friendship : friendships) {
+            if (friendsStorage.computeIfAbsent(friendship.getUserId(), id -> new HashSet<>())
+                    .add(friendship.getFriendId())) {
+                added++;
+            }
+        }
+        return added;
+    }
 }
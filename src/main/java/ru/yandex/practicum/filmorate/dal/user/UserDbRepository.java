@@ -1,22 +1,48 @@
 package ru.yandex.practicum.filmorate.dal.user;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.dal.ForeignKeyViolation;
+import ru.yandex.practicum.filmorate.dal.GroupCommitter;
+import ru.yandex.practicum.filmorate.dal.GroupCommitterFactory;
+import ru.yandex.practicum.filmorate.dal.LazyQueryExecution;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dal.film.LikeMatrix;
 import ru.yandex.practicum.filmorate.dal.user.mapper.UserRowMapper;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.exceptions.SearchLimitExceededException;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
@@ -24,28 +50,57 @@ public class UserDbRepository implements UserStorage {
 
     protected final JdbcTemplate jdbc;
     protected final UserRowMapper mapper;
+    private final GroupCommitter<Friendship> friendCommitter;
+    private final FriendshipGraph friendshipGraph;
+    private final FriendSuggestions friendSuggestions;
+    private final FriendshipPaths friendshipPaths;
+    private final LikeMatrix likeMatrix;
+    private final FilmStorage filmStorage;
 
     @Autowired
-    public UserDbRepository(JdbcTemplate jdbc, UserRowMapper mapper) {
+    public UserDbRepository(JdbcTemplate jdbc, UserRowMapper mapper, GroupCommitterFactory groupCommitters,
+                            FriendshipGraph friendshipGraph, FriendSuggestions friendSuggestions,
+                            FriendshipPaths friendshipPaths, LikeMatrix likeMatrix, FilmStorage filmStorage) {
         this.jdbc = jdbc;
         this.mapper = mapper;
+        this.friendshipGraph = friendshipGraph;
+        this.friendSuggestions = friendSuggestions;
+        this.friendshipPaths = friendshipPaths;
+        this.likeMatrix = likeMatrix;
+        this.filmStorage = filmStorage;
+        this.friendCommitter = groupCommitters.create("friends", this::writeFriendshipBatch);
     }
 
     private static final String INSERT_QUERY = "INSERT INTO userStorage(email, login, name, birthday) " +
             "VALUES (?, ?, ?, ?)";
+    //Многострочная вставка для импорта: значения подставляются в конец, id возвращаются в порядке строк VALUES
+    private static final String INSERT_ALL_QUERY = "SELECT user_ID FROM FINAL TABLE (INSERT INTO userStorage" +
+            "(email, login, name, birthday) VALUES %s) ORDER BY user_ID";
+    private static final String INSERT_ALL_ROW = "(?, ?, ?, ?)";
     private static final String UPDATE_QUERY = "UPDATE userStorage SET email = ?, login = ?, name = ?, " +
             "birthday = ? WHERE user_ID = ?";
-    private static final String DELETE_QUERY = "DELETE FROM userStorage WHERE user_ID = ?";
+    //Удаление сразу возвращает удаленного пользователя; пустой результат означает, что пользователь не найден
+    private static final String DELETE_QUERY = "SELECT * FROM OLD TABLE (DELETE FROM userStorage WHERE user_ID = ?)";
     private static final String FIND_ALL_QUERY = "SELECT * FROM userStorage";
+    private static final String FIND_ALL_ORDERED_QUERY = "SELECT * FROM userStorage ORDER BY user_ID";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM userStorage WHERE user_ID > ? ORDER BY user_ID LIMIT ?";
     private static final String DELETE_ALL_QUERY = "DELETE FROM userStorage";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM userStorage WHERE user_ID = ?";
-    private static final String INSERT_FRIEND = "INSERT INTO friendsStorage (user_ID, user_friend_ID) VALUES (?, ?)";
+    private static final String FIND_EXISTING_IDS = "SELECT user_ID FROM userStorage WHERE user_ID = ANY(?)";
+    //Пакетная запись дружбы: строка вставляется, только если такой связи еще нет (счетчик обновлений 1 или 0)
+    private static final String INSERT_FRIEND_IF_ABSENT = "INSERT INTO friendsStorage (user_ID, user_friend_ID) " +
+            "SELECT CAST(? AS BIGINT), CAST(? AS BIGINT) WHERE NOT EXISTS " +
+            "(SELECT 1 FROM friendsStorage WHERE user_ID = ? AND user_friend_ID = ?)";
+    //Только для ответа 404, когда удалять было нечего: есть ли оба пользователя
+    private static final String COUNT_USERS = "SELECT (SELECT COUNT(*) FROM userStorage WHERE user_ID = ?), " +
+            "(SELECT COUNT(*) FROM userStorage WHERE user_ID = ?)";
     private static final String REMOVE_FRIEND = "DELETE FROM friendsStorage WHERE user_ID = ? AND user_friend_ID = ?";
-    private static final String SELECT_LIST_OF_USER_FRIENDS = "SELECT * FROM userStorage " +
-            "WHERE user_ID IN (SELECT fs.user_friend_ID FROM friendsStorage AS fs WHERE fs.user_ID = ?)";
-    private static final String SELECT_OF_COMMON_FRIENDS_OF_USERS = "SELECT * FROM userStorage " +
-            "WHERE user_ID IN (SELECT fs.user_friend_ID FROM friendsStorage AS fs " +
-            "WHERE fs.user_ID = ? OR fs.user_ID = ? GROUP BY fs.user_friend_ID HAVING COUNT(fs.user_ID) = 2)";
+    //Id друзей берутся из FriendshipGraph, из базы читаются только сами пользователи. Соединение с таблицей из массива
+    //идет по первичному ключу; user_ID = ANY(?) H2 проверяет перебором массива для каждой строки userStorage
+    private static final String FIND_BY_IDS_QUERY = "SELECT u.* FROM TABLE(id BIGINT = ?) AS t " +
+            "JOIN userStorage AS u ON u.user_ID = t.id ORDER BY u.user_ID";
+    private static final String FIND_ALL_FRIENDS = "SELECT user_ID, user_friend_ID FROM friendsStorage " +
+            "ORDER BY user_ID, user_friend_ID";
 
     @Transactional
     @Override
@@ -72,6 +127,38 @@ public class UserDbRepository implements UserStorage {
         return user;
     }
 
+    //Пакетное создание для импорта: все пользователи вставляются одним многострочным INSERT
+    @Transactional
+    @Override
+    public List<User> createAll(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        String sql = INSERT_ALL_QUERY.formatted(String.join(", ", Collections.nCopies(users.size(), INSERT_ALL_ROW)));
+        Object[] params = new Object[users.size() * 4];
+        int i = 0;
+        for (User user : users) {
+            params[i++] = user.getEmail();
+            params[i++] = user.getLogin();
+            params[i++] = user.getName();
+            params[i++] = Timestamp.valueOf(user.getBirthday().atStartOfDay());
+        }
+        List<Long> ids;
+        try {
+            ids = jdbc.queryForList(sql, Long.class, params);
+        } catch (DuplicateKeyException e) {
+            throw new DuplicatedDataException("Email или логин уже заняты");
+        }
+        if (ids.size() != users.size()) {
+            throw new DataNotFoundException("Не удалось получить ID созданных пользователей");
+        }
+        for (int j = 0; j < users.size(); j++) {
+            users.get(j).setId(ids.get(j));
+        }
+        log.debug("В базу данных добавлено пользователей: {}", users.size());
+        return users;
+    }
+
     @Transactional
     @Override
     public User update(User user) {
@@ -88,15 +175,18 @@ public class UserDbRepository implements UserStorage {
         return user;
     }
 
+    //Лайки пользователя удаляются до него самого через FilmStorage, который уменьшает счетчики likes_count
+    //и убирает их из рейтингов и матрицы лайков; каскад likeStorage при удалении строки пользователя их бы не тронул
+    @Transactional
     @Override
     public User delete(Long userId) {
-        User user = getUserById(userId);
-        int rowsUpdated = jdbc.update(DELETE_QUERY, userId);
-        if (rowsUpdated == 0) {
+        filmStorage.removeLikesOfUser(userId);
+        List<User> deleted = jdbc.query(DELETE_QUERY, mapper, userId);
+        if (deleted.isEmpty()) {
             throw new DataNotFoundException("Не удалось удалить пользователя с id = " + userId);
         }
         log.debug("Пользователь найден и удален из хранилища");
-        return user;
+        return deleted.getFirst();
     }
 
     @Override
@@ -105,11 +195,33 @@ public class UserDbRepository implements UserStorage {
         return jdbc.query(FIND_ALL_QUERY, mapper);
     }
 
+    @Override
+    public List<User> getPage(long afterId, int limit) {
+        log.debug("Возвращаем страницу пользователей после id = {} размером {}", afterId, limit);
+        return jdbc.query(FIND_PAGE_QUERY, mapper, afterId, limit);
+    }
+
+    @Override
+    public void exportAll(Consumer<User> consumer) {
+        log.debug("Начинаем потоковую выгрузку всех пользователей из хранилища");
+        jdbc.execute((ConnectionCallback<Void>) connection -> LazyQueryExecution.run(connection, () -> {
+            try (PreparedStatement statement = LazyQueryExecution.prepare(connection, FIND_ALL_ORDERED_QUERY);
+                 ResultSet rows = statement.executeQuery()) {
+                int rowNum = 0;
+                while (rows.next()) {
+                    consumer.accept(mapper.mapRow(rows, rowNum++));
+                }
+            }
+        }));
+    }
+
     //Метод очистки хранилища для целей тестирования
     @Override
     public void clear() {
         log.trace("Очищаем хранилище пользователей для целей Тестирования");
         int rowsUpdated = jdbc.update(DELETE_ALL_QUERY);
+        friendshipGraph.clear();
+        likeMatrix.clear();
         log.debug("Удалено {} записей", rowsUpdated);
     }
 
@@ -129,38 +241,194 @@ public class UserDbRepository implements UserStorage {
 
     //Ниже прописана логика по работе с друзьями
 
+    //Одновременные запросы дружбы пишутся одной транзакцией через групповую фиксацию (filmorate.group-commit.*)
     @Override
     public Long addToFriends(Long userId, Long friendId) {
+        log.debug("Добавим дружбу {} -> {} в таблицу", userId, friendId);
         try {
-            log.debug("Добавим дружбу {} -> {} в таблицу", userId, friendId);
-            jdbc.update(INSERT_FRIEND, userId, friendId);
+            friendCommitter.submit(new Friendship(userId, friendId));
         } catch (DuplicateKeyException ex) {
-            log.warn("Попытка добавить существующую дружбу: {} -> {}", userId, friendId);
-            throw new DuplicatedDataException("Эти пользователи уже друзья");
+            //Та же дружба одновременно записана другой транзакцией
+            throw duplicatedFriendship(userId, friendId);
+        } catch (DataIntegrityViolationException ex) {
+            //Пользователи заранее не читаются: если кого-то из них нет, запись отклоняет внешний ключ friendsStorage
+            String column = ForeignKeyViolation.column(ex);
+            if ("USER_ID".equals(column)) {
+                throw new DataNotFoundException("Пользователь с Id: " + userId + " не найден");
+            }
+            if ("USER_FRIEND_ID".equals(column)) {
+                throw new DataNotFoundException("Пользователь с Id: " + friendId + " не найден");
+            }
+            throw ex;
         }
         return userId;
     }
 
+    //Порция групповой фиксации: уже существующая дружба получает DuplicatedDataException, остальные записываются
+    private List<RuntimeException> writeFriendshipBatch(List<Friendship> friendships) {
+        int[] counts = mergeFriends(friendships);
+        List<RuntimeException> errors = new ArrayList<>(friendships.size());
+        for (int i = 0; i < friendships.size(); i++) {
+            Friendship friendship = friendships.get(i);
+            errors.add(counts[i] > 0 ? null : duplicatedFriendship(friendship.getUserId(), friendship.getFriendId()));
+        }
+        return errors;
+    }
+
+    private static DuplicatedDataException duplicatedFriendship(Long userId, Long friendId) {
+        log.warn("Попытка добавить существующую дружбу: {} -> {}", userId, friendId);
+        return new DuplicatedDataException("Эти пользователи уже друзья");
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(jdbc.queryForList(FIND_EXISTING_IDS, Long.class, (Object) userIds.toArray(new Long[0])));
+    }
+
+    @Transactional
+    @Override
+    public int addFriends(List<Friendship> friendships) {
+        int added = 0;
+        for (int count : mergeFriends(friendships)) {
+            added += count;
+        }
+        log.debug("Записано новых связей дружбы: {} из {}", added, friendships.size());
+        return added;
+    }
+
+    //Возвращает по каждой связи число записанных строк: 1 - новая, 0 - уже была
+    private int[] mergeFriends(List<Friendship> friendships) {
+        if (friendships.isEmpty()) {
+            return new int[0];
+        }
+        int[] counts = jdbc.batchUpdate(INSERT_FRIEND_IF_ABSENT, friendships, friendships.size(), (ps, friendship) -> {
+            ps.setLong(1, friendship.getUserId());
+            ps.setLong(2, friendship.getFriendId());
+            ps.setLong(3, friendship.getUserId());
+            ps.setLong(4, friendship.getFriendId());
+        })[0];
+        List<Friendship> added = new ArrayList<>();
+        for (int i = 0; i < friendships.size(); i++) {
+            if (counts[i] > 0) {
+                added.add(friendships.get(i));
+            }
+        }
+        applyToGraph(() -> added.forEach(f -> friendshipGraph.add(f.getUserId(), f.getFriendId())),
+                () -> added.forEach(f -> friendshipGraph.remove(f.getUserId(), f.getFriendId())));
+        return counts;
+    }
+
+    //Новые связи видны в графе сразу после записи; если транзакция не зафиксирована, они убираются
+    private static void applyToGraph(Runnable change, Runnable rollback) {
+        change.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        rollback.run();
+                    }
+                }
+            });
+        }
+    }
+
     @Override
     public Long removeFromFriends(Long userId, Long friendId) {
         log.debug("Удалим дружбу {} -> {} из таблицы", userId, friendId);
         int rowsDeleted = jdbc.update(REMOVE_FRIEND, userId, friendId);
-        if (rowsDeleted == 0) {
+        if (rowsDeleted > 0) {
+            friendshipGraph.remove(userId, friendId);
+        } else {
             log.debug("Дружба между пользователями {} -> {} не найдена, а значит удалять нечего", userId, friendId);
+            requireUsers(userId, friendId);
         }
         return userId;
     }
 
+    //Отдельный запрос нужен только чтобы отличить отсутствующего пользователя (404) от удаления несуществующей дружбы
+    private void requireUsers(Long userId, Long friendId) {
+        jdbc.query(COUNT_USERS, (RowCallbackHandler) rs -> {
+            if (rs.getInt(1) == 0) {
+                throw new DataNotFoundException("Пользователь с Id: " + userId + " не найден");
+            }
+            if (rs.getInt(2) == 0) {
+                throw new DataNotFoundException("Пользователь с Id: " + friendId + " не найден");
+            }
+        }, userId, friendId);
+    }
+
     //Метод возвратит список всех добавленных друзей, неважно взаимная дружба или нет.
     @Override
     public List<User> getFriendsListOfUser(Long userId) {
         log.debug("Возвращаем список друзей пользователя с id = {}", userId);
-        return jdbc.query(SELECT_LIST_OF_USER_FRIENDS, mapper, userId);
+        return findUsersByIds(friendshipGraph.getFriends(userId));
     }
 
+    //Пересечение списков друзей считается в FriendshipGraph, без GROUP BY по friendsStorage
     @Override
     public List<User> getListOfCommonFriends(Long userId, Long otherId) {
         log.debug("Возвращаем список общих друзей пользователей {} и {}", userId, otherId);
-        return jdbc.query(SELECT_OF_COMMON_FRIENDS_OF_USERS, mapper, userId, otherId);
+        return findUsersByIds(friendshipGraph.getCommonFriends(userId, otherId));
+    }
+
+    //Кандидаты считаются по FriendshipGraph, из базы читаются только сами пользователи
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(Long userId, int limit) {
+        log.debug("Возвращаем до {} подсказок друзей для пользователя с id = {}", limit, userId);
+        List<FriendSuggestions.Candidate> candidates = friendSuggestions.suggest(userId, limit);
+        Map<Long, User> usersById = findUsersByIds(candidates.stream().mapToLong(FriendSuggestions.Candidate::userId)
+                .toArray()).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<FriendSuggestion> suggestions = new ArrayList<>(candidates.size());
+        for (FriendSuggestions.Candidate candidate : candidates) {
+            User user = usersById.get(candidate.userId());
+            if (user != null) {
+                suggestions.add(new FriendSuggestion(user, candidate.mutualFriends()));
+            }
+        }
+        return suggestions;
+    }
+
+    //Цепочка ищется по FriendshipGraph, из базы читаются только пользователи цепочки
+    @Override
+    public List<User> getFriendshipPath(Long userId, Long otherId, int maxDepth) {
+        log.debug("Ищем цепочку дружбы от пользователя {} к пользователю {} не длиннее {}", userId, otherId, maxDepth);
+        FriendshipPaths.Path path = friendshipPaths.find(userId, otherId, maxDepth);
+        if (path.exhausted()) {
+            throw new SearchLimitExceededException("Поиск цепочки дружбы от пользователя " + userId +
+                    " к пользователю " + otherId + " превысил лимит просмотренных связей, уменьшите maxDepth");
+        }
+        if (!path.found()) {
+            throw new DataNotFoundException("Цепочка дружбы от пользователя " + userId + " к пользователю " +
+                    otherId + " не длиннее " + maxDepth + " не найдена");
+        }
+        Map<Long, User> usersById = findUsersByIds(path.userIds()).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<User> users = new ArrayList<>(path.userIds().length);
+        for (long pathUserId : path.userIds()) {
+            users.add(usersById.get(pathUserId));
+        }
+        return users;
+    }
+
+    private List<User> findUsersByIds(long[] userIds) {
+        if (userIds.length == 0) {
+            return List.of();
+        }
+        return jdbc.query(FIND_BY_IDS_QUERY, mapper, (Object) Arrays.stream(userIds).boxed().toArray(Long[]::new));
+    }
+
+    //Граф дружбы строится по friendsStorage при старте, дальше меняется вместе с ней
+    @PostConstruct
+    void loadFriendshipGraph() {
+        FriendshipGraph.Loader loader = friendshipGraph.loader();
+        jdbc.query(FIND_ALL_FRIENDS, (RowCallbackHandler) rs ->
+                loader.put(rs.getLong("user_ID"), rs.getLong("user_friend_ID")));
+        loader.publish();
+        log.debug("Граф дружбы построен по friendsStorage");
     }
 }
@@ -1,19 +1,31 @@
 package ru.yandex.practicum.filmorate.dal.user;
 
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     User create(User user);
 
+    //Пользователи создаются в одной транзакции; возвращается тот же список с заполненными id
+    List<User> createAll(List<User> users);
+
     User update(User user);
 
     User delete(Long userId);
 
     List<User> getAll();
 
+    List<User> getPage(long afterId, int limit);
+
+    void exportAll(Consumer<User> consumer);
+
     void clear();
 
     User getUserById(Long userId);
@@ -26,4 +38,15 @@ public interface UserStorage {
 
     List<User> getListOfCommonFriends(Long userId, Long otherId);
 
+    //Не друзья пользователя по убыванию числа общих с ним друзей, не больше limit
+    List<FriendSuggestion> getFriendSuggestions(Long userId, int limit);
+
+    //Кратчайшая цепочка дружбы от userId к otherId (оба включительно) не длиннее maxDepth шагов
+    List<User> getFriendshipPath(Long userId, Long otherId, int maxDepth);
+
+    //Какие из переданных id пользователей есть в хранилище
+    Set<Long> findExistingIds(Collection<Long> userIds);
+
+    //Пакетная запись дружбы без повторов; уже существующие связи пропускаются. Возвращает число новых связей
+    int addFriends(List<Friendship> friendships);
 }
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+//Результат импорта одной записи: номер записи во входном потоке (с нуля) и id созданного объекта либо текст ошибки
+@Data
+@AllArgsConstructor
+public class BulkResultDto {
+
+    private long index;
+
+    private Long id;
+
+    private String error;
+}
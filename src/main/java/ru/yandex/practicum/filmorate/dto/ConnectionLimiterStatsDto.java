@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ConnectionLimiterStatsDto {
+
+    private boolean enabled;
+
+    private int limit;
+
+    private int available;
+
+    //Сколько потоков сейчас ждут соединение
+    private int waiting;
+
+    private long acquired;
+
+    private long rejected;
+}
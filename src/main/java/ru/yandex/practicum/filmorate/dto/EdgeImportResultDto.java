@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Итог пакетной загрузки связей: принятые записи (включая уже существующие связи и повторы),
+//из них действительно записанные новые связи, отклоненные записи и первые MAX_ERRORS ошибок
+@Data
+public class EdgeImportResultDto {
+
+    public static final int MAX_ERRORS = 100;
+
+    private long received;
+
+    private long accepted;
+
+    private long written;
+
+    private long rejected;
+
+    private List<BulkResultDto> errors = new ArrayList<>();
+
+    public void add(BulkResultDto result) {
+        received++;
+        if (result.getError() == null) {
+            accepted++;
+            return;
+        }
+        rejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(result);
+        }
+    }
+}
@@ -25,4 +25,7 @@ public class FilmDto {
     private Mpa mpa = new Mpa();
 
     private List<Genres> genres = new ArrayList<>();
+
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long likesCount;
 }
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FriendSuggestionDto {
+
+    private UserDto user;
+
+    private int mutualFriends;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+//Цепочка дружбы от первого пользователя ко второму включительно; degrees - число шагов (связей) в ней
+@Data
+@AllArgsConstructor
+public class FriendshipPathDto {
+
+    private List<UserDto> users;
+
+    private int degrees;
+}
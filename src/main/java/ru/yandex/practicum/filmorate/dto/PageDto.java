@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class PageDto<T> {
+
+    private List<T> items;
+
+    //null, если страница последняя
+    private String nextCursor;
+}
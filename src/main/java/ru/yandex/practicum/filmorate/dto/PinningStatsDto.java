@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class PinningStatsDto {
+
+    private boolean enabled;
+
+    private long events;
+
+    private long pinnedMillis;
+
+    //Верхние кадры стека закрепления -> число событий, по убыванию
+    private Map<String, Long> stacks;
+}
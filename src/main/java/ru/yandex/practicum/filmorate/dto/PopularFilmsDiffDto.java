@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+//Изменение рейтинга популярных фильмов для подписчика: места, на которых фильм или его данные изменились,
+//и новая длина списка (места дальше size удаляются). Первое событие подписки содержит все места.
+@Data
+@AllArgsConstructor
+public class PopularFilmsDiffDto {
+
+    private int size;
+
+    private List<RankedFilmDto> changed;
+}
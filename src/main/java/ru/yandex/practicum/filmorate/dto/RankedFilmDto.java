@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class RankedFilmDto {
+
+    //Место в рейтинге, начиная с 1
+    private int rank;
+
+    private FilmDto film;
+}
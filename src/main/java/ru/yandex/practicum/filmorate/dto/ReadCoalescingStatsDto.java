@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ReadCoalescingStatsDto {
+
+    private boolean enabled;
+
+    private long filmCalls;
+
+    private long filmCollapsed;
+
+    private long popularCalls;
+
+    private long popularCollapsed;
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class WriteBehindStatsDto {
+
+    private boolean enabled;
+
+    private int pending;
+
+    private long enqueued;
+
+    private long coalesced;
+
+    private long rejected;
+
+    private long flushedBatches;
+
+    private long written;
+
+    private long dropped;
+}
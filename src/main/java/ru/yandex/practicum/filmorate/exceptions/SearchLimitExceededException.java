@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.exceptions;
+
+public class SearchLimitExceededException extends RuntimeException {
+    public SearchLimitExceededException(String message) {
+        super(message);
+    }
+}
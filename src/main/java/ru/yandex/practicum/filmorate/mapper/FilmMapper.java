@@ -17,6 +17,7 @@ public class FilmMapper {
         dto.setDuration(film.getDuration());
         dto.setMpa(film.getMpa());
         dto.setGenres(film.getGenres());
+        dto.setLikesCount(film.getLikesCount());
 
         return dto;
     }
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.*;
 import lombok.*;
 
@@ -35,4 +36,8 @@ public class Film {
     private Mpa mpa = new Mpa();
 
     private List<Genres> genres = new ArrayList<>();
+
+    //Денормализованный счетчик лайков: ведется хранилищем, из тела запроса не читается
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private long likesCount;
 }
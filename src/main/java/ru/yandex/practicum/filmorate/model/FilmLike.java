@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.model;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+//Лайк для пакетной загрузки. Время постановки можно передать для исторических лайков, иначе - текущее
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilmLike {
+
+    @NotNull
+    @Positive
+    private Long filmId;
+
+    @NotNull
+    @Positive
+    private Long userId;
+
+    private Instant likedAt;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+//Пользователь, которого можно добавить в друзья, и число его общих друзей с тем, кому он предложен
+@Data
+@AllArgsConstructor
+public class FriendSuggestion {
+
+    private User user;
+
+    private int mutualFriends;
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.model;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Дружба для пакетной загрузки: связь направленная, как и в PUT /users/{id}/friends/{friendId}
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Friendship {
+
+    @NotNull
+    @Positive
+    private Long userId;
+
+    @NotNull
+    @Positive
+    private Long friendId;
+}
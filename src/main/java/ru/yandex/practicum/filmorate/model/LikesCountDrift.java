@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Расхождение денормализованного счетчика лайков фильма с фактическим числом записей в likeStorage
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LikesCountDrift {
+
+    private Long filmId;
+
+    private long storedCount;
+
+    private long actualCount;
+}
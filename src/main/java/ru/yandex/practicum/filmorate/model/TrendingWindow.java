@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.model;
+
+import jakarta.validation.ValidationException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+
+//Окно, за которое считаются лайки в подборке трендовых фильмов
+@Getter
+@RequiredArgsConstructor
+public enum TrendingWindow {
+    ONE_HOUR("1h"),
+    ONE_DAY("24h"),
+    SEVEN_DAYS("7d");
+
+    private final String code;
+
+    public static TrendingWindow fromCode(String code) {
+        return Arrays.stream(values())
+                .filter(window -> window.code.equals(code))
+                .findFirst()
+                .orElseThrow(() -> new ValidationException("Неизвестное окно трендов: " + code +
+                        ", допустимы значения 1h, 24h, 7d"));
+    }
+}
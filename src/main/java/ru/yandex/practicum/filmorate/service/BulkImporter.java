@@ -0,0 +1,201 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.BulkResultDto;
+import ru.yandex.practicum.filmorate.util.JsonRecordReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+//Потоковый импорт записей: чтение по одной, проверка и вставка порциями по chunk-size записей,
+//каждая порция - отдельная транзакция. Результат по каждой записи сразу уходит в results,
+//поэтому память ограничена размером порции, а не размером входа.
+@Slf4j
+@Component
+public class BulkImporter {
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+
+    public BulkImporter(ObjectMapper objectMapper, Validator validator,
+                        @Value("${filmorate.bulk.chunk-size:1000}") int chunkSize) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+        log.debug("Импорт: порция {} записей", chunkSize);
+    }
+
+    //check - правила сервиса, бросает исключение для некорректной записи.
+    //insertAll - вставка порции в одной транзакции, возвращает id в порядке записей.
+    //Если порция не вставилась целиком (например, дубликат email), ее записи вставляются по одной через insert,
+    //чтобы ошибку получила только проблемная запись.
+    public <T> void run(InputStream in, Class<T> type, Consumer<T> check, Function<List<T>, List<Long>> insertAll,
+                        Function<T, Long> insert, Consumer<BulkResultDto> results) {
+        read(in, type, check, (chunk, chunkResults) -> insertChunk(chunk, insertAll, insert, chunkResults), results);
+    }
+
+    //Импорт связей (лайков, дружбы): порция целиком передается в process, который сам проверяет ее
+    //и возвращает ошибки в порядке записей порции (null - запись принята). id в результатах не заполняется.
+    public <T> void runChunks(InputStream in, Class<T> type, Function<List<T>, List<String>> process,
+                              Consumer<BulkResultDto> results) {
+        read(in, type, record -> {
+        }, (chunk, chunkResults) -> {
+            List<String> errors;
+            try {
+                errors = process.apply(chunk.records);
+            } catch (RuntimeException e) {
+                log.debug("Порция из {} записей не записана: {}", chunk.records.size(), e.getMessage());
+                errors = Collections.nCopies(chunk.records.size(), e.getMessage());
+            }
+            long accepted = 0;
+            for (int i = 0; i < chunk.records.size(); i++) {
+                String error = errors.get(i);
+                if (error == null) {
+                    accepted++;
+                }
+                chunkResults.accept(new BulkResultDto(chunk.indexes[i], null, error));
+            }
+            return accepted;
+        }, results);
+    }
+
+    private <T> void read(InputStream in, Class<T> type, Consumer<T> check, ChunkWriter<T> writer,
+                          Consumer<BulkResultDto> results) {
+        long start = System.nanoTime();
+        Chunk<T> chunk = new Chunk<>(chunkSize);
+        long index = 0;
+        long accepted = 0;
+        try (JsonRecordReader reader = new JsonRecordReader(objectMapper, in)) {
+            for (JsonNode node = reader.next(); node != null; node = reader.next(), index++) {
+                T record = null;
+                String error;
+                try {
+                    record = objectMapper.treeToValue(node, type);
+                    error = validate(record);
+                    if (error == null) {
+                        check.accept(record);
+                    }
+                } catch (JsonProcessingException e) {
+                    error = "Некорректная запись: " + e.getOriginalMessage();
+                } catch (RuntimeException e) {
+                    error = e.getMessage();
+                }
+                if (error != null) {
+                    results.accept(new BulkResultDto(index, null, error));
+                    continue;
+                }
+                chunk.add(index, record);
+                if (chunk.isFull()) {
+                    accepted += flush(chunk, writer, results);
+                }
+            }
+            accepted += flush(chunk, writer, results);
+        } catch (JsonProcessingException e) {
+            //Дальше поток разобрать нельзя: сохраняем накопленное и сообщаем, на какой записи чтение прервалось
+            accepted += flush(chunk, writer, results);
+            results.accept(new BulkResultDto(index, null, "Некорректный JSON: " + e.getOriginalMessage()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.debug("Импорт {} завершен: прочитано записей {}, принято {}, за {} мс", type.getSimpleName(), index,
+                accepted, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private String validate(Object record) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(record);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    //Возвращает число принятых записей
+    private <T> long flush(Chunk<T> chunk, ChunkWriter<T> writer, Consumer<BulkResultDto> results) {
+        if (chunk.records.isEmpty()) {
+            return 0;
+        }
+        long accepted = writer.write(chunk, results);
+        chunk.clear();
+        return accepted;
+    }
+
+    private <T> long insertChunk(Chunk<T> chunk, Function<List<T>, List<Long>> insertAll, Function<T, Long> insert,
+                                 Consumer<BulkResultDto> results) {
+        long created = 0;
+        List<Long> ids = null;
+        try {
+            ids = insertAll.apply(chunk.records);
+        } catch (RuntimeException e) {
+            log.debug("Порция из {} записей не вставлена ({}), вставляем по одной", chunk.records.size(),
+                    e.getMessage());
+        }
+        for (int i = 0; i < chunk.records.size(); i++) {
+            Long id = null;
+            String error = null;
+            if (ids != null) {
+                id = ids.get(i);
+            } else {
+                try {
+                    id = insert.apply(chunk.records.get(i));
+                } catch (RuntimeException e) {
+                    error = e.getMessage();
+                }
+            }
+            if (id != null) {
+                created++;
+            }
+            results.accept(new BulkResultDto(chunk.indexes[i], id, error));
+        }
+        return created;
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter<T> {
+
+        //Записывает порцию, отправляет результат по каждой ее записи и возвращает число принятых записей
+        long write(Chunk<T> chunk, Consumer<BulkResultDto> results);
+    }
+
+    private static final class Chunk<T> {
+
+        private final List<T> records;
+        private final long[] indexes;
+
+        Chunk(int size) {
+            this.records = new ArrayList<>(size);
+            this.indexes = new long[size];
+        }
+
+        void add(long index, T record) {
+            indexes[records.size()] = index;
+            records.add(record);
+        }
+
+        boolean isFull() {
+            return records.size() == indexes.length;
+        }
+
+        void clear() {
+            records.clear();
+        }
+    }
+}
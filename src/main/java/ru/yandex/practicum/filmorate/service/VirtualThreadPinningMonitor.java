@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.PinningStatsDto;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+//Обнаружение закрепления виртуальных потоков за несущим потоком (событие JFR jdk.VirtualThreadPinned):
+//блокировка внутри synchronized (например, в драйвере JDBC или H2) не освобождает несущий поток,
+//и при малом числе несущих потоков остальные виртуальные потоки стоят. Каждый новый стек закрепления
+//пишется в журнал один раз, счетчики по стекам отдает GET /admin/virtual-threads/pinning.
+//По умолчанию включено вместе с виртуальными потоками (spring.threads.virtual.enabled).
+@Slf4j
+@Component
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int STACK_DEPTH = 8;
+    private static final int MAX_REPORTED_STACKS = 20;
+
+    private final boolean enabled;
+    private final Duration threshold;
+    private final Map<String, LongAdder> stacks = new ConcurrentHashMap<>();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong pinnedNanos = new AtomicLong();
+    private RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(
+            @Value("${filmorate.virtual-threads.pinning-monitor.enabled:${spring.threads.virtual.enabled:false}}")
+            boolean enabled,
+            @Value("${filmorate.virtual-threads.pinning-monitor.threshold:PT0.02S}") Duration threshold) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::record);
+        recording.startAsync();
+        log.info("Отслеживание закрепления виртуальных потоков включено, порог {}", threshold);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    public PinningStatsDto getStats() {
+        Map<String, Long> top = new LinkedHashMap<>();
+        stacks.entrySet().stream()
+                .sorted(Map.Entry.<String, LongAdder>comparingByValue(
+                        (left, right) -> Long.compare(right.sum(), left.sum())))
+                .limit(MAX_REPORTED_STACKS)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue().sum()));
+        return new PinningStatsDto(enabled, events.get(), pinnedNanos.get() / 1_000_000, top);
+    }
+
+    private void record(RecordedEvent event) {
+        events.incrementAndGet();
+        pinnedNanos.addAndGet(event.getDuration().toNanos());
+        String stack = stackOf(event);
+        LongAdder count = stacks.computeIfAbsent(stack, key -> {
+            log.warn("Виртуальный поток {} закреплен за несущим на {} мс:\n{}", event.getThread().getJavaName(),
+                    event.getDuration().toMillis(), key);
+            return new LongAdder();
+        });
+        count.increment();
+    }
+
+    private static String stackOf(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "<стек недоступен>";
+        }
+        List<RecordedFrame> frames = event.getStackTrace().getFrames();
+        StringJoiner stack = new StringJoiner("\n");
+        for (int i = 0; i < Math.min(STACK_DEPTH, frames.size()); i++) {
+            RecordedFrame frame = frames.get(i);
+            stack.add("    at " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":"
+                    + frame.getLineNumber());
+        }
+        return stack.toString();
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.ReadCoalescingStatsDto;
+import ru.yandex.practicum.filmorate.util.SingleFlight;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+//Объединение одинаковых одновременных чтений фильма по id и рейтинга популярных фильмов
+//(filmorate.read-coalescing.enabled): сотни одинаковых запросов в одну миллисекунду выполняют один запрос
+//к хранилищу и получают его результат.
+//Каждое изменение фильмов после завершения сообщает о себе (changed), и к чтению, начатому до завершенного
+//изменения, новые запросы не присоединяются. Изменение фильма затрагивает чтения только своей полосы id,
+//изменения сразу многих фильмов (changedAll) и любые изменения для рейтинга - все чтения.
+@Slf4j
+@Component
+public class FilmReadCoalescer {
+
+    private static final int STRIPES = 1024;
+
+    private final boolean enabled;
+    private final SingleFlight<Long, FilmDto> filmReads = new SingleFlight<>();
+    private final SingleFlight<PopularKey, List<FilmDto>> popularReads = new SingleFlight<>();
+    //Число завершенных изменений: всех, по полосам id фильмов и изменений всех фильмов сразу
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLongArray filmWrites = new AtomicLongArray(STRIPES);
+    private final AtomicLong allFilmsWrites = new AtomicLong();
+
+    public FilmReadCoalescer(@Value("${filmorate.read-coalescing.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        log.debug("Объединение одинаковых чтений фильмов {}", enabled ? "включено" : "выключено");
+    }
+
+    public FilmDto getFilm(long filmId, Supplier<FilmDto> read) {
+        if (!enabled) {
+            return read.get();
+        }
+        //Сумма двух растущих счетчиков тоже растет с каждым изменением, которое касается фильма
+        long version = filmWrites.get(stripe(filmId)) + allFilmsWrites.get();
+        return filmReads.execute(filmId, version, read);
+    }
+
+    public List<FilmDto> getPopular(Integer count, Integer genreId, Integer mpaId, Integer year,
+                                    Supplier<List<FilmDto>> read) {
+        if (!enabled) {
+            return read.get();
+        }
+        return popularReads.execute(new PopularKey(count, genreId, mpaId, year), writes.get(), read);
+    }
+
+    //Вызывается после завершения изменения фильма, до ответа на запрос изменения
+    public void changed(long filmId) {
+        filmWrites.incrementAndGet(stripe(filmId));
+        writes.incrementAndGet();
+    }
+
+    //Изменение многих фильмов сразу (импорт, пакет лайков, сверка счетчиков, справочники)
+    public void changedAll() {
+        allFilmsWrites.incrementAndGet();
+        writes.incrementAndGet();
+    }
+
+    public ReadCoalescingStatsDto getStats() {
+        return new ReadCoalescingStatsDto(enabled, filmReads.getCalls(), filmReads.getCollapsed(),
+                popularReads.getCalls(), popularReads.getCollapsed());
+    }
+
+    private static int stripe(long filmId) {
+        return (int) (filmId ^ (filmId >>> 32)) & (STRIPES - 1);
+    }
+
+    private record PopularKey(Integer count, Integer genreId, Integer mpaId, Integer year) {
+    }
+}
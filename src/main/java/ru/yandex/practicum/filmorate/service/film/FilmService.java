@@ -4,15 +4,38 @@ import jakarta.validation.ValidationException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.BulkResultDto;
+import ru.yandex.practicum.filmorate.dto.CacheStatsDto;
+import ru.yandex.practicum.filmorate.dto.EdgeImportResultDto;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.PageDto;
+import ru.yandex.practicum.filmorate.dto.ReadCoalescingStatsDto;
+import ru.yandex.practicum.filmorate.dto.WriteBehindStatsDto;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.LikesCountDrift;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+import ru.yandex.practicum.filmorate.dal.film.FilmCache;
 import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dal.film.ReferenceDataRegistry;
 import ru.yandex.practicum.filmorate.dal.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.BulkImporter;
+import ru.yandex.practicum.filmorate.util.PageCursor;
 
+import java.io.InputStream;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -21,15 +44,23 @@ public class FilmService {
 
     private final FilmStorage filmDbRepo;
     private final UserStorage userDbRepo;
-    private final GenreService genreService;
-    private final MpaService mpaService;
+    private final FilmCache filmCache;
+    private final ReferenceDataRegistry references;
+    private final BulkImporter bulkImporter;
+    private final LikeWriteBehindQueue likeWriteBehindQueue;
+    private final PopularFilmsStream popularFilmsStream;
+    private final FilmReadCoalescer readCoalescer;
     private final LocalDate cinemaBirthday = LocalDate.of(1895, 12, 28);
+    private static final String CURSOR_RESOURCE = "films";
 
     public FilmDto create(Film film) {
         if (isItAfterCinemaBirthday(film)) {
-            validationOfMpaAndGenre(film);
+            validationOfMpaAndGenre(List.of(film));
             log.trace("Фильм отправлен в хранилище");
-            return FilmMapper.mapToFilmDto(filmDbRepo.create(film));
+            FilmDto created = FilmMapper.mapToFilmDto(filmDbRepo.create(film));
+            readCoalescer.changed(created.getId());
+            popularFilmsStream.popularityChanged();
+            return created;
         }
         log.trace("Фильм не создан");
         return null;
@@ -37,9 +68,12 @@ public class FilmService {
 
     public FilmDto update(Film film) {
         if (isItAfterCinemaBirthday(film)) {
-            validationOfMpaAndGenre(film);
+            validationOfMpaAndGenre(List.of(film));
             log.trace("Фильм отправлен на обновление в хранилище");
-            return FilmMapper.mapToFilmDto(filmDbRepo.update(film));
+            FilmDto updated = FilmMapper.mapToFilmDto(filmDbRepo.update(film));
+            readCoalescer.changed(updated.getId());
+            popularFilmsStream.popularityChanged();
+            return updated;
         }
         log.trace("Фильм не обновлен");
         return null;
@@ -47,12 +81,15 @@ public class FilmService {
 
     public FilmDto getFilmById(Long filmId) {
         log.debug("Отправим запрос на возврат фильма с filmId = {}", filmId);
-        return FilmMapper.mapToFilmDto(filmDbRepo.getFilmById(filmId));
+        return readCoalescer.getFilm(filmId, () -> FilmMapper.mapToFilmDto(filmDbRepo.getFilmById(filmId)));
     }
 
     public FilmDto delete(Long filmId) {
         log.trace("Фильм отправлен на удаление в хранилище");
-        return FilmMapper.mapToFilmDto(filmDbRepo.delete(filmId));
+        FilmDto deleted = FilmMapper.mapToFilmDto(filmDbRepo.delete(filmId));
+        readCoalescer.changed(filmId);
+        popularFilmsStream.popularityChanged();
+        return deleted;
     }
 
     public List<FilmDto> getAll() {
@@ -62,6 +99,74 @@ public class FilmService {
                 .toList();
     }
 
+    public PageDto<FilmDto> getPage(int limit, String after) {
+        long afterId = after == null ? 0 : PageCursor.decode(CURSOR_RESOURCE, after);
+        log.trace("Отправляем запрос на возврат {} фильмов после id = {}", limit, afterId);
+        List<FilmDto> films = filmDbRepo.getPage(afterId, limit).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .toList();
+        String nextCursor = films.size() < limit ? null : PageCursor.encode(CURSOR_RESOURCE, films.getLast().getId());
+        return new PageDto<>(films, nextCursor);
+    }
+
+    public void exportAll(Consumer<FilmDto> consumer) {
+        log.trace("Отправляем запрос на потоковую выгрузку всех фильмов из хранилища");
+        filmDbRepo.exportAll(film -> consumer.accept(FilmMapper.mapToFilmDto(film)));
+    }
+
+    //Потоковый импорт фильмов: каждая запись проверяется по тем же правилам, что и в create
+    public void bulkCreate(InputStream in, Consumer<BulkResultDto> results) {
+        log.trace("Начинаем потоковый импорт фильмов");
+        bulkImporter.run(in, Film.class, film -> {
+                    isItAfterCinemaBirthday(film);
+                    validationOfMpaAndGenre(List.of(film));
+                },
+                films -> filmDbRepo.createAll(films).stream().map(Film::getId).toList(),
+                film -> filmDbRepo.create(film).getId(),
+                results);
+        readCoalescer.changedAll();
+        popularFilmsStream.popularityChanged();
+    }
+
+    //Пакетная загрузка лайков. Существование фильмов и пользователей проверяется одним запросом на порцию,
+    //повторы внутри порции отбрасываются, уже существующие лайки принимаются без записи
+    public EdgeImportResultDto bulkAddLikes(InputStream in) {
+        log.trace("Начинаем пакетную загрузку лайков");
+        EdgeImportResultDto summary = new EdgeImportResultDto();
+        bulkImporter.runChunks(in, FilmLike.class, likes -> addLikesChunk(likes, summary), summary::add);
+        readCoalescer.changedAll();
+        popularFilmsStream.popularityChanged();
+        return summary;
+    }
+
+    private List<String> addLikesChunk(List<FilmLike> likes, EdgeImportResultDto summary) {
+        Set<Long> filmIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        for (FilmLike like : likes) {
+            filmIds.add(like.getFilmId());
+            userIds.add(like.getUserId());
+        }
+        Set<Long> existingFilmIds = filmDbRepo.findExistingIds(filmIds);
+        Set<Long> existingUserIds = userDbRepo.findExistingIds(userIds);
+        List<String> errors = new ArrayList<>(likes.size());
+        Set<LikeKey> unique = new HashSet<>();
+        List<FilmLike> toWrite = new ArrayList<>();
+        for (FilmLike like : likes) {
+            if (!existingFilmIds.contains(like.getFilmId())) {
+                errors.add("Фильм с Id: " + like.getFilmId() + " не найден");
+            } else if (!existingUserIds.contains(like.getUserId())) {
+                errors.add("Пользователь с Id: " + like.getUserId() + " не найден");
+            } else {
+                errors.add(null);
+                if (unique.add(new LikeKey(like.getFilmId(), like.getUserId()))) {
+                    toWrite.add(like);
+                }
+            }
+        }
+        summary.setWritten(summary.getWritten() + filmDbRepo.addLikes(toWrite));
+        return errors;
+    }
+
     private boolean isItAfterCinemaBirthday(Film film) {
         log.trace("Начинаем проверку на дату релиза фильма");
         if (!film.getReleaseDate().isAfter(cinemaBirthday)) {
@@ -75,45 +180,188 @@ public class FilmService {
     public void clear() {
         log.trace("Запрос отправлен в хранилище для очистки хранилища фильмов для целей Тестирования");
         filmDbRepo.clear();
+        readCoalescer.changedAll();
     }
 
     //Ниже приведена логика работы с фильмами и лайками.
     //Предлагается всегда возвращать айди пользователя, кто поставил лайк. Тогда не будет путаницы, что за айди вернулся.
 
+    //При отложенной записи лайк только ставится в очередь: повторный лайк не считается ошибкой,
+    //а счетчик лайков фильма и рейтинги обновятся после записи очереди в базу
+    //Существование фильма и пользователя проверяет внешний ключ при записи, отдельных запросов перед ней нет.
+    //Отложенная запись подтверждает лайк до записи в базу, поэтому проверяет их заранее
     public Long addLikeToFilm(Long filmId, Long userId) {
-        validationOfFilmAndUser(filmId, userId);
+        if (likeWriteBehindQueue.isEnabled()) {
+            validationOfFilmAndUser(filmId, userId);
+            log.trace("Ставим лайк для фильма в очередь записи");
+            likeWriteBehindQueue.like(filmId, userId);
+            return userId;
+        }
         log.trace("Отправляем лайк для фильма в хранилище");
-        return filmDbRepo.addLikeToFilm(filmId, userId);
+        filmDbRepo.addLikeToFilm(filmId, userId);
+        readCoalescer.changed(filmId);
+        popularFilmsStream.popularityChanged();
+        return userId;
     }
 
     public Long removeLikeFromFilm(Long filmId, Long userId) {
-        validationOfFilmAndUser(filmId, userId);
+        if (likeWriteBehindQueue.isEnabled()) {
+            validationOfFilmAndUser(filmId, userId);
+            log.trace("Ставим снятие лайка в очередь записи");
+            likeWriteBehindQueue.unlike(filmId, userId);
+            return userId;
+        }
         log.trace("Отправляем лайк для его удаления из хранилища");
-        return filmDbRepo.removeLikeFromFilm(filmId, userId);
+        filmDbRepo.removeLikeFromFilm(filmId, userId);
+        readCoalescer.changed(filmId);
+        popularFilmsStream.popularityChanged();
+        return userId;
+    }
+
+    //Стоит ли лайк пользователя; операции пользователя, еще не записанные в базу, учитываются
+    public boolean hasLike(Long filmId, Long userId) {
+        Boolean pending = likeWriteBehindQueue.pendingState(filmId, userId);
+        if (pending != null) {
+            return pending;
+        }
+        return filmDbRepo.hasLike(filmId, userId);
+    }
+
+    public WriteBehindStatsDto getLikeWriteBehindStats() {
+        log.trace("Возвращаем статистику очереди записи лайков");
+        return likeWriteBehindQueue.getStats();
     }
 
-    public List<FilmDto> getListOfPopularFilms(Integer count) {
+    public void flushLikeWriteBehind() {
+        log.trace("Записываем очередь лайков в хранилище");
+        likeWriteBehindQueue.flush();
+    }
+
+    public List<FilmDto> getListOfPopularFilms(Integer count, Integer genreId, Integer mpaId, Integer year) {
         log.trace("Отправляем запрос на возврат count {} фильмов из хранилища, отсортированных по кол-ву лайков", count);
-        return filmDbRepo.getListOfPopularFilms(count).stream()
+        return readCoalescer.getPopular(count, genreId, mpaId, year,
+                () -> filmDbRepo.getListOfPopularFilms(count, genreId, mpaId, year).stream()
+                        .map(FilmMapper::mapToFilmDto)
+                        .toList());
+    }
+
+    public List<FilmDto> getTrendingFilms(String window, Integer count) {
+        TrendingWindow trendingWindow = TrendingWindow.fromCode(window);
+        log.trace("Отправляем запрос на возврат count {} фильмов с максимумом лайков за окно {}", count, window);
+        return filmDbRepo.getTrendingFilms(trendingWindow, count).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .toList();
+    }
+
+    //У пользователя с малым числом лайков похожих по лайкам фильмов мало или нет совсем:
+    //недостающие рекомендации добираются по жанрам и MPA его лайков
+    public List<FilmDto> getRecommendations(Long userId, Integer count) {
+        validationOfUser(userId);
+        log.trace("Отправляем запрос на возврат {} рекомендованных фильмов для пользователя с Id {}", count, userId);
+        List<Film> films = new ArrayList<>(filmDbRepo.getRecommendedFilms(userId, count));
+        if (films.size() < count) {
+            Set<Long> found = films.stream().map(Film::getId).collect(Collectors.toCollection(HashSet::new));
+            for (Film film : filmDbRepo.getContentRecommendedFilms(userId, count)) {
+                if (films.size() == count) {
+                    break;
+                }
+                if (found.add(film.getId())) {
+                    films.add(film);
+                }
+            }
+        }
+        return films.stream()
+                .map(FilmMapper::mapToFilmDto)
+                .toList();
+    }
+
+    public List<FilmDto> getContentRecommendations(Long userId, Integer count) {
+        validationOfUser(userId);
+        log.trace("Отправляем запрос на возврат {} фильмов, близких по жанрам и MPA к лайкам пользователя с Id {}",
+                count, userId);
+        return filmDbRepo.getContentRecommendedFilms(userId, count).stream()
                 .map(FilmMapper::mapToFilmDto)
                 .toList();
     }
 
+    public ReadCoalescingStatsDto getReadCoalescingStats() {
+        log.trace("Возвращаем статистику объединения одинаковых чтений фильмов");
+        return readCoalescer.getStats();
+    }
+
+    public CacheStatsDto getFilmCacheStats() {
+        log.trace("Возвращаем статистику кэша фильмов");
+        return filmCache.getStats();
+    }
+
+    public void rebuildPopularityIndex() {
+        log.trace("Отправляем запрос на перестройку рейтинга популярности фильмов");
+        filmDbRepo.rebuildPopularityIndex();
+        readCoalescer.changedAll();
+    }
+
+    //Фильмы в кэше ссылаются на старые объекты жанров и MPA, поэтому кэш сбрасывается вместе со справочниками
+    public void reloadReferenceData() {
+        log.trace("Перечитываем справочники жанров и рейтингов MPA");
+        references.reload();
+        filmCache.invalidateAll();
+        readCoalescer.changedAll();
+    }
+
+    public List<LikesCountDrift> checkPopularityIndex() {
+        log.trace("Отправляем запрос на сверку рейтинга популярности фильмов с хранилищем лайков");
+        return filmDbRepo.checkPopularityIndex();
+    }
+
+    private record LikeKey(long filmId, long userId) {
+    }
+
+    private void validationOfUser(Long userId) {
+        if (userDbRepo.findExistingIds(List.of(userId)).isEmpty()) {
+            throw new DataNotFoundException("Пользователь с Id: " + userId + " не найден");
+        }
+    }
+
+    //Только проверка существования по первичному ключу, фильм и пользователь целиком не загружаются
     private void validationOfFilmAndUser(Long filmId, Long userId) {
-        if (userDbRepo.getUserById(userId) == null) {
+        if (userDbRepo.findExistingIds(List.of(userId)).isEmpty()) {
             throw new DataNotFoundException("Пользователь с Id: " + userId + " не найден");
         }
         log.trace("Пользователь с Id {} есть в списке пользователей", userId);
-        if (filmDbRepo.getFilmById(filmId) == null) {
+        if (filmDbRepo.findExistingIds(List.of(filmId)).isEmpty()) {
             throw new DataNotFoundException("Фильм с Id: " + filmId + " не найден");
         }
         log.trace("Фильм с указанным Id {} есть в списке фильмов", filmId);
     }
 
-    private void validationOfMpaAndGenre(Film film) {
-        film.getGenres().stream()
-                .map(genre -> genre.getId())
-                .forEach(genreService::getGenreById);
-        mpaService.getMpaById(film.getMpa().getId());
+    //Проверка жанров и MPA сразу для всех фильмов по справочникам в памяти, без запросов к базе.
+    //В ошибку попадают все неизвестные id, а не только первый найденный.
+    private void validationOfMpaAndGenre(Collection<Film> films) {
+        Set<Integer> unknownGenreIds = new TreeSet<>();
+        Set<Integer> unknownMpaIds = new TreeSet<>();
+        for (Film film : films) {
+            if (film.getGenres() != null) {
+                for (Genres genre : film.getGenres()) {
+                    if (references.getGenre(genre.getId()) == null) {
+                        unknownGenreIds.add(genre.getId());
+                    }
+                }
+            }
+            if (references.getMpa(film.getMpa().getId()) == null) {
+                unknownMpaIds.add(film.getMpa().getId());
+            }
+        }
+        if (unknownGenreIds.isEmpty() && unknownMpaIds.isEmpty()) {
+            return;
+        }
+        StringJoiner message = new StringJoiner("; ");
+        if (!unknownGenreIds.isEmpty()) {
+            message.add("Жанры с ID " + unknownGenreIds + " не найдены");
+        }
+        if (!unknownMpaIds.isEmpty()) {
+            message.add("Рейтинги MPA с ID " + unknownMpaIds + " не найдены");
+        }
+        log.debug("Фильмы не прошли проверку справочников: {}", message);
+        throw new DataNotFoundException(message.toString());
     }
 }
@@ -3,7 +3,7 @@ package ru.yandex.practicum.filmorate.service.film;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.dal.film.GenreStorage;
+import ru.yandex.practicum.filmorate.dal.film.ReferenceDataRegistry;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.model.Genres;
 
@@ -14,16 +14,19 @@ import java.util.List;
 @Service
 public class GenreService {
 
-    private final GenreStorage genreStorage;
+    private final ReferenceDataRegistry references;
 
     public List<Genres> getAllGenres() {
         log.debug("Отправляем запрос на возврат всех жанров");
-        return genreStorage.getAllGenres();
+        return references.getAllGenres();
     }
 
     public Genres getGenreById(Integer genreId) {
         log.debug("Отправляем запрос на возврат жанра по его ID");
-        return genreStorage.getGenreById(genreId)
-                .orElseThrow(() -> new DataNotFoundException("Жанр с ID " + genreId + " не найден"));
+        Genres result = references.getGenre(genreId);
+        if (result == null) {
+            throw new DataNotFoundException("Жанр с ID " + genreId + " не найден");
+        }
+        return result;
     }
 }
@@ -0,0 +1,327 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dto.WriteBehindStatsDto;
+import ru.yandex.practicum.filmorate.exceptions.WriteQueueFullException;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Отложенная запись лайков (filmorate.likes.write-behind.enabled). Операция запоминается в памяти и сразу
+//подтверждается, а в базу порции до batch-size операций пишутся одной транзакцией раз в flush-interval
+//или как только накопилась порция. Для пары (фильм, пользователь) хранится только последняя операция:
+//лайк и снятие лайка идемпотентны, поэтому результат тот же, что и при записи всей последовательности.
+//Очередь ограничена capacity парами; когда она заполнена, новая пара ждет место не дольше offer-timeout,
+//после чего запрос получает 503. Неудачная из-за базы порция возвращается в очередь и пишется повторно,
+//поэтому при недоступной базе очередь заполняется и включается то же ограничение.
+//Подтвержденные, но еще не записанные операции теряются при аварийной остановке (не дольше flush-interval
+//и не больше capacity операций); при штатной остановке очередь дописывается в базу.
+@Slf4j
+@Component
+public class LikeWriteBehindQueue {
+
+    private final FilmStorage filmDbRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final PopularFilmsStream popularFilmsStream;
+    private final FilmReadCoalescer readCoalescer;
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+    private final Duration shutdownTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    //Держится всю запись в базу; отдельно от lock, чтобы запись не задерживала постановку в очередь
+    private final ReentrantLock flushLock = new ReentrantLock();
+    //Ожидающие записи операции в порядке первого появления пары
+    private final LinkedHashMap<LikeKey, PendingLike> pending = new LinkedHashMap<>();
+    //Порция, которая сейчас пишется в базу: до фиксации ее операции читаются отсюда
+    private Map<LikeKey, PendingLike> inFlight = Map.of();
+    private boolean flushRequested;
+    private ScheduledExecutorService flusher;
+
+    private long enqueued;
+    private long coalesced;
+    private long rejected;
+    //Меняются только внутри flush, который выполняется одним потоком за раз
+    private volatile long flushedBatches;
+    private volatile long written;
+    private volatile long dropped;
+
+    public LikeWriteBehindQueue(FilmStorage filmDbRepo, TransactionTemplate transactionTemplate,
+                                PopularFilmsStream popularFilmsStream, FilmReadCoalescer readCoalescer,
+                                @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                                @Value("${filmorate.likes.write-behind.capacity:10000}") int capacity,
+                                @Value("${filmorate.likes.write-behind.batch-size:500}") int batchSize,
+                                @Value("${filmorate.likes.write-behind.flush-interval:PT0.1S}") Duration flushInterval,
+                                @Value("${filmorate.likes.write-behind.offer-timeout:PT0.05S}") Duration offerTimeout,
+                                @Value("${filmorate.likes.write-behind.shutdown-timeout:PT10S}")
+                                Duration shutdownTimeout) {
+        this.filmDbRepo = filmDbRepo;
+        this.transactionTemplate = transactionTemplate;
+        this.popularFilmsStream = popularFilmsStream;
+        this.readCoalescer = readCoalescer;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.offerTimeout = offerTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        log.info("Отложенная запись лайков включена: очередь {} пар, порция {}, интервал {}", capacity, batchSize,
+                flushInterval);
+    }
+
+    //Штатная остановка: останавливаем фоновую запись и дописываем очередь в базу в текущем потоке
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        if (!flusher.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Фоновая запись лайков не завершилась за {}", shutdownTimeout);
+            return;
+        }
+        flush();
+        int left = pendingCount();
+        if (left > 0) {
+            log.warn("При остановке не записано операций с лайками: {}", left);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void like(Long filmId, Long userId) {
+        enqueue(new LikeKey(filmId, userId), new PendingLike(true, Instant.now()));
+    }
+
+    public void unlike(Long filmId, Long userId) {
+        enqueue(new LikeKey(filmId, userId), new PendingLike(false, Instant.now()));
+    }
+
+    //Состояние лайка с учетом еще не записанных операций: null - операций по паре нет, нужно читать базу
+    public Boolean pendingState(Long filmId, Long userId) {
+        LikeKey key = new LikeKey(filmId, userId);
+        lock.lock();
+        try {
+            PendingLike like = pending.get(key);
+            if (like == null) {
+                like = inFlight.get(key);
+            }
+            return like == null ? null : like.liked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public WriteBehindStatsDto getStats() {
+        lock.lock();
+        try {
+            return new WriteBehindStatsDto(enabled, pending.size() + inFlight.size(), enqueued, coalesced, rejected,
+                    flushedBatches, written, dropped);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Пишет в базу все накопленные операции порциями по batchSize. Одновременно пишет только один поток,
+    //иначе операции одной пары могли бы попасть в две параллельные транзакции. Блокировка - ReentrantLock,
+    //а не synchronized: запись, вызванная на виртуальном потоке (POST /admin/likes-queue/flush),
+    //не занимает поток-носитель на время запросов к базе
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                Map<LikeKey, PendingLike> batch = takeBatch();
+                if (batch.isEmpty()) {
+                    return;
+                }
+                boolean done = write(batch);
+                //Лайки порции попали в рейтинги только сейчас, при записи в базу
+                batch.keySet().forEach(key -> readCoalescer.changed(key.filmId()));
+                popularFilmsStream.popularityChanged();
+                lock.lock();
+                try {
+                    inFlight = Map.of();
+                    notFull.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                if (!done) {
+                    return;
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void enqueue(LikeKey key, PendingLike like) {
+        boolean requestFlush;
+        lock.lock();
+        try {
+            if (pending.containsKey(key)) {
+                coalesced++;
+            } else {
+                long waitNanos = offerTimeout.toNanos();
+                while (pending.size() + inFlight.size() >= capacity) {
+                    if (waitNanos <= 0) {
+                        rejected++;
+                        throw new WriteQueueFullException("Очередь записи лайков заполнена, повторите запрос позже");
+                    }
+                    waitNanos = notFull.awaitNanos(waitNanos);
+                }
+            }
+            pending.put(key, like);
+            enqueued++;
+            requestFlush = pending.size() >= batchSize && !flushRequested;
+            if (requestFlush) {
+                flushRequested = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WriteQueueFullException("Ожидание места в очереди записи лайков прервано");
+        } finally {
+            lock.unlock();
+        }
+        if (requestFlush) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                log.debug("Внеочередная запись лайков не запущена: приложение останавливается");
+            }
+        }
+    }
+
+    private Map<LikeKey, PendingLike> takeBatch() {
+        lock.lock();
+        try {
+            flushRequested = false;
+            Map<LikeKey, PendingLike> batch = new LinkedHashMap<>();
+            Iterator<Map.Entry<LikeKey, PendingLike>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && batch.size() < batchSize) {
+                Map.Entry<LikeKey, PendingLike> entry = iterator.next();
+                batch.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+            inFlight = batch;
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Возвращает false, если порция не записана из-за базы и возвращена в очередь
+    private boolean write(Map<LikeKey, PendingLike> batch) {
+        try {
+            written += writeInTransaction(batch);
+            flushedBatches++;
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            //Например, фильм или пользователь удален после постановки лайка: пишем по одной,
+            //чтобы отбросить только такие операции
+            log.debug("Порция из {} операций с лайками не записана ({}), пишем по одной", batch.size(),
+                    e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Порция из {} операций с лайками не записана и будет повторена: {}", batch.size(),
+                    e.getMessage());
+            requeue(batch);
+            return false;
+        }
+        Map<LikeKey, PendingLike> rest = new LinkedHashMap<>(batch);
+        for (Map.Entry<LikeKey, PendingLike> entry : batch.entrySet()) {
+            try {
+                written += writeInTransaction(Map.of(entry.getKey(), entry.getValue()));
+            } catch (DataIntegrityViolationException e) {
+                dropped++;
+                log.warn("Операция с лайком фильма {} от пользователя {} отброшена: {}", entry.getKey().filmId(),
+                        entry.getKey().userId(), e.getMessage());
+            } catch (RuntimeException e) {
+                log.warn("Операции с лайками не записаны и будут повторены: {}", e.getMessage());
+                requeue(rest);
+                return false;
+            }
+            rest.remove(entry.getKey());
+        }
+        flushedBatches++;
+        return true;
+    }
+
+    private int writeInTransaction(Map<LikeKey, PendingLike> batch) {
+        List<FilmLike> likes = new ArrayList<>();
+        List<FilmLike> unlikes = new ArrayList<>();
+        batch.forEach((key, like) ->
+                (like.liked() ? likes : unlikes).add(new FilmLike(key.filmId(), key.userId(), like.at())));
+        return transactionTemplate.execute(status -> filmDbRepo.addLikes(likes) + filmDbRepo.removeLikes(unlikes));
+    }
+
+    //Операции, которые уже перезаписаны более поздними, не возвращаются
+    private void requeue(Map<LikeKey, PendingLike> batch) {
+        lock.lock();
+        try {
+            batch.forEach(pending::putIfAbsent);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка фоновой записи лайков", e);
+        }
+    }
+
+    private int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record LikeKey(long filmId, long userId) {
+    }
+
+    private record PendingLike(boolean liked, Instant at) {
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.model.LikesCountDrift;
+
+import java.util.List;
+
+//Периодическая сверка денормализованного счетчика likes_count с likeStorage.
+//Первый запуск сразу после старта приложения заполняет счетчик в базах, созданных до его появления.
+@Slf4j
+@RequiredArgsConstructor
+@Service
+public class LikesCountReconciliationJob {
+
+    private static final int DRIFTS_TO_LOG = 10;
+
+    private final FilmStorage filmDbRepo;
+    private final FilmReadCoalescer readCoalescer;
+
+    @Scheduled(fixedDelayString = "${filmorate.likes-count.reconcile-interval:PT1H}")
+    public List<LikesCountDrift> reconcile() {
+        log.trace("Начинаем сверку счетчиков лайков с хранилищем лайков");
+        List<LikesCountDrift> drifts = filmDbRepo.reconcileLikesCount();
+        if (drifts.isEmpty()) {
+            log.debug("Счетчики лайков совпадают с хранилищем лайков");
+        } else {
+            readCoalescer.changedAll();
+            log.warn("Счетчики лайков разошлись с хранилищем у {} фильмов и были пересчитаны, например: {}",
+                    drifts.size(), drifts.subList(0, Math.min(DRIFTS_TO_LOG, drifts.size())));
+        }
+        return drifts;
+    }
+}
@@ -3,7 +3,7 @@ package ru.yandex.practicum.filmorate.service.film;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.dal.film.MpaStorage;
+import ru.yandex.practicum.filmorate.dal.film.ReferenceDataRegistry;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.model.Mpa;
 
@@ -14,16 +14,19 @@ import java.util.List;
 @Service
 public class MpaService {
 
-    private final MpaStorage mpaStorage;
+    private final ReferenceDataRegistry references;
 
     public List<Mpa> getAllMpas() {
         log.debug("Отправляем запрос на возврат всех рейтингов MPA");
-        return mpaStorage.getAllMpas();
+        return references.getAllMpas();
     }
 
     public Mpa getMpaById(Integer mpaId) {
         log.debug("Отправляем запрос на возврат рейтинга MPA по его ID");
-        return mpaStorage.getMpaById(mpaId)
-                .orElseThrow(() -> new DataNotFoundException("Рейтинг MPA с ID " + mpaId + " не найден"));
+        Mpa result = references.getMpa(mpaId);
+        if (result == null) {
+            throw new DataNotFoundException("Рейтинг MPA с ID " + mpaId + " не найден");
+        }
+        return result;
     }
 }
\ No newline at end of file
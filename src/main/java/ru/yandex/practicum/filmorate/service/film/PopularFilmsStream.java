@@ -0,0 +1,242 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.PopularFilmsDiffDto;
+import ru.yandex.practicum.filmorate.dto.RankedFilmDto;
+import ru.yandex.practicum.filmorate.mapper.FilmMapper;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Рассылка рейтинга популярных фильмов по Server-Sent Events (GET /films/popular/stream).
+//FilmService сообщает о каждом изменении лайков и фильмов, но рейтинг пересчитывается не чаще раза в tick:
+//все изменения за такт сливаются в один пересчет. Подписчики с одинаковым count получают одно и то же событие -
+//изменившиеся места относительно предыдущего события, и только если рейтинг действительно изменился.
+//Открытое соединение не занимает поток (асинхронный ответ SseEmitter), события рассылаются на виртуальных потоках,
+//поэтому медленный клиент не задерживает остальных.
+@Slf4j
+@Component
+public class PopularFilmsStream {
+
+    private static final String SNAPSHOT_EVENT = "snapshot";
+    private static final String DIFF_EVENT = "diff";
+
+    private final FilmStorage filmDbRepo;
+    private final ObjectMapper objectMapper;
+    private final Duration tick;
+    private final Duration timeout;
+    //Подписчики по размеру рейтинга
+    private final Map<Integer, Leaderboard> leaderboards = new ConcurrentHashMap<>();
+    private final AtomicBoolean changed = new AtomicBoolean();
+    private final AtomicLong eventId = new AtomicLong();
+    private ScheduledExecutorService ticker;
+    private ExecutorService senders;
+
+    public PopularFilmsStream(FilmStorage filmDbRepo, ObjectMapper objectMapper,
+                              @Value("${filmorate.popular-stream.tick:PT1S}") Duration tick,
+                              @Value("${filmorate.popular-stream.timeout:PT30M}") Duration timeout) {
+        this.filmDbRepo = filmDbRepo;
+        this.objectMapper = objectMapper;
+        this.tick = tick;
+        this.timeout = timeout;
+    }
+
+    @PostConstruct
+    void start() {
+        senders = Executors.newVirtualThreadPerTaskExecutor();
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "popular-films-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tickQuietly, tick.toMillis(), tick.toMillis(), TimeUnit.MILLISECONDS);
+        log.debug("Рассылка популярных фильмов: такт {}, время жизни подписки {}", tick, timeout);
+    }
+
+    @PreDestroy
+    void stop() {
+        ticker.shutdownNow();
+        leaderboards.values().forEach(leaderboard -> leaderboard.subscribers.forEach(SseEmitter::complete));
+        senders.shutdown();
+    }
+
+    //Подписка на рейтинг из count фильмов: сразу отправляется текущий рейтинг, дальше - его изменения
+    public SseEmitter subscribe(int count) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        emitter.onTimeout(emitter::complete);
+        while (!join(count, emitter)) {
+            log.trace("Рейтинг из {} фильмов закрыт без подписчиков, подписываемся на новый", count);
+        }
+        log.debug("Новая подписка на {} популярных фильмов", count);
+        return emitter;
+    }
+
+    //false - рейтинг успели закрыть как оставшийся без подписчиков.
+    //Снимок отправляется под блокировкой рейтинга, чтобы подписчик не получил изменение раньше снимка.
+    //Блокировка - ReentrantLock, а не synchronized: запрос к базе и отправка на виртуальном потоке
+    //не занимают поток-носитель
+    private boolean join(int count, SseEmitter emitter) {
+        Leaderboard leaderboard = leaderboards.computeIfAbsent(count, Leaderboard::new);
+        leaderboard.lock.lock();
+        try {
+            if (leaderboard.closed) {
+                return false;
+            }
+            if (leaderboard.films == null) {
+                leaderboard.films = loadTop(count);
+            }
+            send(emitter, SNAPSHOT_EVENT, eventId.get(), serialize(diff(List.of(), leaderboard.films)));
+            leaderboard.subscribers.add(emitter);
+        } finally {
+            leaderboard.lock.unlock();
+        }
+        emitter.onCompletion(() -> leaderboard.subscribers.remove(emitter));
+        emitter.onError(error -> leaderboard.subscribers.remove(emitter));
+        return true;
+    }
+
+    //Лайки или фильмы изменились: рейтинг будет пересчитан на ближайшем такте
+    public void popularityChanged() {
+        changed.set(true);
+    }
+
+    private void tickQuietly() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.error("Ошибка рассылки популярных фильмов", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void tick() throws InterruptedException {
+        for (Leaderboard leaderboard : leaderboards.values()) {
+            leaderboard.lock.lock();
+            try {
+                if (leaderboard.subscribers.isEmpty()) {
+                    leaderboard.closed = true;
+                    leaderboards.remove(leaderboard.count, leaderboard);
+                }
+            } finally {
+                leaderboard.lock.unlock();
+            }
+        }
+        if (leaderboards.isEmpty() || !changed.getAndSet(false)) {
+            return;
+        }
+        int maxCount = leaderboards.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+        //Рейтинг меньшего размера - начало рейтинга наибольшего, поэтому он читается один раз
+        List<FilmDto> top = loadTop(maxCount);
+        long id = eventId.incrementAndGet();
+        List<Future<?>> sends = new ArrayList<>();
+        for (Leaderboard leaderboard : leaderboards.values()) {
+            List<FilmDto> films = top.subList(0, Math.min(leaderboard.count, top.size()));
+            String data;
+            List<SseEmitter> subscribers;
+            leaderboard.lock.lock();
+            try {
+                PopularFilmsDiffDto diff = diff(leaderboard.films, films);
+                leaderboard.films = films;
+                if (diff == null) {
+                    continue;
+                }
+                data = serialize(diff);
+                subscribers = List.copyOf(leaderboard.subscribers);
+            } finally {
+                leaderboard.lock.unlock();
+            }
+            for (SseEmitter emitter : subscribers) {
+                sends.add(senders.submit(() -> send(emitter, DIFF_EVENT, id, data)));
+            }
+        }
+        //Следующий такт начинается после доставки текущего, чтобы события одного подписчика не обгоняли друг друга
+        for (Future<?> send : sends) {
+            try {
+                send.get();
+            } catch (ExecutionException e) {
+                log.debug("Событие рейтинга не доставлено: {}", e.getCause().getMessage());
+            }
+        }
+        log.trace("Такт рассылки популярных фильмов {}: отправлено событий {}", id, sends.size());
+    }
+
+    private List<FilmDto> loadTop(int count) {
+        return filmDbRepo.getListOfPopularFilms(count, null, null, null).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .toList();
+    }
+
+    //Места, на которых фильм или его данные изменились; null, если рейтинг не изменился
+    private static PopularFilmsDiffDto diff(List<FilmDto> previous, List<FilmDto> current) {
+        List<RankedFilmDto> changedFilms = new ArrayList<>();
+        for (int i = 0; i < current.size(); i++) {
+            if (i >= previous.size() || !previous.get(i).equals(current.get(i))) {
+                changedFilms.add(new RankedFilmDto(i + 1, current.get(i)));
+            }
+        }
+        if (changedFilms.isEmpty() && previous.size() == current.size()) {
+            return null;
+        }
+        return new PopularFilmsDiffDto(current.size(), changedFilms);
+    }
+
+    //Событие сериализуется один раз на всех подписчиков рейтинга
+    private String serialize(PopularFilmsDiffDto diff) {
+        try {
+            return objectMapper.writeValueAsString(diff);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать рейтинг популярных фильмов", e);
+        }
+    }
+
+    private static void send(SseEmitter emitter, String name, long id, String data) {
+        try {
+            emitter.send(SseEmitter.event()
+                    .id(Long.toString(id))
+                    .name(name)
+                    .data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            //Клиент отключился: подписка удаляется в onError/onCompletion
+            emitter.completeWithError(e);
+        }
+    }
+
+    private static class Leaderboard {
+
+        private final int count;
+        private final Set<SseEmitter> subscribers = ConcurrentHashMap.newKeySet();
+        private final ReentrantLock lock = new ReentrantLock();
+        //Последний разосланный рейтинг; меняется под lock
+        private List<FilmDto> films;
+        private boolean closed;
+
+        Leaderboard(int count) {
+            this.count = count;
+        }
+    }
+}
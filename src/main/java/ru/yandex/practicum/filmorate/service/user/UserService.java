@@ -4,14 +4,29 @@ import jakarta.validation.ValidationException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.BulkResultDto;
+import ru.yandex.practicum.filmorate.dto.EdgeImportResultDto;
+import ru.yandex.practicum.filmorate.dto.FriendSuggestionDto;
+import ru.yandex.practicum.filmorate.dto.FriendshipPathDto;
+import ru.yandex.practicum.filmorate.dto.PageDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
 import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.InvalidLoginException;
 import ru.yandex.practicum.filmorate.mapper.UserMapper;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.dal.user.UserStorage;
-
+import ru.yandex.practicum.filmorate.service.BulkImporter;
+import ru.yandex.practicum.filmorate.service.film.FilmReadCoalescer;
+import ru.yandex.practicum.filmorate.service.film.PopularFilmsStream;
+import ru.yandex.practicum.filmorate.util.PageCursor;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -19,6 +34,10 @@ import java.util.List;
 public class UserService {
 
     private final UserStorage userDbRepo;
+    private final BulkImporter bulkImporter;
+    private final FilmReadCoalescer readCoalescer;
+    private final PopularFilmsStream popularFilmsStream;
+    private static final String CURSOR_RESOURCE = "users";
 
     public UserDto create(User user) {
         if (isNoSpaceInLogin(user)) {
@@ -40,9 +59,13 @@ public class UserService {
         return null;
     }
 
+    //Вместе с пользователем удаляются его лайки, поэтому меняются счетчики лайков фильмов и рейтинг
     public UserDto delete(Long userId) {
         log.trace("Запрос отправлен на удаление пользователя в хранилище");
-        return UserMapper.mapToUserDto(userDbRepo.delete(userId));
+        UserDto deleted = UserMapper.mapToUserDto(userDbRepo.delete(userId));
+        readCoalescer.changedAll();
+        popularFilmsStream.popularityChanged();
+        return deleted;
     }
 
     public List<UserDto> getAll() {
@@ -52,6 +75,33 @@ public class UserService {
                 .toList();
     }
 
+    public PageDto<UserDto> getPage(int limit, String after) {
+        long afterId = after == null ? 0 : PageCursor.decode(CURSOR_RESOURCE, after);
+        log.debug("Отправляем запрос на возврат {} пользователей после id = {}", limit, afterId);
+        List<UserDto> users = userDbRepo.getPage(afterId, limit).stream()
+                .map(UserMapper::mapToUserDto)
+                .toList();
+        String nextCursor = users.size() < limit ? null : PageCursor.encode(CURSOR_RESOURCE, users.getLast().getId());
+        return new PageDto<>(users, nextCursor);
+    }
+
+    public void exportAll(Consumer<UserDto> consumer) {
+        log.debug("Отправляем запрос на потоковую выгрузку всех пользователей из хранилища");
+        userDbRepo.exportAll(user -> consumer.accept(UserMapper.mapToUserDto(user)));
+    }
+
+    //Потоковый импорт пользователей: каждая запись проверяется по тем же правилам, что и в create
+    public void bulkCreate(InputStream in, Consumer<BulkResultDto> results) {
+        log.debug("Начинаем потоковый импорт пользователей");
+        bulkImporter.run(in, User.class, user -> {
+                    isNoSpaceInLogin(user);
+                    ifUserNameBlank(user);
+                },
+                users -> userDbRepo.createAll(users).stream().map(User::getId).toList(),
+                user -> userDbRepo.create(user).getId(),
+                results);
+    }
+
     private boolean isNoSpaceInLogin(User user) {
         log.trace("Начинаем проверку на наличие пробелов в логине пользователя");
         String[] words = user.getLogin().split(" ");
@@ -80,10 +130,9 @@ public class UserService {
 
     //Ниже прописана логика по работе с друзьями
 
+    //Существование пользователей проверяет хранилище при записи, без отдельных запросов перед ней
     public Long addToFriends(Long userId, Long friendId) {
         ifUserIdSameAsFriendId(userId, friendId);
-        validationOfUser(userId);
-        validationOfUser(friendId);
         log.trace("Начинаем добавление друзей пользователя в хранилище друзей");
         userDbRepo.addToFriends(userId, friendId);
         return userId;
@@ -91,8 +140,6 @@ public class UserService {
 
     public Long removeFromFriends(Long userId, Long friendId) {
         ifUserIdSameAsFriendId(userId, friendId);
-        validationOfUser(userId);
-        validationOfUser(friendId);
         log.trace("Начинаем удаление друга пользователя в хранилище друзей");
         userDbRepo.removeFromFriends(userId, friendId);
         return userId;
@@ -115,6 +162,66 @@ public class UserService {
                 .toList();
     }
 
+    public List<FriendSuggestionDto> getFriendSuggestions(Long userId, int limit) {
+        validationOfUser(userId);
+        log.trace("Начинаем подбор пользователей, с которыми у пользователя больше всего общих друзей");
+        return userDbRepo.getFriendSuggestions(userId, limit).stream()
+                .map(suggestion -> new FriendSuggestionDto(UserMapper.mapToUserDto(suggestion.getUser()),
+                        suggestion.getMutualFriends()))
+                .toList();
+    }
+
+    public FriendshipPathDto getFriendshipPath(Long userId, Long otherId, int maxDepth) {
+        validationOfUser(userId);
+        validationOfUser(otherId);
+        log.trace("Начинаем поиск кратчайшей цепочки дружбы между пользователями");
+        List<UserDto> users = userDbRepo.getFriendshipPath(userId, otherId, maxDepth).stream()
+                .map(UserMapper::mapToUserDto)
+                .toList();
+        return new FriendshipPathDto(users, users.size() - 1);
+    }
+
+    //Пакетная загрузка дружбы. Существование пользователей проверяется одним запросом на порцию,
+    //повторы внутри порции отбрасываются, уже существующие связи принимаются без записи
+    public EdgeImportResultDto bulkAddFriends(InputStream in) {
+        log.trace("Начинаем пакетную загрузку дружбы");
+        EdgeImportResultDto summary = new EdgeImportResultDto();
+        bulkImporter.runChunks(in, Friendship.class, friendships -> addFriendsChunk(friendships, summary),
+                summary::add);
+        return summary;
+    }
+
+    private List<String> addFriendsChunk(List<Friendship> friendships, EdgeImportResultDto summary) {
+        Set<Long> userIds = new HashSet<>();
+        for (Friendship friendship : friendships) {
+            userIds.add(friendship.getUserId());
+            userIds.add(friendship.getFriendId());
+        }
+        Set<Long> existingUserIds = userDbRepo.findExistingIds(userIds);
+        List<String> errors = new ArrayList<>(friendships.size());
+        Set<FriendshipKey> unique = new HashSet<>();
+        List<Friendship> toWrite = new ArrayList<>();
+        for (Friendship friendship : friendships) {
+            if (friendship.getUserId().equals(friendship.getFriendId())) {
+                errors.add("Пользователь не может быть другом сам себе");
+            } else if (!existingUserIds.contains(friendship.getUserId())) {
+                errors.add("Пользователь с Id: " + friendship.getUserId() + " не найден");
+            } else if (!existingUserIds.contains(friendship.getFriendId())) {
+                errors.add("Пользователь с Id: " + friendship.getFriendId() + " не найден");
+            } else {
+                errors.add(null);
+                if (unique.add(new FriendshipKey(friendship.getUserId(), friendship.getFriendId()))) {
+                    toWrite.add(friendship);
+                }
+            }
+        }
+        summary.setWritten(summary.getWritten() + userDbRepo.addFriends(toWrite));
+        return errors;
+    }
+
+    private record FriendshipKey(long userId, long friendId) {
+    }
+
     private void ifUserIdSameAsFriendId(Long userId, Long friendId) {
         if (userId.equals(friendId)) {
             throw new ValidationException("Пользователь не может быть другом сам себе");
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+//Чтение JSON-объектов из потока по одному: NDJSON (объекты подряд) или JSON-массив объектов.
+//В памяти находится только текущий объект, поэтому размер входа не ограничен.
+//Объект возвращается деревом: ошибка преобразования в модель относится к одной записи и не прерывает чтение,
+//а синтаксическая ошибка JSON прерывает (JsonProcessingException).
+public class JsonRecordReader implements Closeable {
+
+    private final JsonParser parser;
+    private boolean started;
+    private boolean array;
+
+    public JsonRecordReader(ObjectMapper objectMapper, InputStream in) throws IOException {
+        this.parser = objectMapper.createParser(in);
+    }
+
+    //null, если записи закончились
+    public JsonNode next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (!started) {
+            started = true;
+            if (token == JsonToken.START_ARRAY) {
+                array = true;
+                token = parser.nextToken();
+            }
+        }
+        if (token == null || array && token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Ожидался JSON-объект, получено " + token);
+        }
+        return parser.readValueAsTree();
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
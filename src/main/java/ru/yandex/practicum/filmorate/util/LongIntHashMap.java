@@ -0,0 +1,184 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+//Хэш-таблица с открытой адресацией для ключей long и значений int без упаковки в Long/Integer.
+//Ключ 0 хранится отдельно, т.к. 0 в массиве ключей обозначает пустую ячейку.
+public final class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 4) / LOAD_FACTOR));
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZeroKey;
+        }
+        return keys[indexOf(key)] == key;
+    }
+
+    public int get(long key, int defaultValue) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : defaultValue;
+    }
+
+    public void put(long key, int value) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            values[index] = value;
+            return;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    //Прибавляет delta к значению ключа (отсутствующий ключ считается 0) и возвращает новое значение
+    public int addTo(long key, int delta) {
+        if (key == 0) {
+            zeroValue = (hasZeroKey ? zeroValue : 0) + delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            values[index] += delta;
+            return values[index];
+        }
+        keys[index] = key;
+        values[index] = delta;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+
+    //Удаляет ключ и возвращает его значение (defaultValue, если ключа нет). Следующие за ячейкой ключи
+    //сдвигаются назад, чтобы цепочки линейного пробирования не разрывались
+    public int remove(long key, int defaultValue) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return defaultValue;
+            }
+            hasZeroKey = false;
+            return zeroValue;
+        }
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            return defaultValue;
+        }
+        int removed = values[index];
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != 0) {
+            int home = mix(keys[next]) & mask;
+            //Ключ можно перенести в пустую ячейку, если она лежит на пути от его исходной ячейки до текущей
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = 0;
+        size--;
+        return removed;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    //Возвращает ячейку с ключом либо первую пустую ячейку на пути линейного пробирования
+    private int indexOf(long key) {
+        int index = mix(key) & mask;
+        while (keys[index] != 0 && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int index = indexOf(key);
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        void accept(long key, int value);
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int result = Integer.highestOneBit(capacity - 1) << 1;
+        return Math.max(result, 4);
+    }
+}
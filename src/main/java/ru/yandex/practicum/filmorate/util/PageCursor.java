@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.util;
+
+import jakarta.validation.ValidationException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+//Непрозрачный курсор постраничной выдачи: тип ресурса и последний отданный id в Base64url.
+//Тип нужен, чтобы курсор пользователей нельзя было передать в выдачу фильмов.
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class PageCursor {
+
+    public static String encode(String resource, long lastId) {
+        String raw = resource + ":" + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long decode(String resource, String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String prefix = resource + ":";
+            if (raw.startsWith(prefix)) {
+                long lastId = Long.parseLong(raw.substring(prefix.length()));
+                if (lastId >= 0) {
+                    return lastId;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            //обработаем ниже вместе с неверным префиксом
+        }
+        throw new ValidationException("Некорректный курсор страницы: " + cursor);
+    }
+}
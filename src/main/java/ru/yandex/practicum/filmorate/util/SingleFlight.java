@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//Объединение одинаковых одновременных вызовов: пока вызов с ключом выполняется, остальные вызовы с тем же
+//ключом не выполняются, а ждут и получают его результат (или его исключение).
+//version - номер последней завершенной записи, которую должен увидеть вызывающий. К вызову присоединяются,
+//только если он начат не раньше этой записи (его version не меньше), иначе начинается новый вызов.
+//Поэтому результат, прочитанный до завершившейся записи, не достается запросу, пришедшему после нее.
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    public V execute(K key, long version, Supplier<V> call) {
+        Flight<V> own = new Flight<>(version);
+        Flight<V> flight = flights.compute(key,
+                (k, current) -> current != null && current.version >= version ? current : own);
+        if (flight != own) {
+            collapsed.increment();
+            return flight.await();
+        }
+        calls.increment();
+        try {
+            V result = call.get();
+            own.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            //Более новый вызов с тем же ключом мог уже занять место, его не трогаем
+            flights.remove(key, own);
+        }
+    }
+
+    //Сколько вызовов выполнено
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    //Сколько вызовов не выполнялось, а получили результат уже идущего вызова
+    public long getCollapsed() {
+        return collapsed.sum();
+    }
+
+    private static final class Flight<V> {
+
+        private final long version;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+
+        private Flight(long version) {
+            this.version = version;
+        }
+
+        private V await() {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ожидание результата прервано", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw (Error) e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+//Операции над отсортированными массивами id без повторов, которые хранятся в индексах в памяти.
+//Переданный массив не изменяется: при изменении возвращается копия, без изменения - тот же массив.
+public final class SortedLongArrays {
+
+    public static final long[] EMPTY = new long[0];
+
+    private SortedLongArrays() {
+    }
+
+    public static long[] insert(long[] sorted, long id) {
+        int index = Arrays.binarySearch(sorted, id);
+        if (index >= 0) {
+            return sorted;
+        }
+        int insertAt = -index - 1;
+        long[] changed = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, changed, 0, insertAt);
+        changed[insertAt] = id;
+        System.arraycopy(sorted, insertAt, changed, insertAt + 1, sorted.length - insertAt);
+        return changed;
+    }
+
+    public static long[] remove(long[] sorted, long id) {
+        int index = Arrays.binarySearch(sorted, id);
+        if (index < 0) {
+            return sorted;
+        }
+        if (sorted.length == 1) {
+            return EMPTY;
+        }
+        long[] changed = new long[sorted.length - 1];
+        System.arraycopy(sorted, 0, changed, 0, index);
+        System.arraycopy(sorted, index + 1, changed, index, sorted.length - index - 1);
+        return changed;
+    }
+
+    //Не больше max элементов равномерной выборкой с шагом; при max <= 0 или коротком массиве - сам массив
+    public static long[] sample(long[] ids, int max) {
+        int step = step(ids.length, max);
+        if (step == 1) {
+            return ids;
+        }
+        long[] sampled = new long[(ids.length + step - 1) / step];
+        for (int i = 0; i < sampled.length; i++) {
+            sampled[i] = ids[i * step];
+        }
+        return sampled;
+    }
+
+    //Шаг выборки, при котором из size элементов берется не больше max
+    public static int step(int size, int max) {
+        return max <= 0 || size <= max ? 1 : (size + max - 1) / max;
+    }
+}
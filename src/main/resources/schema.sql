@@ -27,16 +27,30 @@ CREATE TABLE IF NOT EXISTS filmStorage(
     description varchar(200) NOT NULL,
     releaseDate TIMESTAMP NOT NULL,
     duration BIGINT NOT NULL,
-    rating_mpa_ID INTEGER REFERENCES ratingOfFilmByMpa(rating_mpa_ID)
+    rating_mpa_ID INTEGER REFERENCES ratingOfFilmByMpa(rating_mpa_ID),
+    likes_count BIGINT DEFAULT 0 NOT NULL
 );
 
+--счетчик лайков для баз, созданных до его появления (значения пересчитывает LikesCountReconciliationJob)
+ALTER TABLE filmStorage ADD COLUMN IF NOT EXISTS likes_count BIGINT DEFAULT 0 NOT NULL;
+
+--индекс для выборки популярных фильмов без пересчета likeStorage
+CREATE INDEX IF NOT EXISTS idx_filmStorage_likes_count ON filmStorage(likes_count DESC, film_ID);
+
 --создание таблицы хранения лайков
 CREATE TABLE IF NOT EXISTS likeStorage(
     film_ID BIGINT NOT NULL REFERENCES filmStorage(film_ID) ON DELETE CASCADE,
     user_ID BIGINT NOT NULL REFERENCES userStorage(user_id) ON DELETE CASCADE,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL,
     PRIMARY KEY (film_ID, user_ID)
 );
 
+--время лайка для баз, созданных до его появления (старым лайкам достается время обновления схемы)
+ALTER TABLE likeStorage ADD COLUMN IF NOT EXISTS created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL;
+
+--индекс для загрузки лайков последних 7 дней в рейтинг трендов
+CREATE INDEX IF NOT EXISTS idx_likeStorage_created_at ON likeStorage(created_at);
+
 --создание таблицы жанров
 CREATE TABLE IF NOT EXISTS genres(
     genre_ID INTEGER NOT NULL PRIMARY KEY,
@@ -50,10 +64,6 @@ CREATE TABLE IF NOT EXISTS filmGenres(
     PRIMARY KEY (film_ID, genre_ID)
 );
 
-
-
-
-
-
-
-
+--индексы для выборок фильмов по жанру, рейтингу MPA и году выпуска
+CREATE INDEX IF NOT EXISTS idx_filmGenres_genre ON filmGenres(genre_ID, film_ID);
+CREATE INDEX IF NOT EXISTS idx_filmStorage_mpa_release ON filmStorage(rating_mpa_ID, releaseDate);
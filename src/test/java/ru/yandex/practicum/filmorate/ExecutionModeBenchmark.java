@@ -0,0 +1,236 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import ru.yandex.practicum.filmorate.dal.ConnectionLimiter;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dal.user.UserStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.VirtualThreadPinningMonitor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Нагрузочное сравнение режимов выполнения: приложение запускается дважды (платформенные потоки Tomcat
+//и spring.threads.virtual.enabled=true), clients клиентов (по умолчанию 1000, -Dbenchmark.clients) отправляют
+//по REQUESTS запросов вперемешку: рейтинг популярных фильмов (из памяти), друзья пользователя (два запроса к базе)
+//и лайк (запись). Медленная база имитируется задержкой каждого запроса при занятом соединении
+//(по умолчанию 2 мс, -Dbenchmark.db-latency-ms).
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=ExecutionModeBenchmark
+@Slf4j
+class ExecutionModeBenchmark {
+
+    private static final int REQUESTS = 20;
+    private static final int USERS = 1000;
+    private static final int FILMS = 200;
+    private static final String[] KINDS = {"рейтинг", "друзья", "лайк"};
+
+    private static long dbLatencyMillis;
+
+    @Test
+    void platformVersusVirtualThreads() throws Exception {
+        int clients = Integer.getInteger("benchmark.clients", 1000);
+        dbLatencyMillis = Long.getLong("benchmark.db-latency-ms", 2);
+        for (boolean virtual : new boolean[]{false, true}) {
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class,
+                    SlowDatabaseConfig.class)
+                    .properties("server.port=0",
+                            "spring.threads.virtual.enabled=" + virtual,
+                            "spring.datasource.url=jdbc:h2:mem:execution-mode-" + virtual,
+                            "logging.level.ru.yandex.practicum.filmorate=info",
+                            "logging.level.org.zalando.logbook.Logbook=info")
+                    .run()) {
+                run(context, virtual ? "виртуальные потоки" : "платформенные потоки", clients);
+            }
+        }
+    }
+
+    private void run(ConfigurableApplicationContext context, String mode, int clients) throws Exception {
+        UserStorage userStorage = context.getBean(UserStorage.class);
+        FilmStorage filmStorage = context.getBean(FilmStorage.class);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("user" + i)
+                    .name("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build());
+        }
+        List<Long> userIds = userStorage.createAll(users).stream().map(User::getId).toList();
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < FILMS; i++) {
+            films.add(Film.builder()
+                    .name("film" + i)
+                    .description("description")
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(100L)
+                    .mpa(new Mpa(1, null))
+                    .build());
+        }
+        List<Long> filmIds = filmStorage.createAll(films).stream().map(Film::getId).toList();
+        List<Friendship> friendships = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            for (int j = 1; j <= 10; j++) {
+                friendships.add(new Friendship(userIds.get(i), userIds.get((i + j) % USERS)));
+            }
+        }
+        userStorage.addFriends(friendships);
+
+        String base = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+        AtomicLong unavailable = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient http = HttpClient.newBuilder().executor(pool).build();
+        List<Callable<long[][]>> tasks = new ArrayList<>();
+        for (int client = 0; client < clients; client++) {
+            long userId = userIds.get(client % USERS);
+            int clientIndex = client;
+            tasks.add(() -> {
+                long[][] latencies = new long[KINDS.length][REQUESTS];
+                for (int i = 0; i < REQUESTS; i++) {
+                    int kind = i % KINDS.length;
+                    HttpRequest.Builder request = switch (kind) {
+                        case 0 -> HttpRequest.newBuilder(URI.create(base + "/films/popular?count=10")).GET();
+                        case 1 -> HttpRequest.newBuilder(URI.create(base + "/users/" + userId + "/friends")).GET();
+                        default -> HttpRequest.newBuilder(URI.create(base + "/films/"
+                                        + filmIds.get((clientIndex / USERS * REQUESTS + i) % FILMS) + "/like/" + userId))
+                                .PUT(HttpRequest.BodyPublishers.noBody());
+                    };
+                    long start = System.nanoTime();
+                    HttpResponse<String> response = http.send(request.timeout(Duration.ofMinutes(2)).build(),
+                            HttpResponse.BodyHandlers.ofString());
+                    latencies[kind][i] = System.nanoTime() - start;
+                    if (response.statusCode() == 503) {
+                        unavailable.incrementAndGet();
+                    } else if (response.statusCode() != 200) {
+                        failed.incrementAndGet();
+                    }
+                }
+                return latencies;
+            });
+        }
+        long start = System.nanoTime();
+        List<Future<long[][]>> results = pool.invokeAll(tasks);
+        long elapsed = System.nanoTime() - start;
+        List<List<Long>> byKind = new ArrayList<>();
+        List<Long> all = new ArrayList<>();
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            byKind.add(new ArrayList<>());
+        }
+        for (Future<long[][]> result : results) {
+            long[][] latencies = result.get();
+            for (int kind = 0; kind < KINDS.length; kind++) {
+                for (long latency : latencies[kind]) {
+                    if (latency > 0) {
+                        byKind.get(kind).add(latency);
+                        all.add(latency);
+                    }
+                }
+            }
+        }
+        pool.shutdown();
+        log.info("{}: {} запросов за {} мс, {} запросов/с, все {}, 503: {}, прочие ошибки: {}", mode, all.size(),
+                elapsed / 1_000_000, all.size() * 1_000_000_000L / elapsed, percentiles(all), unavailable.get(),
+                failed.get());
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            log.info("{}: {} {}", mode, KINDS[kind], percentiles(byKind.get(kind)));
+        }
+        log.info("{}: соединения {}, закрепления {}", mode, context.getBean(ConnectionLimiter.class).getStats(),
+                context.getBean(VirtualThreadPinningMonitor.class).getStats());
+    }
+
+    private static String percentiles(List<Long> latencies) {
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return "p50 " + sorted[sorted.length / 2] / 1_000_000 + " мс, p99 " + sorted[sorted.length * 99 / 100] / 1_000_000
+                + " мс";
+    }
+
+    //Каждое выполнение запроса задерживается на dbLatencyMillis при занятом соединении, как при медленном диске
+    //или сетевой базе
+    @Configuration
+    static class SlowDatabaseConfig {
+
+        @Bean
+        static BeanPostProcessor slowDatabase() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource) || bean instanceof SlowDataSource) {
+                        return bean;
+                    }
+                    return new SlowDataSource(dataSource);
+                }
+            };
+        }
+    }
+
+    private static class SlowDataSource extends DelegatingDataSource {
+
+        SlowDataSource(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return slow(Connection.class, super.getConnection());
+        }
+
+        private static <T> T slow(Class<T> type, T target) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")) {
+                            Thread.sleep(dbLatencyMillis);
+                        }
+                        Object result = invoke(method, target, args);
+                        if (type == Connection.class && (method.getName().startsWith("prepare")
+                                || method.getName().equals("createStatement"))) {
+                            return slowStatement(method, result);
+                        }
+                        return result;
+                    }));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <S> S slowStatement(Method method, Object statement) {
+            return slow((Class<S>) method.getReturnType(), (S) statement);
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,15 +1,18 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.util.ResourceUtils;
@@ -18,6 +21,9 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 //@Deprecated
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 @Slf4j
@@ -33,6 +39,9 @@ class FilmControllerTest {
     @Autowired
     FilmController filmController;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @BeforeEach
     void setUp() throws Exception {
         log.trace("Создание 2х фильмов до теста");
@@ -62,6 +71,16 @@ class FilmControllerTest {
                 ));
     }
 
+    @Test
+    void createWithUnknownReferences() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post(PATH)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getContentFromFile("controller.film.create/request/film-with-unknown-references.json")))
+                .andExpect(MockMvcResultMatchers.status().isNotFound())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.error").value(
+                        "Жанры с ID [77, 99] не найдены; Рейтинги MPA с ID [42] не найдены"));
+    }
+
     @Test
     void update() throws Exception {
         mockMvc.perform(MockMvcRequestBuilders.put(PATH)
@@ -83,6 +102,83 @@ class FilmControllerTest {
                 ));
     }
 
+    @Test
+    void exportAll() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(PATH + "/export"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length, "Кол-во выгруженных фильмов не совпадает");
+        JSONAssert.assertEquals("{\"name\":\"name1\",\"mpa\":{\"id\":1,\"name\":\"G\"}," +
+                "\"genres\":[{\"id\":1,\"name\":\"Комедия\"},{\"id\":2,\"name\":\"Драма\"}]}", lines[0], false);
+        JSONAssert.assertEquals("{\"name\":\"name2\"}", lines[1], false);
+    }
+
+    @Test
+    void bulkCreate() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post(PATH + "/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(getContentFromFile("controller.film.create/request/films-bulk.ndjson")))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        String[] lines = body.split("\n");
+        assertEquals(6, lines.length, "Результат нужен по каждой записи");
+        JSONAssert.assertEquals("{\"index\":1,\"id\":null," +
+                "\"error\":\"Дата Фильма не может быть меньше 28.12.1895\"}", lines[0], true);
+        JSONAssert.assertEquals("{\"index\":2,\"id\":null,\"error\":\"Жанры с ID [99] не найдены\"}", lines[1], true);
+        JSONAssert.assertEquals("{\"index\":3,\"id\":null}", lines[2], false);
+        JSONAssert.assertEquals("{\"index\":4,\"id\":null}", lines[3], false);
+        JSONAssert.assertEquals("{\"index\":0,\"error\":null}", lines[4], false);
+        JSONAssert.assertEquals("{\"index\":5,\"error\":null}", lines[5], false);
+
+        long id = objectMapper.readTree(lines[4]).get("id").asLong();
+        assertEquals(id + 1, objectMapper.readTree(lines[5]).get("id").asLong(), "Id выданы не по порядку записей");
+        mockMvc.perform(MockMvcRequestBuilders.get(PATH + "/" + id))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().json("{\"name\":\"bulk1\"," +
+                        "\"genres\":[{\"id\":1,\"name\":\"Комедия\"},{\"id\":2,\"name\":\"Драма\"}]}"));
+    }
+
+    @Test
+    void streamPopularFilms() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get(PATH + "/popular/stream?count=1"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        String body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(body.startsWith("id:0\nevent:snapshot\ndata:{\"size\":1,\"changed\":[{\"rank\":1,"),
+                "Подписчик должен сразу получить текущий рейтинг: " + body);
+
+        long userId = objectMapper.readTree(mockMvc.perform(MockMvcRequestBuilders.post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"login\":\"streamer\",\"email\":\"streamer@mail.com\"," +
+                                "\"birthday\":\"1997-08-20\"}"))
+                .andReturn().getResponse().getContentAsString()).get("id").asLong();
+        long filmId = filmController.getFilmService().getAll().stream()
+                .filter(film -> film.getName().equals("name2"))
+                .findFirst().orElseThrow().getId();
+        mockMvc.perform(MockMvcRequestBuilders.put(PATH + "/" + filmId + "/like/" + userId))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+
+        //Изменение приходит на ближайшем такте рассылки
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!body.contains("event:diff") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            body = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        }
+        String diff = body.substring(body.indexOf("event:diff"));
+        JSONAssert.assertEquals("{\"size\":1,\"changed\":[{\"rank\":1,\"film\":{\"id\":" + filmId +
+                ",\"name\":\"name2\",\"likesCount\":1}}]}", diff.substring(diff.indexOf('{')).trim(), false);
+    }
+
     private String getContentFromFile(String filename) {
         try {
             return Files.readString(ResourceUtils.getFile("classpath:" + filename).toPath(), StandardCharsets.UTF_8);
@@ -2,12 +2,14 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.*;
+import org.skyscreamer.jsonassert.JSONAssert;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.util.ResourceUtils;
@@ -16,6 +18,8 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 @Slf4j
 @AutoConfigureMockMvc
@@ -80,6 +84,72 @@ class UserControllerTest {
                 ));
     }
 
+    @Test
+    void getAllByPages() throws Exception {
+        String cursor = mockMvc.perform(MockMvcRequestBuilders.get(PATH)
+                        .param("limit", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].login").value("dolore"))
+                .andReturn().getResponse().getHeader("X-Next-Cursor");
+
+        mockMvc.perform(MockMvcRequestBuilders.get(PATH)
+                        .param("limit", "5")
+                        .param("after", cursor))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("X-Next-Cursor"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get(PATH)
+                        .param("after", "not-a-cursor"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    void bulkCreate() throws Exception {
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post(PATH + "/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(getContentFromFile("controller.user.create/request/users-bulk.json")))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        //Занятый email ломает вставку порции целиком, после чего записи порции вставляются по одной
+        String[] lines = body.split("\n");
+        assertEquals(4, lines.length, "Результат нужен по каждой записи");
+        JSONAssert.assertEquals("{\"index\":1,\"id\":null,\"error\":\"Логин не может содержать пробелы\"}",
+                lines[0], true);
+        JSONAssert.assertEquals("{\"index\":0,\"error\":null}", lines[1], false);
+        JSONAssert.assertEquals("{\"index\":2,\"id\":null,\"error\":\"Email или логин уже заняты\"}",
+                lines[2], true);
+        JSONAssert.assertEquals("{\"index\":3,\"error\":null}", lines[3], false);
+
+        mockMvc.perform(MockMvcRequestBuilders.get(PATH))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(4))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[3].name").value("bulk4"));
+    }
+
+    @Test
+    void bulkAddFriends() throws Exception {
+        //Ошибки проверки записи приходят сразу, ошибки связей - после проверки порции
+        mockMvc.perform(MockMvcRequestBuilders.post(PATH + "/friends/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(getContentFromFile("controller.user.create/request/friends-bulk.ndjson")))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.received").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.accepted").value(0))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.written").value(0))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rejected").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors[0].index").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors[1].error")
+                        .value("Пользователь не может быть другом сам себе"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors[2].error")
+                        .value("Пользователь с Id: 999999 не найден"));
+    }
+
     @Test
     void createUserWithWrongLoginTest() throws Exception {
         mockMvc.perform(MockMvcRequestBuilders.post(PATH)
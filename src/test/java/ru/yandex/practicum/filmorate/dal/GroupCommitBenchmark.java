@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dal.user.UserStorage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//Бенчмарк групповой фиксации: clients потоков (по умолчанию 500, -Dbenchmark.clients) одновременно ставят лайки
+//и добавляют друзей, каждый по OPERATIONS записей. Исходный путь - своя транзакция на каждую запись
+//(так же пишется запись внутри уже открытой транзакции), групповой - обычный вызов репозитория.
+//База по умолчанию в памяти; файловая, как в приложении: -Dspring.datasource.url=jdbc:h2:file:/tmp/bench/db
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=GroupCommitBenchmark
+@DirtiesContext
+@Slf4j
+@SpringBootTest
+class GroupCommitBenchmark {
+
+    private static final int OPERATIONS = 40;
+
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @Autowired
+    private UserStorage userStorage;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void concurrentLikesAndFriends() throws Exception {
+        int clients = Integer.getInteger("benchmark.clients", 500);
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            userIds.add(userStorage.create(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("user" + i)
+                    .name("user" + i)
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .build()).getId());
+        }
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS * 4; i++) {
+            filmIds.add(filmStorage.create(Film.builder()
+                    .name("film" + i)
+                    .description("description")
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(100L)
+                    .mpa(new Mpa(1, null))
+                    .build()).getId());
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            //Каждый проход ставит лайки своей четверти фильмов, поэтому все записи новые
+            for (int round = 0; round < 2; round++) {
+                log.info("Проход {}", round + 1);
+                int offset = round * 2 * OPERATIONS;
+                measure(pool, "лайки, транзакция на запись", clients, (client, op) ->
+                        transactionTemplate.executeWithoutResult(status -> filmStorage.addLikeToFilm(
+                                filmIds.get(offset + op), userIds.get(client))));
+                measure(pool, "лайки, групповая фиксация", clients, (client, op) ->
+                        filmStorage.addLikeToFilm(filmIds.get(offset + OPERATIONS + op), userIds.get(client)));
+            }
+            //Друзья: клиент добавляет OPERATIONS следующих за собой пользователей, затем еще столько же
+            measure(pool, "друзья, транзакция на запись", clients, (client, op) ->
+                    transactionTemplate.executeWithoutResult(status -> userStorage.addToFriends(
+                            userIds.get(client), userIds.get((client + op + 1) % clients))));
+            measure(pool, "друзья, групповая фиксация", clients, (client, op) ->
+                    userStorage.addToFriends(userIds.get(client),
+                            userIds.get((client + OPERATIONS + op + 1) % clients)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void measure(ExecutorService pool, String name, int clients, Operation operation) throws Exception {
+        List<Callable<long[]>> tasks = new ArrayList<>();
+        for (int client = 0; client < clients; client++) {
+            int clientIndex = client;
+            tasks.add(() -> {
+                long[] latencies = new long[OPERATIONS];
+                for (int op = 0; op < OPERATIONS; op++) {
+                    long start = System.nanoTime();
+                    operation.run(clientIndex, op);
+                    latencies[op] = System.nanoTime() - start;
+                }
+                return latencies;
+            });
+        }
+        long start = System.nanoTime();
+        List<Future<long[]>> results = pool.invokeAll(tasks);
+        long elapsed = System.nanoTime() - start;
+        long[] latencies = new long[clients * OPERATIONS];
+        int i = 0;
+        for (Future<long[]> result : results) {
+            for (long latency : result.get()) {
+                latencies[i++] = latency;
+            }
+        }
+        Arrays.sort(latencies);
+        log.info("{}: {} записей за {} мс, {} записей/с, задержка p50 {} мкс, p99 {} мкс", name, latencies.length,
+                elapsed / 1_000_000, latencies.length * 1_000_000_000L / elapsed,
+                latencies[latencies.length / 2] / 1_000, latencies[latencies.length * 99 / 100] / 1_000);
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run(int client, int op);
+    }
+}
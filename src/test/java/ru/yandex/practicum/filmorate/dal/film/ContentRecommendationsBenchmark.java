@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dal.film.PopularityIndex.FilmFacets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Бенчмарк рекомендаций по содержанию: каталог из films фильмов (по умолчанию 1M, -Dbenchmark.films) со случайными
+//жанрами (до 3 из 6) и MPA (1 из 5), вкус - по 3 лайкнутым фильмам. Меряется полный проход по каталогу
+//(счет и выбор 10 лучших) на Vector API и скалярно.
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=ContentRecommendationsBenchmark
+@Slf4j
+class ContentRecommendationsBenchmark {
+
+    private static final int RUNS = 50;
+
+    @Test
+    void fullCatalogScoring() {
+        int films = Integer.getInteger("benchmark.films", 1_000_000);
+        FilmFeatureIndex vector = new FilmFeatureIndex(7, 6, FilmFeatureIndex.createScorer(true));
+        FilmFeatureIndex scalar = new FilmFeatureIndex(7, 6, new ScalarFeatureScorer());
+        Random random = new Random(42);
+        FilmFeatureIndex.Loader vectorLoader = vector.loader();
+        FilmFeatureIndex.Loader scalarLoader = scalar.loader();
+        for (long filmId = 1; filmId <= films; filmId++) {
+            FilmFacets facets = new FilmFacets(1 + random.nextInt(5), 2000,
+                    random.ints(1 + random.nextInt(3), 1, 7).distinct().toArray());
+            vectorLoader.put(filmId, facets);
+            scalarLoader.put(filmId, facets);
+        }
+        vectorLoader.publish();
+        scalarLoader.publish();
+        List<FilmFacets> liked = List.of(new FilmFacets(1, 2000, new int[]{1, 2}),
+                new FilmFacets(3, 2000, new int[]{2}), new FilmFacets(1, 2000, new int[]{4, 5, 6}));
+        long[] excluded = {1, 2, 3};
+
+        measure(vector.getScorerName(), () -> vector.recommend(liked, excluded, 10));
+        measure(scalar.getScorerName(), () -> scalar.recommend(liked, excluded, 10));
+        assertEquals(scalar.recommend(liked, excluded, 10), vector.recommend(liked, excluded, 10));
+    }
+
+    private static void measure(String name, Runnable recommend) {
+        for (int i = 0; i < RUNS; i++) {
+            recommend.run();
+        }
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            recommend.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        log.info("{}: p50 {} мс, p99 {} мс", name, nanos[RUNS / 2] / 1_000_000.0, nanos[RUNS * 99 / 100] / 1_000_000.0);
+    }
+}
@@ -8,20 +8,36 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
-import ru.yandex.practicum.filmorate.dal.film.mapper.FilmGenreRowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dal.GroupCommitterFactory;
 import ru.yandex.practicum.filmorate.dal.film.mapper.FilmRowMapper;
 import ru.yandex.practicum.filmorate.dal.film.mapper.GenreRowMapper;
 import ru.yandex.practicum.filmorate.dal.film.mapper.MpaRowMapper;
+import ru.yandex.practicum.filmorate.dal.user.FriendSuggestions;
+import ru.yandex.practicum.filmorate.dal.user.FriendshipGraph;
+import ru.yandex.practicum.filmorate.dal.user.FriendshipPaths;
 import ru.yandex.practicum.filmorate.dal.user.UserDbRepository;
 import ru.yandex.practicum.filmorate.dal.user.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.LikesCountDrift;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -30,10 +46,20 @@ import static org.junit.jupiter.api.Assertions.*;
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({FilmDbRepository.class, FilmRowMapper.class, GenreRowMapper.class, MpaRowMapper.class, FilmGenreRowMapper.class, UserDbRepository.class, UserRowMapper.class})
+@Import({FilmDbRepository.class, FilmRowMapper.class, GenreRowMapper.class, MpaRowMapper.class, PopularityIndex.class,
+        TrendingIndex.class, FilmCache.class, LikeMatrix.class, FilmSimilarityIndex.class, FilmFeatureIndex.class,
+        ReferenceDataRegistry.class, GenreDbRepository.class, MpaDbRepository.class,
+        UserDbRepository.class, UserRowMapper.class, FriendshipGraph.class, FriendSuggestions.class, FriendshipPaths.class,
+        GroupCommitterFactory.class})
 class FilmDbRepositoryTest {
     private final FilmDbRepository filmDbRepository;
     private final UserDbRepository userDbRepository;
+    private final JdbcTemplate jdbc;
+    private final FilmCache filmCache;
+    private final FilmSimilarityIndex similarityIndex;
+    private final LikeMatrix likeMatrix;
+    private final TrendingIndex trendingIndex;
+    private final PlatformTransactionManager transactionManager;
 
     @AfterEach
     void clear() {
@@ -58,6 +84,31 @@ class FilmDbRepositoryTest {
         assertEquals(film, film1, "Фильмы не совпадают");
     }
 
+    @Test
+    public void createAllFilmsTest() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            films.add(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2000 + i, 1, 1))
+                    .duration(100L + i)
+                    .mpa(new Mpa(i, null))
+                    .genres(i == 2 ? List.of() : List.of(new Genres(i, null), new Genres(i + 1, null)))
+                    .build());
+        }
+        List<Film> created = filmDbRepository.createAll(films);
+
+        assertEquals(List.of(1L, 2L, 3L), created.stream().map(Film::getId).toList(), "Id выданы не по порядку");
+        for (int i = 1; i <= 3; i++) {
+            Film film = filmDbRepository.getFilmById((long) i);
+            assertEquals("Film" + i, film.getName());
+            assertEquals(i, film.getMpa().getId());
+            assertEquals(i == 2 ? 0 : 2, film.getGenres().size(), "Жанры фильма " + i + " не сохранены");
+        }
+        assertEquals(List.of("Film3"), popularFilmNames(10, 4, null, null), "Фильмы не попали в рейтинг");
+    }
+
     @Test
     public void updateFilmTest() {
         Film film = Film.builder()
@@ -75,6 +126,32 @@ class FilmDbRepositoryTest {
         assertEquals(film, film1, "Фильмы не совпадают");
     }
 
+    @Test
+    public void updateFilmGenresTest() {
+        Film film = Film.builder()
+                .name("Film1")
+                .description("Description1")
+                .releaseDate(LocalDate.of(2021, 8, 15))
+                .duration(150L)
+                .mpa(new Mpa(1, "G"))
+                .genres(List.of(new Genres(1, "Комедия"), new Genres(2, "Драма")))
+                .build();
+        filmDbRepository.create(film);
+
+        film.setGenres(List.of(new Genres(2, "Драма"), new Genres(3, "Мультфильм"), new Genres(3, "Мультфильм")));
+        filmDbRepository.update(film);
+        assertEquals(List.of(new Genres(2, "Драма"), new Genres(3, "Мультфильм")),
+                filmDbRepository.getFilmById(film.getId()).getGenres(), "Жанры не обновлены");
+        assertEquals(List.of("Film1"), popularFilmNames(10, 3, null, null), "Фильм не найден по новому жанру");
+        assertTrue(popularFilmNames(10, 1, null, null).isEmpty(), "Фильм остался в срезе удаленного жанра");
+
+        film.setGenres(List.of());
+        filmDbRepository.update(film);
+        assertTrue(filmDbRepository.getFilmById(film.getId()).getGenres().isEmpty(), "Жанры не удалены");
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM filmGenres", Integer.class),
+                "В filmGenres остались связи фильма");
+    }
+
     @Test
     public void deleteFilmTest() {
         Film film = Film.builder()
@@ -121,6 +198,47 @@ class FilmDbRepositoryTest {
 
         Integer qty = filmDbRepository.countLikesInLikeStorage(1L);
         assertEquals(2, qty, "Кол-во лайков не совпадает");
+        assertEquals(2, filmDbRepository.getFilmById(1L).getLikesCount(), "Счетчик лайков не совпадает");
+        assertThrows(DuplicatedDataException.class, () -> filmDbRepository.addLikeToFilm(1L, 1L),
+                "Повторный лайк должен быть отклонен");
+        assertEquals(2, filmDbRepository.getFilmById(1L).getLikesCount(), "Повторный лайк изменил счетчик");
+    }
+
+    @Test
+    public void addLikesTest() {
+        for (int i = 1; i <= 3; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+        }
+        for (int i = 1; i <= 2; i++) {
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, 15))
+                    .duration(120L)
+                    .mpa(new Mpa(1, "G"))
+                    .build());
+        }
+        filmDbRepository.addLikeToFilm(1L, 1L);
+
+        assertEquals(Set.of(2L), filmDbRepository.findExistingIds(List.of(2L, 42L)), "Найдены не те фильмы");
+        //Лайк 1-1 уже есть, лайк 2-1 - исторический и в тренды не попадает
+        int added = filmDbRepository.addLikes(List.of(new FilmLike(1L, 1L, null), new FilmLike(2L, 1L, null),
+                new FilmLike(2L, 2L, null), new FilmLike(2L, 3L, null),
+                new FilmLike(1L, 2L, Instant.parse("2001-01-01T00:00:00Z"))));
+
+        assertEquals(4, added, "Существующий лайк записан повторно");
+        assertEquals(2, filmDbRepository.getFilmById(1L).getLikesCount(), "Счетчик лайков не совпадает");
+        assertEquals(3, filmDbRepository.getFilmById(2L).getLikesCount(), "Счетчик лайков не совпадает");
+        assertEquals(List.of("Film2", "Film1"), popularFilmNames(10, null, null, null),
+                "Рейтинг популярности не обновлен");
+        assertEquals(List.of(2L, 1L), filmDbRepository.getTrendingFilms(TrendingWindow.ONE_DAY, 10).stream()
+                .map(Film::getId).toList(), "Тренды не обновлены");
+        assertTrue(filmDbRepository.reconcileLikesCount().isEmpty(), "Счетчики разошлись с likeStorage");
     }
 
     @Test
@@ -151,10 +269,483 @@ class FilmDbRepositoryTest {
         Long userId = filmDbRepository.addLikeToFilm(1L, 1L);
         Long userId2 = filmDbRepository.addLikeToFilm(1L, 2L);
         filmDbRepository.removeLikeFromFilm(1L, 1L);
+        filmDbRepository.removeLikeFromFilm(1L, 1L);
 
         Integer qty = filmDbRepository.countLikesInLikeStorage(1L);
         assertEquals(1, qty, "Кол-во лайков не совпадает");
+        assertEquals(1, filmDbRepository.getFilmById(1L).getLikesCount(), "Счетчик лайков не совпадает");
+    }
+
+    @Test
+    public void getAllFilmsTest() {
+        Film film = Film.builder()
+                .name("Film1")
+                .description("Description1")
+                .releaseDate(LocalDate.of(2021, 8, 15))
+                .duration(150L)
+                .mpa(new Mpa(3, null))
+                .genres(List.of(new Genres(2, null), new Genres(1, null)))
+                .build();
+        Film film2 = Film.builder()
+                .name("Film2")
+                .description("Description2")
+                .releaseDate(LocalDate.of(2022, 8, 15))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .genres(List.of())
+                .build();
+        filmDbRepository.create(film);
+        filmDbRepository.create(film2);
+
+        List<Film> films = filmDbRepository.getAll();
+        assertEquals(2, films.size(), "Кол-во фильмов не совпадает");
+        Film first = films.stream().filter(item -> item.getId().equals(film.getId())).findFirst().orElseThrow();
+        assertEquals(new Mpa(3, "PG-13"), first.getMpa(), "MPA фильма не заполнен");
+        assertEquals(List.of(new Genres(1, "Комедия"), new Genres(2, "Драма")), first.getGenres(),
+                "Жанры фильма не совпадают");
+        Film second = films.stream().filter(item -> item.getId().equals(film2.getId())).findFirst().orElseThrow();
+        assertEquals(new Mpa(1, "G"), second.getMpa(), "MPA фильма не заполнен");
+        assertTrue(second.getGenres().isEmpty(), "У фильма не должно быть жанров");
+    }
+
+    @Test
+    public void getPageTest() {
+        for (int i = 1; i <= 3; i++) {
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(2, null))
+                    .genres(List.of(new Genres(i, null)))
+                    .build());
+        }
+        List<Film> firstPage = filmDbRepository.getPage(0, 2);
+        assertEquals(List.of("Film1", "Film2"), firstPage.stream().map(Film::getName).toList(),
+                "Первая страница не совпадает");
+        assertEquals(new Mpa(2, "PG"), firstPage.get(0).getMpa(), "MPA фильма не заполнен");
+        assertEquals(List.of(new Genres(2, "Драма")), firstPage.get(1).getGenres(), "Жанры фильма не совпадают");
+
+        List<Film> secondPage = filmDbRepository.getPage(firstPage.get(1).getId(), 2);
+        assertEquals(List.of("Film3"), secondPage.stream().map(Film::getName).toList(),
+                "Вторая страница не совпадает");
+        assertEquals(List.of(new Genres(3, "Мультфильм")), secondPage.get(0).getGenres(),
+                "Жанры фильма не совпадают");
+        assertTrue(filmDbRepository.getPage(secondPage.get(0).getId(), 2).isEmpty(), "Страница должна быть пустой");
+    }
+
+    @Test
+    public void exportAllTest() {
+        for (int i = 1; i <= 3; i++) {
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(i, null))
+                    .genres(i == 2 ? List.of() : List.of(new Genres(i, null), new Genres(6, null)))
+                    .build());
+        }
+        List<Film> exported = new ArrayList<>();
+        filmDbRepository.exportAll(exported::add);
+
+        assertEquals(List.of("Film1", "Film2", "Film3"), exported.stream().map(Film::getName).toList(),
+                "Выгруженные фильмы не совпадают");
+        assertEquals(List.of(new Genres(1, "Комедия"), new Genres(6, "Боевик")), exported.get(0).getGenres(),
+                "Жанры фильма не совпадают");
+        assertTrue(exported.get(1).getGenres().isEmpty(), "У фильма не должно быть жанров");
+        assertEquals(List.of(new Genres(3, "Мультфильм"), new Genres(6, "Боевик")), exported.get(2).getGenres(),
+                "Жанры фильма не совпадают");
+        assertEquals(new Mpa(3, "PG-13"), exported.get(2).getMpa(), "MPA фильма не заполнен");
     }
 
+    @Test
+    public void getListOfPopularFilmsTest() {
+        for (int i = 1; i <= 3; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(i, null))
+                    .genres(List.of(new Genres(i, null)))
+                    .build());
+        }
+        filmDbRepository.addLikeToFilm(2L, 1L);
+        filmDbRepository.addLikeToFilm(2L, 2L);
+        filmDbRepository.addLikeToFilm(3L, 1L);
+
+        List<Film> popular = filmDbRepository.getListOfPopularFilms(3, null, null, null);
+        assertEquals(List.of("Film2", "Film3", "Film1"), popular.stream().map(Film::getName).toList(),
+                "Порядок популярных фильмов не совпадает");
+        assertEquals(new Mpa(2, "PG"), popular.get(0).getMpa(), "MPA фильма не заполнен");
+        assertEquals(List.of(new Genres(2, "Драма")), popular.get(0).getGenres(), "Жанры фильма не заполнены");
+        assertEquals(List.of("Film2"), popularFilmNames(1, null, null, null),
+                "Самый популярный фильм не совпадает");
+        assertEquals(List.of(2L, 1L, 0L), popular.stream().map(Film::getLikesCount).toList(),
+                "Счетчики лайков не совпадают");
+    }
+
+    @Test
+    public void getListOfPopularFilmsWithFiltersTest() {
+        for (int i = 1; i <= 3; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+        }
+        for (int i = 1; i <= 4; i++) {
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(i <= 2 ? 2020 : 1999, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(i % 2 + 1, null))
+                    .genres(i == 4 ? List.of(new Genres(1, null), new Genres(2, null)) : List.of(new Genres(1, null)))
+                    .build());
+        }
+        filmDbRepository.addLikeToFilm(4L, 1L);
+        filmDbRepository.addLikeToFilm(4L, 2L);
+        filmDbRepository.addLikeToFilm(4L, 3L);
+        filmDbRepository.addLikeToFilm(2L, 1L);
+        filmDbRepository.addLikeToFilm(2L, 2L);
+        filmDbRepository.addLikeToFilm(3L, 1L);
+
+        assertEquals(List.of("Film4", "Film2", "Film3", "Film1"), popularFilmNames(10, 1, null, null),
+                "Популярные фильмы жанра не совпадают");
+        assertEquals(List.of("Film4"), popularFilmNames(10, 2, null, null), "Популярные фильмы жанра не совпадают");
+        assertEquals(List.of("Film4", "Film2"), popularFilmNames(10, null, 1, null),
+                "Популярные фильмы MPA не совпадают");
+        assertEquals(List.of("Film4", "Film3"), popularFilmNames(10, null, null, 1999),
+                "Популярные фильмы года не совпадают");
+        assertEquals(List.of("Film3"), popularFilmNames(10, 1, 2, 1999), "Популярные фильмы по всем фильтрам не совпадают");
+        assertEquals(List.of(), popularFilmNames(10, 3, null, null), "Фильмов жанра быть не должно");
+
+        //Смена года и рейтинга переносит фильм в другие срезы
+        Film film = filmDbRepository.getFilmById(3L);
+        film.setReleaseDate(LocalDate.of(2020, 1, 1));
+        filmDbRepository.update(film);
+        assertEquals(List.of("Film4"), popularFilmNames(10, null, null, 1999), "Фильм должен покинуть срез года");
+        assertEquals(List.of("Film2", "Film3", "Film1"), popularFilmNames(10, null, null, 2020),
+                "Фильм должен попасть в срез нового года");
+        assertEquals(List.of("Film4", "Film2", "Film3", "Film1"), popularFilmNames(10, null, null, null),
+                "Обновленный фильм должен остаться в общем рейтинге");
+        assertEquals(List.of("Film4", "Film2", "Film3", "Film1"), popularFilmNames(10, 1, null, null),
+                "Обновленный фильм должен остаться в срезе неизмененного жанра");
+    }
+
+    @Test
+    public void reconcileLikesCountTest() {
+        for (int i = 1; i <= 2; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(1, null))
+                    .build());
+        }
+        filmDbRepository.addLikeToFilm(1L, 1L);
+        //Лайки в обход репозитория: счетчик фильма 2 расходится с likeStorage
+        jdbc.update("INSERT INTO likeStorage (film_ID, user_ID) VALUES (2, 1), (2, 2)");
+
+        assertEquals(List.of(new LikesCountDrift(2L, 0, 2)), filmDbRepository.reconcileLikesCount(),
+                "Расхождения счетчиков не совпадают");
+        assertEquals(2, filmDbRepository.getFilmById(2L).getLikesCount(), "Счетчик лайков не пересчитан");
+        assertTrue(filmDbRepository.reconcileLikesCount().isEmpty(), "После пересчета расхождений быть не должно");
+    }
+
+    //Лайки удаленного пользователя снимаются со счетчиков, а не только каскадом из likeStorage
+    @Test
+    public void deleteUserWithLikesTest() {
+        for (int i = 1; i <= 2; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(1, null))
+                    .build());
+        }
+        filmDbRepository.addLikeToFilm(2L, 1L);
+        filmDbRepository.addLikeToFilm(2L, 2L);
+        filmDbRepository.addLikeToFilm(1L, 2L);
+        assertEquals(List.of("Film2", "Film1"), popularFilmNames(10, null, null, null));
+        assertEquals(2, filmDbRepository.getFilmById(2L).getLikesCount());
 
-}
\ No newline at end of file
+        userDbRepository.delete(1L);
+        assertEquals(1, filmDbRepository.getFilmById(2L).getLikesCount(), "Фильм в кэше сохранил старый счетчик");
+        assertTrue(filmDbRepository.reconcileLikesCount().isEmpty(), "Счетчики лайков разошлись с likeStorage");
+        assertTrue(filmDbRepository.checkPopularityIndex().isEmpty(), "Рейтинг разошелся с likeStorage");
+        assertEquals(List.of("Film1", "Film2"), popularFilmNames(10, null, null, null),
+                "Лайки удаленного пользователя остались в рейтинге");
+        assertEquals(List.of(1L, 2L), filmDbRepository.getTrendingFilms(TrendingWindow.ONE_DAY, 10).stream()
+                .map(Film::getId).toList(), "Лайки удаленного пользователя остались в трендах");
+    }
+
+    @Test
+    public void checkPopularityIndexTest() {
+        for (int i = 1; i <= 2; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(1, null))
+                    .build());
+        }
+        filmDbRepository.addLikeToFilm(1L, 1L);
+        filmDbRepository.addLikeToFilm(1L, 2L);
+        filmDbRepository.removeLikeFromFilm(1L, 2L);
+        assertTrue(filmDbRepository.checkPopularityIndex().isEmpty(), "Рейтинг должен совпадать с хранилищем");
+
+        //Лайки в обход репозитория: рейтинг в памяти о них не знает
+        jdbc.update("INSERT INTO likeStorage (film_ID, user_ID) VALUES (2, 1), (2, 2)");
+        assertEquals(List.of(new LikesCountDrift(2L, 0, 2)), filmDbRepository.checkPopularityIndex(),
+                "Расхождения рейтинга не совпадают");
+        assertEquals(List.of("Film1"), popularFilmNames(1, null, null, null),
+                "До перестройки рейтинг не меняется");
+
+        filmDbRepository.rebuildPopularityIndex();
+        assertTrue(filmDbRepository.checkPopularityIndex().isEmpty(), "После перестройки расхождений быть не должно");
+        assertEquals(List.of("Film2"), popularFilmNames(1, null, null, null),
+                "Самый популярный фильм не совпадает");
+    }
+
+    @Test
+    public void getTrendingFilmsTest() {
+        for (int i = 1; i <= 3; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(1, null))
+                    .build());
+        }
+        filmDbRepository.addLikeToFilm(3L, 1L);
+        filmDbRepository.addLikeToFilm(3L, 2L);
+        filmDbRepository.addLikeToFilm(1L, 1L);
+        filmDbRepository.addLikeToFilm(2L, 1L);
+        filmDbRepository.removeLikeFromFilm(2L, 1L);
+        //Лайк недельной давности в тренды за сутки не попадает
+        jdbc.update("UPDATE likeStorage SET created_at = DATEADD(DAY, -3, CURRENT_TIMESTAMP) WHERE film_ID = 1");
+        filmDbRepository.rebuildPopularityIndex();
+
+        assertEquals(List.of("Film3"), filmDbRepository.getTrendingFilms(TrendingWindow.ONE_DAY, 10).stream()
+                .map(Film::getName).toList(), "Тренды за сутки не совпадают");
+        assertEquals(List.of("Film3", "Film1"), filmDbRepository.getTrendingFilms(TrendingWindow.SEVEN_DAYS, 10)
+                .stream().map(Film::getName).toList(), "Тренды за неделю не совпадают");
+    }
+
+    @Test
+    public void getRecommendedFilmsTest() {
+        for (int i = 1; i <= 4; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+            filmDbRepository.create(Film.builder()
+                    .name("Film" + i)
+                    .description("Description" + i)
+                    .releaseDate(LocalDate.of(2020, 8, i))
+                    .duration(100L)
+                    .mpa(new Mpa(1, null))
+                    .build());
+        }
+        filmDbRepository.addLikes(List.of(new FilmLike(1L, 1L, null), new FilmLike(2L, 1L, null),
+                new FilmLike(3L, 1L, null), new FilmLike(1L, 2L, null), new FilmLike(2L, 2L, null),
+                new FilmLike(1L, 3L, null), new FilmLike(4L, 3L, null)));
+        similarityIndex.refresh();
+
+        assertEquals(List.of("Film2", "Film3"), filmDbRepository.getRecommendedFilms(3L, 10).stream()
+                .map(Film::getName).toList(), "Рекомендации не совпадают");
+        assertEquals(List.of(), filmDbRepository.getRecommendedFilms(4L, 10), "Без лайков рекомендаций нет");
+
+        filmDbRepository.delete(2L);
+        similarityIndex.refresh();
+        assertEquals(List.of("Film3"), filmDbRepository.getRecommendedFilms(3L, 10).stream()
+                .map(Film::getName).toList(), "Удаленный фильм не должен рекомендоваться");
+    }
+
+    //Без транзакции теста: удаление фильма в откаченной транзакции не должно терять его лайки
+    //в матрице лайков и в трендах, а после фиксации фильм должен пропасть из обоих
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void deleteFilmRollbackTest() {
+        userDbRepository.create(User.builder()
+                .email("email@email.com")
+                .login("login")
+                .name("Name")
+                .birthday(LocalDate.of(2000, 8, 1))
+                .build());
+        filmDbRepository.create(Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2020, 8, 1))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .build());
+        filmDbRepository.addLikeToFilm(1L, 1L);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            filmDbRepository.delete(1L);
+            status.setRollbackOnly();
+        });
+        assertArrayEquals(new long[]{1}, likeMatrix.getUsersWhoLiked(1L), "Откат удаления потерял лайки фильма");
+        assertEquals(List.of(1L), filmDbRepository.getTrendingFilms(TrendingWindow.ONE_DAY, 10).stream()
+                .map(Film::getId).toList(), "Откат удаления убрал фильм из трендов");
+
+        transaction.executeWithoutResult(status -> filmDbRepository.delete(1L));
+        assertArrayEquals(new long[0], likeMatrix.getUsersWhoLiked(1L), "Лайки удаленного фильма остались");
+        assertEquals(List.of(), trendingIndex.getTop(TrendingWindow.ONE_DAY, 10), "Удаленный фильм остался в трендах");
+    }
+
+    //Удаление пользователя в откаченной транзакции не должно убирать его лайки из матрицы лайков
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void deleteUserRollbackTest() {
+        userDbRepository.create(User.builder()
+                .email("email@email.com")
+                .login("login")
+                .name("Name")
+                .birthday(LocalDate.of(2000, 8, 1))
+                .build());
+        filmDbRepository.create(Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2020, 8, 1))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .build());
+        filmDbRepository.addLikeToFilm(1L, 1L);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            userDbRepository.delete(1L);
+            status.setRollbackOnly();
+        });
+        assertArrayEquals(new long[]{1}, likeMatrix.getFilmsLikedBy(1L), "Откат удаления потерял лайки пользователя");
+        assertArrayEquals(new long[]{1}, likeMatrix.getUsersWhoLiked(1L), "Откат удаления потерял лайки фильма");
+
+        transaction.executeWithoutResult(status -> userDbRepository.delete(1L));
+        assertArrayEquals(new long[0], likeMatrix.getFilmsLikedBy(1L), "Лайки удаленного пользователя остались");
+        assertArrayEquals(new long[0], likeMatrix.getUsersWhoLiked(1L), "Лайки удаленного пользователя остались");
+    }
+
+    @Test
+    public void filmCacheTest() {
+        userDbRepository.create(User.builder()
+                .email("email@email.com")
+                .login("emailman")
+                .name("Vasily")
+                .birthday(LocalDate.of(2000, 8, 22))
+                .build());
+        filmDbRepository.create(Film.builder()
+                .name("Film1")
+                .description("Description1")
+                .releaseDate(LocalDate.of(2021, 8, 15))
+                .duration(150L)
+                .mpa(new Mpa(1, "G"))
+                .genres(List.of(new Genres(1, "Комедия")))
+                .build());
+
+        Film film = filmDbRepository.getFilmById(1L);
+        film.setName("Изменен вне хранилища");
+        assertEquals("Film1", filmDbRepository.getFilmById(1L).getName(), "Изменение копии не должно портить кэш");
+        long hits = filmCache.getStats().getHitCount();
+        assertTrue(hits >= 1, "Повторное чтение должно попасть в кэш");
+
+        filmDbRepository.addLikeToFilm(1L, 1L);
+        assertEquals(1, filmDbRepository.getFilmById(1L).getLikesCount(), "Счетчик лайков в кэше не обновлен");
+        assertEquals(hits, filmCache.getStats().getHitCount(), "Лайк должен сбросить запись кэша");
+
+        Film updated = filmDbRepository.getFilmById(1L);
+        updated.setName("Film2");
+        updated.setGenres(List.of(new Genres(2, "Драма")));
+        filmDbRepository.update(updated);
+        Film cached = filmDbRepository.getFilmById(1L);
+        assertEquals("Film2", cached.getName(), "Обновление должно сбросить запись кэша");
+        assertEquals(List.of(new Genres(2, "Драма")), cached.getGenres(), "Жанры в кэше не обновлены");
+        assertEquals(new Mpa(1, "G"), cached.getMpa(), "MPA фильма не заполнен");
+
+        filmDbRepository.delete(1L);
+        assertNull(filmDbRepository.getFilmById(1L), "Удаление должно сбросить запись кэша");
+    }
+
+    //Без транзакции теста: фильм, прочитанный другим потоком до фиксации лайка, не должен остаться в кэше
+    //со старым счетчиком, а откаченный лайк не должен в нем остаться
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void filmCacheLikesCountAfterCommitTest() {
+        userDbRepository.create(User.builder()
+                .email("email@email.com")
+                .login("login")
+                .name("Name")
+                .birthday(LocalDate.of(2000, 8, 1))
+                .build());
+        filmDbRepository.create(Film.builder()
+                .name("Film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2020, 8, 1))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .build());
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            filmDbRepository.addLikes(List.of(new FilmLike(1L, 1L, null)));
+            assertEquals(0, CompletableFuture.supplyAsync(() -> filmDbRepository.getFilmById(1L)).join()
+                    .getLikesCount(), "До фиксации другой поток читает прежний счетчик");
+        });
+        assertEquals(1, filmDbRepository.getFilmById(1L).getLikesCount(), "В кэше остался счетчик до фиксации");
+
+        transaction.executeWithoutResult(status -> {
+            filmDbRepository.removeLikes(List.of(new FilmLike(1L, 1L, null)));
+            assertEquals(0, filmDbRepository.getFilmById(1L).getLikesCount());
+            status.setRollbackOnly();
+        });
+        assertEquals(1, filmDbRepository.getFilmById(1L).getLikesCount(), "В кэше остался откаченный счетчик");
+    }
+
+    private List<String> popularFilmNames(int count, Integer genreId, Integer mpaId, Integer year) {
+        return filmDbRepository.getListOfPopularFilms(count, genreId, mpaId, year).stream()
+                .map(Film::getName)
+                .toList();
+    }
+}
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dal.film.PopularityIndex.FilmFacets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FilmFeatureIndexTest {
+
+    @Test
+    public void recommendByGenresAndMpaTest() {
+        FilmFeatureIndex index = new FilmFeatureIndex(7, 6, FilmFeatureIndex.createScorer(true));
+        index.put(1, facets(1, 1));
+        index.put(2, facets(1, 1, 2));
+        index.put(3, facets(2, 2));
+        index.put(4, facets(3, 3));
+        index.put(5, facets(1, 1));
+
+        assertEquals(List.of(5L, 2L), index.recommend(List.of(facets(1, 1)), new long[]{1}, 10),
+                "Фильмы без общих признаков не рекомендуются, лайкнутые исключаются");
+        assertEquals(List.of(5L), index.recommend(List.of(facets(1, 1)), new long[]{1}, 1),
+                "Должно вернуться не больше count фильмов");
+        assertEquals(List.of(), index.recommend(List.of(), new long[0], 10), "Без лайков рекомендаций нет");
+
+        index.put(5, facets(4, 3));
+        index.remove(2);
+        assertEquals(List.of(5L, 4L), index.recommend(List.of(facets(4, 3)), new long[0], 10),
+                "Изменение и удаление фильма не учтены");
+        index.put(6, facets(4, 3));
+        assertEquals(List.of(5L, 6L, 4L), index.recommend(List.of(facets(4, 3)), new long[0], 10),
+                "Новый фильм должен занять освободившуюся ячейку");
+    }
+
+    @Test
+    public void vectorAndScalarScoresMatchTest() {
+        FilmFeatureIndex vector = new FilmFeatureIndex(7, 6, FilmFeatureIndex.createScorer(true));
+        FilmFeatureIndex scalar = new FilmFeatureIndex(7, 6, new ScalarFeatureScorer());
+        assumeTrue(vector.getScorerName().startsWith("vector"), "Vector API подключается профилем vector-api");
+        Random random = new Random(7);
+        FilmFeatureIndex.Loader vectorLoader = vector.loader();
+        FilmFeatureIndex.Loader scalarLoader = scalar.loader();
+        //Число фильмов не кратно ширине вектора, чтобы проверить хвост
+        for (long filmId = 1; filmId <= 10_003; filmId++) {
+            FilmFacets facets = randomFacets(random);
+            vectorLoader.put(filmId, facets);
+            scalarLoader.put(filmId, facets);
+        }
+        vectorLoader.publish();
+        scalarLoader.publish();
+        for (int i = 0; i < 20; i++) {
+            List<FilmFacets> liked = new ArrayList<>();
+            for (int j = 0; j <= i % 4; j++) {
+                liked.add(randomFacets(random));
+            }
+            assertEquals(scalar.recommend(liked, new long[0], 50), vector.recommend(liked, new long[0], 50),
+                    "Vector API и скалярный счет должны давать одинаковые рекомендации");
+        }
+    }
+
+    @Test
+    public void slotsSurviveManyPutsAndRemovesTest() {
+        FilmFeatureIndex index = new FilmFeatureIndex(7, 6, FilmFeatureIndex.createScorer(true));
+        for (long filmId = 1; filmId <= 5000; filmId++) {
+            index.put(filmId, facets(filmId % 2 == 0 ? 1 : 2, 1));
+        }
+        for (long filmId = 1; filmId <= 5000; filmId += 2) {
+            index.remove(filmId);
+        }
+        List<Long> recommended = index.recommend(List.of(facets(2, 1)), new long[0], 100);
+        assertEquals(100, recommended.size());
+        assertTrue(recommended.stream().allMatch(filmId -> filmId % 2 == 0), "Удаленные фильмы не должны вернуться");
+
+        index.clear();
+        assertEquals(List.of(), index.recommend(List.of(facets(2, 1)), new long[0], 10), "Индекс не очищен");
+    }
+
+    private static FilmFacets facets(int mpaId, int... genreIds) {
+        return new FilmFacets(mpaId, 2000, genreIds);
+    }
+
+    private static FilmFacets randomFacets(Random random) {
+        int[] genreIds = random.ints(random.nextInt(4), 1, 7).distinct().toArray();
+        return facets(1 + random.nextInt(5), genreIds);
+    }
+}
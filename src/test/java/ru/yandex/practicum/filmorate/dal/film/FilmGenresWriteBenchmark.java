@@ -0,0 +1,149 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dal.GroupCommitterFactory;
+import ru.yandex.practicum.filmorate.dal.film.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.MpaRowMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Бенчмарк записи жанров фильма при создании и обновлении (по умолчанию 2000 фильмов, меняется через -Dbenchmark.films).
+//Сравнивает исходную запись (DELETE всех связей и INSERT на каждый жанр) с пакетной записью разницы.
+//H2 в памяти не тратит время на сетевой обмен, поэтому выигрыш пакетной записи здесь виден в основном по числу строк.
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=FilmGenresWriteBenchmark
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({FilmDbRepository.class, FilmRowMapper.class, GenreRowMapper.class, MpaRowMapper.class, PopularityIndex.class,
+        TrendingIndex.class, FilmCache.class, LikeMatrix.class, FilmSimilarityIndex.class, FilmFeatureIndex.class,
+        ReferenceDataRegistry.class, GenreDbRepository.class, MpaDbRepository.class,
+        GroupCommitterFactory.class})
+class FilmGenresWriteBenchmark {
+
+    private static final int GENRES = 6;
+    private static final String LEGACY_INSERT_FILM = "INSERT INTO filmStorage(name, description, releaseDate, " +
+            "duration, rating_mpa_ID) VALUES (?, ?, ?, ?, ?)";
+    private static final String LEGACY_UPDATE_FILM = "UPDATE filmStorage SET name = ?, description = ?, " +
+            "releaseDate = ?, duration = ?, rating_mpa_ID = ? WHERE film_ID = ?";
+    private static final String LEGACY_DELETE_GENRES = "DELETE FROM filmGenres WHERE film_ID = ?";
+    private static final String INSERT_FILM_GENRE = "INSERT INTO filmGenres (film_ID, genre_ID) VALUES (?, ?)";
+
+    private final FilmDbRepository filmDbRepository;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+
+    @Test
+    void createAndUpdateFilmGenres() {
+        int films = Integer.getInteger("benchmark.films", 2000);
+        //Первый проход - прогрев JIT и пула соединений, в расчет берется второй
+        for (int round = 1; round <= 2; round++) {
+            log.info("Проход {}", round);
+            Film[] created = new Film[films];
+
+            measure("исходное создание, " + GENRES + " жанров", films, i -> legacyCreate(film(null, allGenres())));
+            measure("create, " + GENRES + " жанров", films, i -> {
+                created[i] = filmDbRepository.create(film(null, allGenres()));
+                return GENRES;
+            });
+
+            //Поток правок: каждая заменяет у фильма один жанр из шести на другой (из шести связей меняются две)
+            measure("исходное обновление, замена одного жанра", films,
+                    i -> legacyUpdate(film(created[i].getId(), genresWithout(i % GENRES + 1))));
+            //Контрольный замер: те же обновления без изменения жанров - стоимость остальной части update
+            measure("update, жанры без изменений", films, i -> {
+                filmDbRepository.update(film(created[i].getId(), genresWithout(i % GENRES + 1)));
+                return 0;
+            });
+            measure("update, замена одного жанра", films, i -> {
+                filmDbRepository.update(film(created[i].getId(), genresWithout((i + 1) % GENRES + 1)));
+                return 2;
+            });
+
+            assertEquals(GENRES - 1, filmDbRepository.getFilmById(created[0].getId()).getGenres().size());
+        }
+    }
+
+    //Исходная запись жанров: отдельный запрос на каждую связь; возвращает число записанных строк filmGenres
+    private int legacyCreate(Film film) {
+        return transactionTemplate.execute(status -> {
+            jdbc.update(LEGACY_INSERT_FILM, film.getName(), film.getDescription(), film.getReleaseDate(),
+                    film.getDuration(), film.getMpa().getId());
+            long id = jdbc.queryForObject("SELECT MAX(film_ID) FROM filmStorage", Long.class);
+            for (Genres genre : film.getGenres()) {
+                jdbc.update(INSERT_FILM_GENRE, id, genre.getId());
+            }
+            return film.getGenres().size();
+        });
+    }
+
+    private int legacyUpdate(Film film) {
+        return transactionTemplate.execute(status -> {
+            jdbc.update(LEGACY_UPDATE_FILM, film.getName(), film.getDescription(), film.getReleaseDate(),
+                    film.getDuration(), film.getMpa().getId(), film.getId());
+            int rows = jdbc.update(LEGACY_DELETE_GENRES, film.getId());
+            for (Genres genre : film.getGenres()) {
+                rows += jdbc.update(INSERT_FILM_GENRE, film.getId(), genre.getId());
+            }
+            return rows;
+        });
+    }
+
+    private void measure(String name, int films, IntFunction<Integer> write) {
+        long rows = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < films; i++) {
+            rows += write.apply(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        log.info("{}: {} мкс на фильм, записано строк filmGenres: {}", name, elapsed / films / 1_000, rows);
+    }
+
+    private static Film film(Long id, List<Genres> genres) {
+        return Film.builder()
+                .id(id)
+                .name("film")
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .genres(genres)
+                .build();
+    }
+
+    private static List<Genres> allGenres() {
+        return genresWithout(0);
+    }
+
+    private static List<Genres> genresWithout(int excludedGenreId) {
+        List<Genres> genres = new ArrayList<>();
+        for (int genreId = 1; genreId <= GENRES; genreId++) {
+            if (genreId != excludedGenreId) {
+                genres.add(new Genres(genreId, null));
+            }
+        }
+        return genres;
+    }
+}
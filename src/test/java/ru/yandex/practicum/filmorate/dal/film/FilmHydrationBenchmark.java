@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//Бенчмарк сборки фильмов в getAll(): время на фильм должно оставаться примерно постоянным от 10k до 1M фильмов.
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=FilmHydrationBenchmark
+@Slf4j
+class FilmHydrationBenchmark {
+
+    private static final int GENRES_PER_FILM = 3;
+    private static final ReferenceDataRegistry REFERENCES = references();
+
+    @Test
+    void hydrationScalesLinearly() {
+        //прогрев JIT
+        for (int i = 0; i < 5; i++) {
+            hydrate(100_000);
+        }
+        for (int filmsQty : new int[]{10_000, 100_000, 1_000_000}) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 5; i++) {
+                best = Math.min(best, hydrate(filmsQty));
+            }
+            log.info("Фильмов: {}, время: {} мс, на фильм: {} нс", filmsQty, best / 1_000_000,
+                    best / filmsQty);
+        }
+    }
+
+    private static ReferenceDataRegistry references() {
+        GenreStorage genreStorage = mock(GenreStorage.class);
+        when(genreStorage.getAllGenres()).thenReturn(
+                List.of(new Genres(1, "Комедия"), new Genres(2, "Драма"), new Genres(3, "Мультфильм"),
+                        new Genres(4, "Триллер"), new Genres(5, "Документальный"), new Genres(6, "Боевик")));
+        MpaStorage mpaStorage = mock(MpaStorage.class);
+        when(mpaStorage.getAllMpas()).thenReturn(
+                List.of(new Mpa(1, "G"), new Mpa(2, "PG"), new Mpa(3, "PG-13"), new Mpa(4, "R"), new Mpa(5, "NC-17")));
+        ReferenceDataRegistry references = new ReferenceDataRegistry(genreStorage, mpaStorage);
+        references.reload();
+        return references;
+    }
+
+    private long hydrate(int filmsQty) {
+        List<Film> films = new ArrayList<>(filmsQty);
+        for (int i = 1; i <= filmsQty; i++) {
+            films.add(new Film((long) i, "Film" + i, "Description", LocalDate.of(2000, 1, 1), 100L,
+                    new Mpa(i % 5 + 1, null), null, 0));
+        }
+        System.gc();
+        long start = System.nanoTime();
+        FilmHydrator hydrator = new FilmHydrator(films, REFERENCES);
+        for (long filmId = 1; filmId <= filmsQty; filmId++) {
+            for (int genre = 0; genre < GENRES_PER_FILM; genre++) {
+                hydrator.addGenre(filmId, (int) ((filmId + genre) % 6) + 1);
+            }
+        }
+        List<Film> result = hydrator.hydrate();
+        long elapsed = System.nanoTime() - start;
+        assertEquals(GENRES_PER_FILM, result.get(filmsQty - 1).getGenres().size());
+        return elapsed;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilmSimilarityIndexTest {
+
+    @Test
+    public void recommendByCosineSimilarityTest() {
+        LikeMatrix likes = new LikeMatrix();
+        FilmSimilarityIndex index = new FilmSimilarityIndex(likes, 50, 1000, 1000);
+        like(likes, 1, 1, 2, 3);
+        like(likes, 2, 1, 2);
+        like(likes, 3, 1, 4);
+        like(likes, 4, 1);
+        assertEquals(4, index.refresh(), "Должны пересчитаться все фильмы с лайками");
+
+        //cos(1, 2) = 2 / sqrt(4 * 2), cos(1, 3) = cos(1, 4) = 1 / sqrt(4 * 1)
+        assertEquals(List.of(new FilmSimilarityIndex.Scored(2, 7071), new FilmSimilarityIndex.Scored(3, 5000),
+                new FilmSimilarityIndex.Scored(4, 5000)), index.getNeighbors(1), "Похожие фильмы не совпадают");
+        assertEquals(List.of(2L, 3L, 4L), index.recommend(4, 10), "Рекомендации не совпадают");
+        assertEquals(List.of(2L), index.recommend(4, 1), "Должно вернуться не больше count фильмов");
+        assertEquals(List.of(4L), index.recommend(1, 10), "Лайкнутые фильмы не должны рекомендоваться");
+        assertEquals(List.of(), index.recommend(5, 10), "Без лайков рекомендаций нет");
+        assertEquals(0, index.refresh(), "Без новых лайков пересчитывать нечего");
+    }
+
+    @Test
+    public void refreshUpdatesChangedFilmsAndTheirNeighborsTest() {
+        LikeMatrix likes = new LikeMatrix();
+        FilmSimilarityIndex index = new FilmSimilarityIndex(likes, 50, 1000, 1000);
+        like(likes, 1, 1, 2, 3);
+        like(likes, 2, 1, 2);
+        like(likes, 3, 1, 4);
+        like(likes, 4, 1);
+        index.refresh();
+
+        like(likes, 5, 1, 4);
+        like(likes, 6, 1, 4);
+        assertEquals(List.of(2L, 3L, 4L), index.recommend(4, 10), "До пересчета действуют прежние веса");
+        assertEquals(2, index.refresh(), "Пересчитываются только фильмы с новыми лайками");
+        assertEquals(List.of(4L, 2L, 3L), index.recommend(4, 10), "Новые лайки не учтены");
+        //Фильм 2 не пересчитывался, но его вес с фильмом 1 обновлен: cos(2, 1) = 2 / sqrt(2 * 6)
+        assertTrue(index.getNeighbors(2).contains(new FilmSimilarityIndex.Scored(1, 5774)),
+                "Вес в строке соседа не обновлен");
+
+        likes.removeFilm(2);
+        index.refresh();
+        assertEquals(List.of(), index.getNeighbors(2), "Удаленный фильм должен уйти из индекса");
+        assertEquals(List.of(4L, 3L), index.recommend(4, 10), "Удаленный фильм не должен рекомендоваться");
+    }
+
+    @Test
+    public void neighborsAreLimitedAndReplacedByBetterTest() {
+        LikeMatrix likes = new LikeMatrix();
+        FilmSimilarityIndex index = new FilmSimilarityIndex(likes, 2, 1000, 1000);
+        like(likes, 1, 1, 2, 3, 4);
+        like(likes, 2, 1, 2);
+        index.refresh();
+        assertEquals(List.of(2L, 3L), index.getNeighbors(1).stream().map(FilmSimilarityIndex.Scored::filmId).toList(),
+                "Должно храниться не больше neighbors похожих фильмов");
+
+        like(likes, 3, 1, 4);
+        like(likes, 4, 1, 4);
+        index.refresh();
+        assertEquals(List.of(4L, 2L), index.getNeighbors(1).stream().map(FilmSimilarityIndex.Scored::filmId).toList(),
+                "Более похожий фильм должен вытеснить менее похожий");
+    }
+
+    private static void like(LikeMatrix likes, long userId, long... filmIds) {
+        for (long filmId : filmIds) {
+            likes.add(filmId, userId);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dal.GroupCommitterFactory;
+import ru.yandex.practicum.filmorate.dal.film.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.MpaRowMapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Бенчмарк GET /films/popular на большом числе лайков (по умолчанию 10M, меняется через -Dbenchmark.likes).
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=PopularFilmsBenchmark
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({FilmDbRepository.class, FilmRowMapper.class, GenreRowMapper.class, MpaRowMapper.class, PopularityIndex.class,
+        TrendingIndex.class, FilmCache.class, LikeMatrix.class, FilmSimilarityIndex.class, FilmFeatureIndex.class,
+        ReferenceDataRegistry.class, GenreDbRepository.class, MpaDbRepository.class,
+        GroupCommitterFactory.class})
+class PopularFilmsBenchmark {
+
+    private static final int FILMS = 10_000;
+    private static final int COUNT = 10;
+    //Исходный запрос: соединение всех фильмов со всеми лайками и группировка на каждый вызов
+    private static final String LEGACY_QUERY = "SELECT fs.*, COUNT(ls.user_ID) AS likes_count " +
+            "FROM filmStorage AS fs LEFT JOIN likeStorage AS ls ON fs.film_ID = ls.film_ID GROUP BY fs.film_ID " +
+            "ORDER BY likes_count DESC LIMIT ?";
+    //Исходный подход с фильтрами: та же агрегация лайков, ограниченная жанром или годом выпуска
+    private static final String LEGACY_GENRE_QUERY = "SELECT fs.*, COUNT(ls.user_ID) AS likes_count " +
+            "FROM filmStorage AS fs JOIN filmGenres AS fg ON fs.film_ID = fg.film_ID " +
+            "LEFT JOIN likeStorage AS ls ON fs.film_ID = ls.film_ID WHERE fg.genre_ID = ? GROUP BY fs.film_ID " +
+            "ORDER BY likes_count DESC LIMIT ?";
+    private static final String LEGACY_YEAR_QUERY = "SELECT fs.*, COUNT(ls.user_ID) AS likes_count " +
+            "FROM filmStorage AS fs LEFT JOIN likeStorage AS ls ON fs.film_ID = ls.film_ID " +
+            "WHERE EXTRACT(YEAR FROM fs.releaseDate) = ? GROUP BY fs.film_ID ORDER BY likes_count DESC LIMIT ?";
+    //Широкий срез - жанр (1/6 фильмов), узкий - год выпуска (1/100 фильмов)
+    private static final int GENRE = 1;
+    private static final int YEAR = 1990;
+
+    private final FilmDbRepository filmDbRepository;
+    private final JdbcTemplate jdbc;
+
+    @BeforeEach
+    void fillStorage() {
+        long likes = Long.getLong("benchmark.likes", 10_000_000L);
+        int users = (int) Math.max(1, likes * 2 / FILMS);
+        log.info("Заполняем хранилище: фильмов {}, пользователей {}, лайков ~{}", FILMS, users, likes);
+        jdbc.update("INSERT INTO userStorage(user_ID, email, login, name, birthday) " +
+                "SELECT X, 'user' || X || '@mail.ru', 'user' || X, 'user', DATE '2000-01-01' FROM SYSTEM_RANGE(1, ?)", users);
+        jdbc.update("INSERT INTO filmStorage(film_ID, name, description, releaseDate, duration, rating_mpa_ID) " +
+                "SELECT X, 'film' || X, 'description', DATEADD(YEAR, -MOD(X, 100), DATE '2020-01-01'), 100, " +
+                "MOD(X, 5) + 1 FROM SYSTEM_RANGE(1, ?)", FILMS);
+        jdbc.update("INSERT INTO filmGenres(film_ID, genre_ID) SELECT X, MOD(X, 6) + 1 FROM SYSTEM_RANGE(1, ?)", FILMS);
+        //У фильма X лайки от пользователей 1..k(X), k равномерно распределено в [1, users]
+        jdbc.update("INSERT INTO likeStorage(film_ID, user_ID) SELECT f.X, u.X FROM SYSTEM_RANGE(1, ?) f " +
+                "JOIN SYSTEM_RANGE(1, ?) u ON u.X <= MOD(f.X * 7919, ?) + 1", FILMS, users, users);
+        log.info("Лайков в хранилище: {}", jdbc.queryForObject("SELECT COUNT(*) FROM likeStorage", Long.class));
+        //Лайки вставлены в обход репозитория, счетчики likes_count заполняет сверка
+        long start = System.nanoTime();
+        int drifts = filmDbRepository.reconcileLikesCount().size();
+        log.info("Сверка счетчиков: исправлено {} фильмов за {} мс", drifts, (System.nanoTime() - start) / 1_000_000);
+        start = System.nanoTime();
+        filmDbRepository.rebuildPopularityIndex();
+        log.info("Рейтинг популярности построен за {} мс", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Test
+    void popularFilms() {
+        measure("исходный запрос", () -> jdbc.query(LEGACY_QUERY, (rs, rowNum) -> rs.getLong("film_ID"), COUNT));
+        measure("getListOfPopularFilms", () -> filmDbRepository.getListOfPopularFilms(COUNT, null, null, null));
+        assertEquals(COUNT, filmDbRepository.getListOfPopularFilms(COUNT, null, null, null).size());
+    }
+
+    @Test
+    void popularFilmsByFacets() {
+        measure("исходный запрос, жанр", () -> jdbc.query(LEGACY_GENRE_QUERY,
+                (rs, rowNum) -> rs.getLong("film_ID"), GENRE, COUNT));
+        measure("getListOfPopularFilms, жанр", () -> filmDbRepository.getListOfPopularFilms(COUNT, GENRE, null, null));
+        measure("исходный запрос, год", () -> jdbc.query(LEGACY_YEAR_QUERY,
+                (rs, rowNum) -> rs.getLong("film_ID"), YEAR, COUNT));
+        measure("getListOfPopularFilms, год", () -> filmDbRepository.getListOfPopularFilms(COUNT, null, null, YEAR));
+        measure("getListOfPopularFilms, жанр и год",
+                () -> filmDbRepository.getListOfPopularFilms(COUNT, GENRE, null, YEAR));
+
+        assertEquals(jdbc.query(LEGACY_YEAR_QUERY, (rs, rowNum) -> rs.getLong("film_ID"), YEAR, COUNT).size(),
+                filmDbRepository.getListOfPopularFilms(COUNT, null, null, YEAR).size());
+    }
+
+    private void measure(String name, Runnable query) {
+        for (int i = 0; i < 3; i++) {
+            query.run();
+        }
+        int iterations = 10;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.run();
+        }
+        log.info("{}: {} мс на запрос", name, (System.nanoTime() - start) / iterations / 1_000_000);
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dal.film.PopularityIndex.FilmFacets;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PopularityIndexTest {
+
+    private static final FilmFacets FACETS = new FilmFacets(1, 2000, new int[]{1});
+
+    @Test
+    public void topOrderedByLikesThenByIdTest() {
+        PopularityIndex index = new PopularityIndex();
+        PopularityIndex.Loader loader = index.loader();
+        Map.of(1L, 0L, 2L, 5L, 3L, 2L, 4L, 2L).forEach((filmId, likes) -> loader.put(filmId, likes, FACETS));
+        loader.publish();
+
+        assertEquals(List.of(2L, 3L, 4L, 1L), index.getTop(10), "Порядок фильмов не совпадает");
+        assertEquals(List.of(2L, 3L), index.getTop(2), "Первые фильмы рейтинга не совпадают");
+        assertEquals(List.of(2L, 3L, 4L, 1L), index.getTop(Integer.MAX_VALUE),
+                "Большой count не должен выделять память под count фильмов");
+    }
+
+    @Test
+    public void changeLikesTest() {
+        PopularityIndex index = new PopularityIndex();
+        index.put(1L, 0, FACETS);
+        index.put(2L, 0, FACETS);
+        index.put(3L, 0, FACETS);
+        index.changeLikes(3L, 1);
+        index.changeLikes(3L, 1);
+        index.changeLikes(1L, 1);
+        index.changeLikes(4L, 1);
+
+        assertEquals(List.of(3L, 1L, 2L), index.getTop(10), "Порядок фильмов не совпадает");
+        assertEquals(2, index.getLikes(3L, -1), "Кол-во лайков не совпадает");
+        assertEquals(-1, index.getLikes(4L, -1), "Лайк несуществующему фильму не должен попасть в рейтинг");
+
+        index.changeLikes(3L, -2);
+        index.remove(1L);
+        assertEquals(List.of(2L, 3L), index.getTop(10), "Порядок фильмов после изменений не совпадает");
+        assertEquals(Map.of(2L, 0L, 3L, 0L), index.snapshot(), "Содержимое рейтинга не совпадает");
+    }
+
+    @Test
+    public void facetsTest() {
+        PopularityIndex index = new PopularityIndex();
+        index.put(1L, 5, new FilmFacets(1, 2000, new int[]{1, 2}));
+        index.put(2L, 3, new FilmFacets(2, 2000, new int[]{2}));
+        index.put(3L, 4, new FilmFacets(1, 2010, new int[]{}));
+
+        assertEquals(List.of(1L, 2L), index.getTop(10, 2, null, null), "Срез по жанру не совпадает");
+        assertEquals(List.of(1L, 3L), index.getTop(10, null, 1, null), "Срез по MPA не совпадает");
+        assertEquals(List.of(2L), index.getTop(10, 2, 2, 2000), "Пересечение срезов не совпадает");
+        assertEquals(List.of(), index.getTop(10, null, null, 1990), "Пустой срез должен дать пустой список");
+
+        index.changeFacets(1L, new FilmFacets(1, 2010, new int[]{1}));
+        assertEquals(List.of(1L, 3L, 2L), index.getTop(10), "Смена атрибутов не должна убирать фильм из рейтинга");
+        assertEquals(List.of(1L, 3L), index.getTop(10, null, 1, null), "Фильм должен остаться в прежнем срезе MPA");
+        assertEquals(List.of(1L), index.getTop(10, 1, null, null), "Фильм должен остаться в прежнем срезе жанра");
+        index.changeLikes(2L, 5);
+        assertEquals(List.of(2L), index.getTop(10, 2, null, null), "Фильм должен покинуть срез жанра");
+        assertEquals(List.of(1L, 3L), index.getTop(10, null, null, 2010), "Фильм должен попасть в срез года");
+        index.remove(3L);
+        assertEquals(List.of(1L), index.getTop(10, null, null, 2010), "Удаленный фильм должен покинуть срез");
+    }
+}
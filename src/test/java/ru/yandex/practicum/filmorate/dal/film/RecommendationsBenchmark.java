@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Бенчмарк рекомендаций по матрице лайков в памяти: users пользователей (по умолчанию 100k, -Dbenchmark.users)
+//ставят по 20 лайков FILMS фильмам с перекосом в популярные, пользователь 1 лайкает heavy случайных фильмов
+//(по умолчанию 5000, -Dbenchmark.heavy-likes). Меряются полный расчет похожих фильмов, пересчет после новых
+//лайков и время рекомендации для обычного пользователя и для пользователя 1.
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=RecommendationsBenchmark
+@Slf4j
+class RecommendationsBenchmark {
+
+    private static final int FILMS = 20_000;
+    private static final int LIKES_PER_USER = 20;
+    private static final int RUNS = 200;
+
+    @Test
+    void recommendations() {
+        int users = Integer.getInteger("benchmark.users", 100_000);
+        int heavyLikes = Integer.getInteger("benchmark.heavy-likes", 5000);
+        Random random = new Random(42);
+        LikeMatrix likes = new LikeMatrix();
+        LikeMatrix.Loader loader = likes.loader();
+        for (long userId = 1; userId <= users; userId++) {
+            Set<Long> liked = new HashSet<>();
+            while (liked.size() < (userId == 1 ? heavyLikes : LIKES_PER_USER)) {
+                liked.add(userId == 1 ? 1 + random.nextInt(FILMS) : popularFilm(random));
+            }
+            for (long filmId : liked) {
+                loader.put(userId, filmId);
+            }
+        }
+        loader.publish();
+        FilmSimilarityIndex index = new FilmSimilarityIndex(likes, 50, 1000, 1000);
+
+        long start = System.nanoTime();
+        int refreshed = index.refresh();
+        log.info("Похожие фильмы для {} фильмов посчитаны за {} мс", refreshed, (System.nanoTime() - start) / 1_000_000);
+
+        for (int i = 0; i < 1000; i++) {
+            likes.add(popularFilm(random), 2 + random.nextInt(users - 1));
+        }
+        start = System.nanoTime();
+        refreshed = index.refresh();
+        log.info("После 1000 новых лайков пересчитано {} фильмов за {} мс", refreshed,
+                (System.nanoTime() - start) / 1_000_000);
+
+        measure("пользователь с " + LIKES_PER_USER + " лайками", () -> index.recommend(2, 10).size());
+        measure("пользователь с " + likes.getFilmsLikedBy(1).length + " лайками",
+                () -> index.recommend(1, 10).size());
+        assertEquals(10, index.recommend(1, 10).size());
+    }
+
+    //Распределение с перекосом: малые id выпадают намного чаще
+    private static long popularFilm(Random random) {
+        double x = random.nextDouble();
+        return 1 + (long) (x * x * x * (FILMS - 1));
+    }
+
+    private static void measure(String name, IntSupplier recommend) {
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            recommend.getAsInt();
+        }
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            recommend.getAsInt();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        log.info("{}: p50 {} мкс, p99 {} мкс", name, nanos[RUNS / 2] / 1000, nanos[RUNS * 99 / 100] / 1000);
+    }
+}
@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.dal.film.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.MpaRowMapper;
+import ru.yandex.practicum.filmorate.model.Genres;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({ReferenceDataRegistry.class, GenreDbRepository.class, GenreRowMapper.class, MpaDbRepository.class,
+        MpaRowMapper.class})
+class ReferenceDataRegistryTest {
+
+    private final ReferenceDataRegistry references;
+    private final JdbcTemplate jdbc;
+
+    @Test
+    void getReferencesTest() {
+        assertEquals(6, references.getAllGenres().size());
+        assertEquals(5, references.getAllMpas().size());
+        assertEquals("Комедия", references.getGenre(1).getName());
+        assertEquals("NC-17", references.getMpa(5).getName());
+        //Один и тот же объект для всех обращений
+        assertSame(references.getGenre(2), references.getAllGenres().get(1));
+        assertSame(references.getMpa(3), references.getMpa(3));
+    }
+
+    @Test
+    void getUnknownReferenceTest() {
+        assertNull(references.getGenre(0));
+        assertNull(references.getGenre(100));
+        assertNull(references.getGenre(-1));
+        assertNull(references.getMpa(6));
+    }
+
+    //Реестр живет дольше транзакции теста, поэтому контекст после перезагрузки справочников пересоздается
+    @Test
+    @DirtiesContext
+    void reloadTest() {
+        jdbc.update("INSERT INTO genres (genre_ID, genre_name) VALUES (10, 'Вестерн')");
+        assertNull(references.getGenre(10));
+
+        references.reload();
+
+        Genres western = references.getGenre(10);
+        assertNotNull(western);
+        assertEquals("Вестерн", western.getName());
+        assertEquals(7, references.getAllGenres().size());
+        assertThrows(UnsupportedOperationException.class, () -> references.getAllGenres().add(western));
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrendingIndexTest {
+
+    private final MovableClock clock = new MovableClock(Instant.parse("2024-05-01T12:00:00Z"));
+    private final TrendingIndex index = new TrendingIndex(clock);
+
+    @Test
+    public void windowsTest() {
+        index.addLike(1L, clock.instant().minus(Duration.ofMinutes(30)), 1);
+        index.addLike(2L, clock.instant().minus(Duration.ofHours(5)), 1);
+        index.addLike(2L, clock.instant().minus(Duration.ofHours(6)), 1);
+        index.addLike(3L, clock.instant().minus(Duration.ofDays(3)), 1);
+        index.addLike(3L, clock.instant().minus(Duration.ofDays(3)), 1);
+        index.addLike(3L, clock.instant().minus(Duration.ofDays(3)), 1);
+        index.addLike(4L, clock.instant().minus(Duration.ofDays(8)), 1);
+
+        assertEquals(List.of(1L), index.getTop(TrendingWindow.ONE_HOUR, 10), "Тренды за час не совпадают");
+        assertEquals(List.of(2L, 1L), index.getTop(TrendingWindow.ONE_DAY, 10), "Тренды за сутки не совпадают");
+        assertEquals(List.of(3L, 2L, 1L), index.getTop(TrendingWindow.SEVEN_DAYS, 10),
+                "Тренды за неделю не совпадают");
+        assertEquals(List.of(3L), index.getTop(TrendingWindow.SEVEN_DAYS, 1), "Первый фильм трендов не совпадает");
+        assertEquals(List.of(3L, 2L, 1L), index.getTop(TrendingWindow.SEVEN_DAYS, Integer.MAX_VALUE),
+                "Большой count не должен переполнять размер очереди");
+    }
+
+    @Test
+    public void rotationTest() {
+        index.addLike(1L, clock.instant(), 1);
+        index.addLike(2L, clock.instant(), 1);
+        index.addLike(2L, clock.instant().minus(Duration.ofMinutes(10)), 1);
+
+        clock.move(Duration.ofMinutes(55));
+        assertEquals(List.of(1L, 2L), index.getTop(TrendingWindow.ONE_HOUR, 10), "Старый лайк должен выйти из часа");
+        assertEquals(List.of(2L, 1L), index.getTop(TrendingWindow.ONE_DAY, 10), "Лайки должны остаться в сутках");
+
+        clock.move(Duration.ofHours(24));
+        index.rotate();
+        assertEquals(List.of(), index.getTop(TrendingWindow.ONE_DAY, 10), "Лайки должны выйти из суток");
+        assertEquals(List.of(2L, 1L), index.getTop(TrendingWindow.SEVEN_DAYS, 10), "Лайки должны остаться в неделе");
+
+        clock.move(Duration.ofDays(7));
+        index.rotate();
+        assertEquals(List.of(), index.getTop(TrendingWindow.SEVEN_DAYS, 10), "Лайки должны выйти из недели");
+    }
+
+    @Test
+    public void unlikeDecrementsOriginalBucketTest() {
+        Instant likedAt = clock.instant().minus(Duration.ofHours(2));
+        index.addLike(1L, likedAt, 1);
+        index.addLike(1L, clock.instant(), 1);
+        index.addLike(2L, clock.instant(), 1);
+        index.addLike(1L, likedAt, -1);
+
+        assertEquals(List.of(1L, 2L), index.getTop(TrendingWindow.ONE_HOUR, 10),
+                "Снятие старого лайка не должно менять тренды за час");
+        assertEquals(List.of(1L, 2L), index.getTop(TrendingWindow.ONE_DAY, 10), "Тренды за сутки не совпадают");
+
+        index.addLike(1L, clock.instant(), -1);
+        assertEquals(List.of(2L), index.getTop(TrendingWindow.ONE_DAY, 10), "Тренды после снятия лайков не совпадают");
+    }
+
+    private static final class MovableClock extends Clock {
+
+        private Instant now;
+
+        private MovableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void move(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
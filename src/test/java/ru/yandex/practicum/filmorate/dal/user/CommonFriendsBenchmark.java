@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dal.GroupCommitterFactory;
+import ru.yandex.practicum.filmorate.dal.film.FilmCache;
+import ru.yandex.practicum.filmorate.dal.film.FilmDbRepository;
+import ru.yandex.practicum.filmorate.dal.film.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.dal.film.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.dal.film.GenreDbRepository;
+import ru.yandex.practicum.filmorate.dal.film.LikeMatrix;
+import ru.yandex.practicum.filmorate.dal.film.MpaDbRepository;
+import ru.yandex.practicum.filmorate.dal.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.dal.film.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.dal.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.dal.film.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.MpaRowMapper;
+import ru.yandex.practicum.filmorate.dal.user.mapper.UserRowMapper;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Бенчмарк общих друзей для пользователей с большим числом друзей (по умолчанию 100k, -Dbenchmark.friends):
+//у пользователя 1 в друзьях все, у пользователя 2 - каждый второй, у пользователя 3 - 100 друзей.
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=CommonFriendsBenchmark
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@Slf4j
+@JdbcTest
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({UserDbRepository.class, UserRowMapper.class, FriendshipGraph.class, FriendSuggestions.class, FriendshipPaths.class,
+        LikeMatrix.class, GroupCommitterFactory.class, FilmDbRepository.class, FilmRowMapper.class, GenreRowMapper.class,
+        MpaRowMapper.class, PopularityIndex.class, TrendingIndex.class, FilmCache.class, FilmSimilarityIndex.class,
+        FilmFeatureIndex.class, ReferenceDataRegistry.class, GenreDbRepository.class, MpaDbRepository.class})
+class CommonFriendsBenchmark {
+
+    private static final int FEW_FRIENDS = 100;
+    //Исходный запрос: группировка связей обоих пользователей на каждый вызов
+    private static final String LEGACY_QUERY = "SELECT * FROM userStorage " +
+            "WHERE user_ID IN (SELECT fs.user_friend_ID FROM friendsStorage AS fs " +
+            "WHERE fs.user_ID = ? OR fs.user_ID = ? GROUP BY fs.user_friend_ID HAVING COUNT(fs.user_ID) = 2)";
+
+    private final UserDbRepository userDbRepository;
+    private final FriendshipGraph friendshipGraph;
+    private final JdbcTemplate jdbc;
+    private int friends;
+
+    @BeforeEach
+    void fillStorage() {
+        friends = Integer.getInteger("benchmark.friends", 100_000);
+        jdbc.update("INSERT INTO userStorage(user_ID, email, login, name, birthday) " +
+                "SELECT X, 'user' || X || '@mail.ru', 'user' || X, 'user', DATE '2000-01-01' FROM SYSTEM_RANGE(1, ?)",
+                friends + 3);
+        jdbc.update("INSERT INTO friendsStorage(user_ID, user_friend_ID) SELECT 1, X FROM SYSTEM_RANGE(4, ?)",
+                friends + 3);
+        jdbc.update("INSERT INTO friendsStorage(user_ID, user_friend_ID) " +
+                "SELECT 2, X FROM SYSTEM_RANGE(4, ?) WHERE MOD(X, 2) = 0", friends + 3);
+        jdbc.update("INSERT INTO friendsStorage(user_ID, user_friend_ID) " +
+                "SELECT 3, X FROM SYSTEM_RANGE(4, ?) WHERE MOD(X, ?) = 0", friends + 3, friends / FEW_FRIENDS);
+        long start = System.nanoTime();
+        userDbRepository.loadFriendshipGraph();
+        log.info("Граф дружбы построен за {} мс", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Test
+    void commonFriends() {
+        measure("исходный запрос, 100k и 50k друзей", () -> jdbc.query(LEGACY_QUERY, (rs, rowNum) -> 0, 1, 2).size());
+        measure("getListOfCommonFriends, 100k и 50k друзей", () -> userDbRepository.getListOfCommonFriends(1L, 2L).size());
+        measure("исходный запрос, 100k и 100 друзей", () -> jdbc.query(LEGACY_QUERY, (rs, rowNum) -> 0, 1, 3).size());
+        measure("getListOfCommonFriends, 100k и 100 друзей",
+                () -> userDbRepository.getListOfCommonFriends(1L, 3L).size());
+        measureNanos("пересечение, 100k и 50k друзей (слияние)", () -> friendshipGraph.getCommonFriends(1, 2).length);
+        measureNanos("пересечение, 100k и 100 друзей (галоп)", () -> friendshipGraph.getCommonFriends(1, 3).length);
+
+        assertEquals(jdbc.query(LEGACY_QUERY, (rs, rowNum) -> 0, 1, 3).size(),
+                userDbRepository.getListOfCommonFriends(1L, 3L).size());
+    }
+
+    private void measure(String name, Supplier<Integer> query) {
+        log.info("{}: {} мс на запрос", name, run(query, 10) / 1_000_000);
+    }
+
+    private void measureNanos(String name, Supplier<Integer> query) {
+        log.info("{}: {} мкс на вызов", name, run(query, 1000) / 1_000);
+    }
+
+    private static long run(Supplier<Integer> query, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            query.get();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.get();
+        }
+        return (System.nanoTime() - start) / iterations;
+    }
+}
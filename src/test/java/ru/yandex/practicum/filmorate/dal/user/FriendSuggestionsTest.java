@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dal.user.FriendSuggestions.Candidate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FriendSuggestionsTest {
+
+    @Test
+    public void rankedByMutualFriendsTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        addFriends(graph, 1, 2, 3, 4);
+        addFriends(graph, 2, 5, 6);
+        addFriends(graph, 3, 1, 5, 6);
+        addFriends(graph, 4, 2, 5, 7);
+
+        assertEquals(List.of(new Candidate(5, 3), new Candidate(6, 2), new Candidate(7, 1)),
+                suggestions(graph, Long.MAX_VALUE, Integer.MAX_VALUE).suggest(1, 10),
+                "Сам пользователь и его друзья не предлагаются, при равенстве раньше меньший id");
+        assertEquals(List.of(new Candidate(5, 3)), suggestions(graph, Long.MAX_VALUE, Integer.MAX_VALUE).suggest(1, 1));
+    }
+
+    //Параллельный счет на ForkJoin дает то же, что и последовательный
+    @Test
+    public void parallelCountMatchesSequentialTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            graph.add(1 + random.nextInt(2000), 1 + random.nextInt(2000));
+        }
+        for (long userId = 1; userId <= 20; userId++) {
+            assertEquals(suggestions(graph, Long.MAX_VALUE, Integer.MAX_VALUE).suggest(userId, 50),
+                    suggestions(graph, 1, Integer.MAX_VALUE).suggest(userId, 50), "Пользователь " + userId);
+        }
+    }
+
+    //Подсказки из кэша не предлагают тех, кто стал другом после расчета
+    @Test
+    public void cachedSuggestionsSkipNewFriendsTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        addFriends(graph, 1, 2, 3);
+        addFriends(graph, 2, 5, 6);
+        addFriends(graph, 3, 5);
+        FriendSuggestions suggestions = suggestions(graph, Long.MAX_VALUE, 1);
+        assertEquals(List.of(new Candidate(5, 2), new Candidate(6, 1)), suggestions.suggest(1, 10));
+
+        graph.add(1, 5);
+        assertEquals(List.of(new Candidate(6, 1)), suggestions.suggest(1, 10));
+    }
+
+    private static FriendSuggestions suggestions(FriendshipGraph graph, long parallelThreshold, int cachedMinFriends) {
+        return new FriendSuggestions(graph, 1000, 1000, parallelThreshold, cachedMinFriends, 200, Duration.ofMinutes(5),
+                100);
+    }
+
+    private static void addFriends(FriendshipGraph graph, long userId, long... friendIds) {
+        for (long friendId : friendIds) {
+            graph.add(userId, friendId);
+        }
+    }
+}
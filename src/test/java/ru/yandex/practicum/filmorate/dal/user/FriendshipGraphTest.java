@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FriendshipGraphTest {
+
+    @Test
+    public void addAndRemoveKeepFriendsSortedTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        graph.add(1, 5);
+        graph.add(1, 2);
+        graph.add(1, 9);
+        graph.add(1, 2);
+        assertArrayEquals(new long[]{2, 5, 9}, graph.getFriends(1), "Друзья должны быть отсортированы без повторов");
+
+        graph.remove(1, 5);
+        graph.remove(1, 7);
+        assertArrayEquals(new long[]{2, 9}, graph.getFriends(1), "Друг не удален");
+        assertTrue(graph.hasFriend(1, 9));
+        assertFalse(graph.hasFriend(9, 1), "Дружба односторонняя");
+        assertArrayEquals(new long[]{1}, graph.getFriendedBy(9), "Обратный граф не обновлен");
+        assertArrayEquals(new long[0], graph.getFriendedBy(5), "Удаленная дружба осталась в обратном графе");
+    }
+
+    @Test
+    public void loaderPublishesWholeGraphTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        graph.add(7, 8);
+        FriendshipGraph.Loader loader = graph.loader();
+        loader.put(1, 3);
+        loader.put(1, 2);
+        loader.put(2, 3);
+        assertArrayEquals(new long[]{8}, graph.getFriends(7), "До publish виден прежний граф");
+
+        loader.publish();
+        assertArrayEquals(new long[]{2, 3}, graph.getFriends(1));
+        assertArrayEquals(new long[]{3}, graph.getCommonFriends(1, 2));
+        assertArrayEquals(new long[]{1, 2}, graph.getFriendedBy(3), "Обратный граф не построен при загрузке");
+        assertArrayEquals(new long[0], graph.getFriends(7), "Прежний граф должен быть заменен");
+    }
+
+    //Слияние (близкие размеры) и галопирующий поиск (большой перекос) дают то же, что и перебор
+    @Test
+    public void intersectionMatchesBruteForceTest() {
+        Random random = new Random(42);
+        for (int[] sizes : new int[][]{{0, 10}, {50, 60}, {3, 100_000}, {1000, 100_000}, {100_000, 100_000}}) {
+            long[] left = randomSorted(random, sizes[0]);
+            long[] right = randomSorted(random, sizes[1]);
+            long[] expected = Arrays.stream(left).filter(id -> Arrays.binarySearch(right, id) >= 0).toArray();
+            assertArrayEquals(expected, FriendshipGraph.intersect(left, right), "Размеры " + Arrays.toString(sizes));
+            assertArrayEquals(expected, FriendshipGraph.intersect(right, left), "Размеры " + Arrays.toString(sizes));
+        }
+    }
+
+    private static long[] randomSorted(Random random, int size) {
+        return LongStream.generate(() -> 1 + random.nextInt(300_000)).distinct().limit(size).sorted().toArray();
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Бенчмарк цепочек дружбы: users пользователей (по умолчанию 200k, -Dbenchmark.users) по 20 случайных друзей.
+//Меряются поиск для случайных пар без кэша (у каждой пары свой экземпляр FriendshipPaths) и повторный запрос
+//той же пары из кэша.
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=FriendshipPathsBenchmark
+@Slf4j
+class FriendshipPathsBenchmark {
+
+    private static final int FRIENDS = 20;
+    private static final int RUNS = 1000;
+
+    @Test
+    void randomPairs() {
+        int users = Integer.getInteger("benchmark.users", 200_000);
+        Random random = new Random(42);
+        FriendshipGraph graph = new FriendshipGraph();
+        FriendshipGraph.Loader loader = graph.loader();
+        for (long userId = 1; userId <= users; userId++) {
+            for (long friendId : random.longs(FRIENDS, 1, users + 1).distinct().toArray()) {
+                loader.put(userId, friendId);
+            }
+        }
+        loader.publish();
+
+        measure(graph, random, users);
+        measure(graph, random, users);
+    }
+
+    //Первый прогон - прогрев JIT, его результаты тоже выводятся
+    private static void measure(FriendshipGraph graph, Random random, int users) {
+        long[] searchNanos = new long[RUNS];
+        long[] cachedNanos = new long[RUNS];
+        int found = 0;
+        int degrees = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long from = 1 + random.nextInt(users);
+            long to = 1 + random.nextInt(users);
+            FriendshipPaths paths = new FriendshipPaths(graph, 10_000_000, 100);
+            long start = System.nanoTime();
+            FriendshipPaths.Path path = paths.find(from, to, 6);
+            searchNanos[i] = System.nanoTime() - start;
+            start = System.nanoTime();
+            paths.find(from, to, 6);
+            cachedNanos[i] = System.nanoTime() - start;
+            if (path.found()) {
+                found++;
+                degrees += path.userIds().length - 1;
+            }
+        }
+        log.info("Найдено цепочек: {} из {}, в среднем {} шагов", found, RUNS, (double) degrees / Math.max(found, 1));
+        log.info("Поиск: {}", percentiles(searchNanos));
+        log.info("Из кэша: {}", percentiles(cachedNanos));
+        assertTrue(found > RUNS / 2, "На случайном графе почти все пары должны быть связаны за 6 шагов");
+    }
+
+    private static String percentiles(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return String.format("p50 %.3f мс, p99 %.3f мс", sorted[sorted.length / 2] / 1e6,
+                sorted[sorted.length * 99 / 100] / 1e6);
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.dal.user;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.dal.user.FriendshipPaths.Path;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FriendshipPathsTest {
+
+    //Длина цепочки совпадает с обычным поиском в ширину, каждый шаг цепочки - существующая дружба
+    @Test
+    public void shortestPathMatchesBruteForceTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        Random random = new Random(42);
+        for (int i = 0; i < 6000; i++) {
+            graph.add(1 + random.nextInt(2000), 1 + random.nextInt(2000));
+        }
+        FriendshipPaths paths = new FriendshipPaths(graph, Long.MAX_VALUE, 100);
+        for (int i = 0; i < 300; i++) {
+            long from = 1 + random.nextInt(2000);
+            long to = 1 + random.nextInt(2000);
+            int expected = distance(graph, from, to, 6);
+            Path path = paths.find(from, to, 6);
+            assertFalse(path.exhausted());
+            assertEquals(expected, path.userIds().length - 1, "Цепочка " + from + " -> " + to);
+            if (path.found()) {
+                assertEquals(from, path.userIds()[0]);
+                assertEquals(to, path.userIds()[path.userIds().length - 1]);
+                for (int j = 1; j < path.userIds().length; j++) {
+                    assertTrue(graph.hasFriend(path.userIds()[j - 1], path.userIds()[j]), "Нет дружбы в цепочке");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void budgetStopsSearchTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        for (long id = 2; id <= 10_000; id++) {
+            graph.add(1, id);
+            graph.add(10_000 + id, 30_000);
+        }
+        graph.add(10_000, 50_000);
+        assertTrue(new FriendshipPaths(graph, 1000, 100).find(1, 30_000, 6).exhausted(),
+                "Поиск между двумя популярными пользователями должен остановиться по бюджету");
+        Path notFound = new FriendshipPaths(graph, Long.MAX_VALUE, 100).find(1, 30_000, 6);
+        assertFalse(notFound.exhausted() || notFound.found(), "Без бюджета цепочки просто нет");
+        assertArrayEquals(new long[]{1, 10_000, 50_000}, new FriendshipPaths(graph, 10, 100).find(1, 50_000, 6)
+                .userIds(), "Обратный ход от пользователя с одной входящей связью обходит популярного пользователя");
+        assertArrayEquals(new long[]{5}, new FriendshipPaths(graph, 0, 100).find(5, 5, 6).userIds(),
+                "Цепочка от пользователя к нему самому - он сам");
+    }
+
+    @Test
+    public void cacheInvalidatedByFriendshipChangesTest() {
+        FriendshipGraph graph = new FriendshipGraph();
+        graph.add(1, 2);
+        graph.add(2, 3);
+        FriendshipPaths paths = new FriendshipPaths(graph, Long.MAX_VALUE, 100);
+        Path path = paths.find(1, 3, 6);
+        assertSame(path, paths.find(1, 3, 6), "Без изменений дружбы цепочка берется из кэша");
+
+        graph.add(1, 3);
+        Path changed = paths.find(1, 3, 6);
+        assertNotSame(path, changed);
+        assertArrayEquals(new long[]{1, 3}, changed.userIds(), "Новая дружба не учтена");
+        graph.remove(1, 2);
+        graph.remove(1, 3);
+        assertFalse(paths.find(1, 3, 6).found(), "Удаленная дружба не учтена");
+    }
+
+    private static int distance(FriendshipGraph graph, long from, long to, int maxDepth) {
+        Map<Long, Integer> depths = new HashMap<>(Map.of(from, 0));
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        queue.add(from);
+        while (!queue.isEmpty()) {
+            long id = queue.poll();
+            if (id == to) {
+                return depths.get(id);
+            }
+            if (depths.get(id) == maxDepth) {
+                continue;
+            }
+            for (long friendId : graph.getFriends(id)) {
+                if (depths.putIfAbsent(friendId, depths.get(id) + 1) == null) {
+                    queue.add(friendId);
+                }
+            }
+        }
+        return -1;
+    }
+}
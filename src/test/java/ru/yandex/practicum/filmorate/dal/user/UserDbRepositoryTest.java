@@ -8,10 +8,37 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dal.GroupCommitterFactory;
+import ru.yandex.practicum.filmorate.dal.film.FilmCache;
+import ru.yandex.practicum.filmorate.dal.film.FilmDbRepository;
+import ru.yandex.practicum.filmorate.dal.film.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.dal.film.FilmSimilarityIndex;
+import ru.yandex.practicum.filmorate.dal.film.GenreDbRepository;
+import ru.yandex.practicum.filmorate.dal.film.LikeMatrix;
+import ru.yandex.practicum.filmorate.dal.film.MpaDbRepository;
+import ru.yandex.practicum.filmorate.dal.film.PopularityIndex;
+import ru.yandex.practicum.filmorate.dal.film.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.dal.film.TrendingIndex;
+import ru.yandex.practicum.filmorate.dal.film.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.dal.film.mapper.MpaRowMapper;
 import ru.yandex.practicum.filmorate.dal.user.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,7 +47,10 @@ import static org.junit.jupiter.api.Assertions.*;
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({UserDbRepository.class, UserRowMapper.class})
+@Import({UserDbRepository.class, UserRowMapper.class, FriendshipGraph.class, FriendSuggestions.class, FriendshipPaths.class,
+        LikeMatrix.class, GroupCommitterFactory.class, FilmDbRepository.class, FilmRowMapper.class, GenreRowMapper.class,
+        MpaRowMapper.class, PopularityIndex.class, TrendingIndex.class, FilmCache.class, FilmSimilarityIndex.class,
+        FilmFeatureIndex.class, ReferenceDataRegistry.class, GenreDbRepository.class, MpaDbRepository.class})
 class UserDbRepositoryTest {
     private final UserDbRepository userDbRepository;
 
@@ -37,4 +67,151 @@ class UserDbRepositoryTest {
         User user1 = userDbRepository.getUserById(1L);
         assertEquals(user, user1, "Пользователи не совпадают");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getPageTest() {
+        for (int i = 1; i <= 3; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+        }
+        List<User> firstPage = userDbRepository.getPage(0, 2);
+        assertEquals(List.of("login1", "login2"), firstPage.stream().map(User::getLogin).toList(),
+                "Первая страница не совпадает");
+        List<User> secondPage = userDbRepository.getPage(firstPage.get(1).getId(), 2);
+        assertEquals(List.of("login3"), secondPage.stream().map(User::getLogin).toList(),
+                "Вторая страница не совпадает");
+    }
+
+    @Test
+    public void addFriendsTest() {
+        for (int i = 1; i <= 3; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+        }
+        userDbRepository.addToFriends(1L, 2L);
+
+        assertEquals(Set.of(1L, 3L), userDbRepository.findExistingIds(List.of(1L, 3L, 42L)),
+                "Найдены не те пользователи");
+        int added = userDbRepository.addFriends(List.of(new Friendship(1L, 2L), new Friendship(1L, 3L),
+                new Friendship(2L, 3L)));
+        assertEquals(2, added, "Существующая дружба записана повторно");
+        assertEquals(List.of("login2", "login3"), userDbRepository.getFriendsListOfUser(1L).stream()
+                .map(User::getLogin).sorted().toList(), "Друзья пользователя не совпадают");
+        assertEquals(List.of("login3"), userDbRepository.getFriendsListOfUser(2L).stream()
+                .map(User::getLogin).toList(), "Друзья пользователя не совпадают");
+    }
+
+    @Test
+    public void commonFriendsTest() {
+        for (int i = 1; i <= 4; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+        }
+        userDbRepository.addFriends(List.of(new Friendship(1L, 3L), new Friendship(1L, 4L),
+                new Friendship(2L, 3L), new Friendship(2L, 4L)));
+        assertEquals(List.of("login3", "login4"), userDbRepository.getListOfCommonFriends(1L, 2L).stream()
+                .map(User::getLogin).toList(), "Общие друзья не совпадают");
+
+        userDbRepository.removeFromFriends(2L, 3L);
+        assertEquals(List.of("login4"), userDbRepository.getListOfCommonFriends(1L, 2L).stream()
+                .map(User::getLogin).toList(), "Удаленная дружба осталась в общих друзьях");
+        assertEquals(List.of(), userDbRepository.getListOfCommonFriends(1L, 3L), "У пользователя 3 нет друзей");
+
+        List<FriendSuggestion> suggestions = userDbRepository.getFriendSuggestions(3L, 10);
+        assertEquals(List.of(), suggestions, "У пользователя без друзей нет подсказок");
+        userDbRepository.addToFriends(3L, 1L);
+        suggestions = userDbRepository.getFriendSuggestions(3L, 10);
+        assertEquals(List.of("login4"), suggestions.stream().map(s -> s.getUser().getLogin()).toList(),
+                "Друг друга должен быть предложен");
+        assertEquals(1, suggestions.getFirst().getMutualFriends());
+    }
+
+    @Test
+    public void friendshipPathTest() {
+        for (int i = 1; i <= 5; i++) {
+            userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build());
+        }
+        userDbRepository.addFriends(List.of(new Friendship(1L, 2L), new Friendship(2L, 3L),
+                new Friendship(3L, 4L), new Friendship(4L, 5L)));
+        assertEquals(List.of("login1", "login2", "login3", "login4", "login5"),
+                userDbRepository.getFriendshipPath(1L, 5L, 6).stream().map(User::getLogin).toList(),
+                "Пользователи цепочки должны идти по порядку");
+        assertThrows(DataNotFoundException.class, () -> userDbRepository.getFriendshipPath(1L, 5L, 3),
+                "Цепочка длиннее maxDepth не должна находиться");
+        assertThrows(DataNotFoundException.class, () -> userDbRepository.getFriendshipPath(5L, 1L, 6),
+                "Дружба односторонняя, обратной цепочки нет");
+
+        userDbRepository.addToFriends(2L, 5L);
+        assertEquals(List.of("login1", "login2", "login5"), userDbRepository.getFriendshipPath(1L, 5L, 6).stream()
+                .map(User::getLogin).toList(), "Закэшированная цепочка не обновлена после новой дружбы");
+        userDbRepository.removeFromFriends(2L, 5L);
+        assertEquals(5, userDbRepository.getFriendshipPath(1L, 5L, 6).size(),
+                "Закэшированная цепочка не обновлена после удаления дружбы");
+    }
+
+    //Без транзакции теста запросы дружбы идут через групповую фиксацию: каждая пара отправляется дважды
+    //одновременно, и ровно один из двух запросов должен получить DuplicatedDataException
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void groupCommitFriendsTest() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            ids.add(userDbRepository.create(User.builder()
+                    .email("email" + i + "@email.com")
+                    .login("login" + i)
+                    .name("Name" + i)
+                    .birthday(LocalDate.of(2000, 8, i))
+                    .build()).getId());
+        }
+        List<Callable<Boolean>> requests = new ArrayList<>();
+        for (Long userId : ids) {
+            for (Long friendId : ids) {
+                if (!userId.equals(friendId)) {
+                    Callable<Boolean> request = () -> {
+                        try {
+                            userDbRepository.addToFriends(userId, friendId);
+                            return true;
+                        } catch (DuplicatedDataException e) {
+                            return false;
+                        }
+                    };
+                    requests.add(request);
+                    requests.add(request);
+                }
+            }
+        }
+        ExecutorService clients = Executors.newFixedThreadPool(requests.size());
+        try {
+            long added = 0;
+            for (Future<Boolean> result : clients.invokeAll(requests)) {
+                if (result.get()) {
+                    added++;
+                }
+            }
+            assertEquals(requests.size() / 2, added, "Каждая дружба должна быть записана ровно один раз");
+        } finally {
+            clients.shutdown();
+        }
+        for (Long userId : ids) {
+            assertEquals(ids.size() - 1, userDbRepository.getFriendsListOfUser(userId).size(),
+                    "Друзья пользователя не совпадают");
+        }
+    }
+}
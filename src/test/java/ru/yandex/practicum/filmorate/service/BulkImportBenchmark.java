@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.dto.BulkResultDto;
+import ru.yandex.practicum.filmorate.dto.EdgeImportResultDto;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.user.UserService;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Бенчмарк потокового импорта (по умолчанию 100k записей, меняется через -Dbenchmark.records).
+//Вход генерируется на лету и целиком в памяти не лежит. Для сравнения те же фильмы создаются по одному через create.
+//Связи (лайки и дружба) - по умолчанию 1M записей, меняется через -Dbenchmark.edges.
+//В обычный прогон тестов не входит, запуск: mvn test -Dtest=BulkImportBenchmark
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@Slf4j
+@SpringBootTest
+class BulkImportBenchmark {
+
+    private static final int SINGLE_CREATES = 10_000;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void bulkImport() {
+        int records = Integer.getInteger("benchmark.records", 100_000);
+
+        measure("create по одному, фильмы", SINGLE_CREATES, created -> {
+            for (int i = 0; i < SINGLE_CREATES; i++) {
+                filmService.create(Film.builder()
+                        .name("single" + i)
+                        .description("description")
+                        .releaseDate(LocalDate.of(2000, 1, 1))
+                        .duration(100L)
+                        .mpa(new Mpa(i % 5 + 1, null))
+                        .genres(List.of(new Genres(i % 6 + 1, null), new Genres((i + 1) % 6 + 1, null)))
+                        .build());
+                created.accept(1);
+            }
+        });
+        measure("bulk, фильмы", records, created -> filmService.bulkCreate(ndjson(records, i ->
+                "{\"name\":\"film" + i + "\",\"description\":\"description\",\"releaseDate\":\"2000-01-01\"," +
+                        "\"duration\":100,\"mpa\":{\"id\":" + (i % 5 + 1) + "},\"genres\":[{\"id\":" + (i % 6 + 1) +
+                        "},{\"id\":" + ((i + 1) % 6 + 1) + "}]}"), result -> count(result, created)));
+        measure("bulk, пользователи", records, created -> userService.bulkCreate(ndjson(records, i ->
+                "{\"login\":\"user" + i + "\",\"email\":\"user" + i + "@mail.ru\",\"birthday\":\"1990-01-01\"}"),
+                result -> count(result, created)));
+    }
+
+    @Test
+    void bulkEdges() {
+        int edges = Integer.getInteger("benchmark.edges", 1_000_000);
+        int users = 10_000;
+        int films = 1_000;
+        userService.bulkCreate(ndjson(users, i ->
+                "{\"login\":\"user" + i + "\",\"email\":\"user" + i + "@mail.ru\",\"birthday\":\"1990-01-01\"}"),
+                result -> count(result, created -> { }));
+        filmService.bulkCreate(ndjson(films, i ->
+                "{\"name\":\"film" + i + "\",\"description\":\"description\",\"releaseDate\":\"2000-01-01\"," +
+                        "\"duration\":100,\"mpa\":{\"id\":1}}"), result -> count(result, created -> { }));
+
+        measure("addLikeToFilm по одному", SINGLE_CREATES, created -> {
+            for (int i = 0; i < SINGLE_CREATES; i++) {
+                filmService.addLikeToFilm((long) i % films + 1, (long) i / films + 1 + users / 2);
+                created.accept(1);
+            }
+        });
+        //Каждое ребро встречается во входе дважды: половина записей - повторы
+        measure("bulk, лайки", edges, created -> {
+            EdgeImportResultDto result = filmService.bulkAddLikes(ndjson(edges, i ->
+                    "{\"filmId\":" + (i / 2 % films + 1) + ",\"userId\":" + (i / 2 / films % users + 1) + "}"));
+            log.info("Лайки: {}", result);
+            created.accept(result.getAccepted());
+        });
+        measure("bulk, дружба", edges, created -> {
+            EdgeImportResultDto result = userService.bulkAddFriends(ndjson(edges, i ->
+                    "{\"userId\":" + (i / 2 % users + 1) + ",\"friendId\":" + ((i / 2 % users + 1 + i / 2 / users)
+                            % users + 1) + "}"));
+            log.info("Дружба: {}", result);
+            created.accept(result.getAccepted());
+        });
+    }
+
+    private void measure(String name, int records, Consumer<LongConsumer> run) {
+        AtomicLong created = new AtomicLong();
+        long start = System.nanoTime();
+        run.accept(created::addAndGet);
+        long elapsed = System.nanoTime() - start;
+        log.info("{}: {} записей за {} мс, {} записей/с", name, created.get(), elapsed / 1_000_000,
+                created.get() * 1_000_000_000L / elapsed);
+        assertEquals(records, created.get());
+    }
+
+    private static void count(BulkResultDto result, LongConsumer created) {
+        if (result.getError() != null) {
+            throw new AssertionError("Запись " + result.getIndex() + " не импортирована: " + result.getError());
+        }
+        created.accept(1);
+    }
+
+    //NDJSON из records строк, каждая строка создается только в момент чтения
+    private static InputStream ndjson(int records, IntFunction<String> line) {
+        return new SequenceInputStream(new Enumeration<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next < records;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return new ByteArrayInputStream((line.apply(next++) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+}
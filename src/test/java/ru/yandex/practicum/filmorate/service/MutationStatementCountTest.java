@@ -0,0 +1,196 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exceptions.DataNotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genres;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.user.UserService;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//Число запросов к базе на каждое изменение лайков, дружбы и удаление. Считаются выполнения запросов
+//(пакет - один запрос) только из потока теста, поэтому фоновые задачи не влияют на счет.
+//Групповая фиксация выключена, чтобы запись выполнялась в потоке теста.
+@DirtiesContext
+@SpringBootTest(properties = "filmorate.group-commit.enabled=false")
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class MutationStatementCountTest {
+
+    private static final AtomicInteger STATEMENTS = new AtomicInteger();
+    private static volatile Thread countedThread;
+
+    private final FilmService filmService;
+    private final UserService userService;
+
+    @Test
+    void likeMutations() {
+        long filmId = createFilm("film");
+        long userId = createUser("liker");
+
+        //Вставка лайка и увеличение likes_count, без чтения фильма и пользователя
+        assertEquals(2, countStatements(() -> filmService.addLikeToFilm(filmId, userId)));
+        assertEquals(1, filmService.getFilmById(filmId).getLikesCount());
+        assertEquals(1, countStatements(() -> assertThrows(DuplicatedDataException.class,
+                () -> filmService.addLikeToFilm(filmId, userId))));
+        assertEquals(1, countStatements(() -> assertEquals("Фильм с Id: 999999 не найден",
+                assertThrows(DataNotFoundException.class, () -> filmService.addLikeToFilm(999999L, userId))
+                        .getMessage())));
+        assertEquals(1, countStatements(() -> assertEquals("Пользователь с Id: 999999 не найден",
+                assertThrows(DataNotFoundException.class, () -> filmService.addLikeToFilm(filmId, 999999L))
+                        .getMessage())));
+
+        //Удаление лайка с возвратом времени постановки и уменьшение likes_count
+        assertEquals(2, countStatements(() -> filmService.removeLikeFromFilm(filmId, userId)));
+        assertEquals(0, filmService.getFilmById(filmId).getLikesCount());
+        //Снимать нечего: дополнительный запрос отличает отсутствующий фильм от отсутствующего лайка
+        assertEquals(2, countStatements(() -> filmService.removeLikeFromFilm(filmId, userId)));
+        assertThrows(DataNotFoundException.class, () -> filmService.removeLikeFromFilm(999999L, userId));
+    }
+
+    @Test
+    void friendMutations() {
+        long userId = createUser("user");
+        long friendId = createUser("friend");
+
+        assertEquals(1, countStatements(() -> userService.addToFriends(userId, friendId)));
+        assertEquals(1, countStatements(() -> assertThrows(DuplicatedDataException.class,
+                () -> userService.addToFriends(userId, friendId))));
+        assertEquals(1, countStatements(() -> assertEquals("Пользователь с Id: 999999 не найден",
+                assertThrows(DataNotFoundException.class, () -> userService.addToFriends(userId, 999999L))
+                        .getMessage())));
+        assertEquals(1, countStatements(() -> assertEquals("Пользователь с Id: 999999 не найден",
+                assertThrows(DataNotFoundException.class, () -> userService.addToFriends(999999L, friendId))
+                        .getMessage())));
+
+        assertEquals(1, countStatements(() -> userService.removeFromFriends(userId, friendId)));
+        assertEquals(List.of(), userService.getFriendsListOfUser(userId));
+        assertThrows(DataNotFoundException.class, () -> userService.removeFromFriends(userId, 999999L));
+    }
+
+    @Test
+    void deletes() {
+        long filmId = filmService.create(Film.builder()
+                .name("deleted")
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .genres(List.of(new Genres(2, null), new Genres(1, null)))
+                .build()).getId();
+        long userId = createUser("deleted");
+
+        //Удаленные фильм (с жанрами) и пользователь возвращаются тем же запросом, что их удаляет.
+        //Перед пользователем одним запросом снимаются его лайки, чтобы уменьшить likes_count фильмов
+        assertEquals(1, countStatements(() -> assertEquals(List.of(1, 2), filmService.delete(filmId).getGenres()
+                .stream().map(Genres::getId).toList())));
+        assertEquals(2, countStatements(() -> assertEquals("deleted", userService.delete(userId).getName())));
+        assertEquals(1, countStatements(() -> assertThrows(DataNotFoundException.class,
+                () -> filmService.delete(filmId))));
+        assertEquals(2, countStatements(() -> assertThrows(DataNotFoundException.class,
+                () -> userService.delete(userId))));
+    }
+
+    private static int countStatements(Runnable mutation) {
+        STATEMENTS.set(0);
+        countedThread = Thread.currentThread();
+        try {
+            mutation.run();
+        } finally {
+            countedThread = null;
+        }
+        return STATEMENTS.get();
+    }
+
+    private long createFilm(String name) {
+        return filmService.create(Film.builder()
+                .name(name)
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .build()).getId();
+    }
+
+    private long createUser(String login) {
+        return userService.create(User.builder()
+                .email(login + "@statements.ru")
+                .login(login + "Statements")
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+
+    //Оборачивает DataSource приложения: соединения и запросы - прокси, считающие выполнения запросов
+    @TestConfiguration
+    static class StatementCountingConfig {
+
+        @Bean
+        static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource) || bean instanceof DelegatingDataSource) {
+                        return bean;
+                    }
+                    return new DelegatingDataSource(dataSource) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return countingProxy(Connection.class, super.getConnection());
+                        }
+                    };
+                }
+            };
+        }
+
+        private static <T> T countingProxy(Class<T> type, T target) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute") && countedThread == Thread.currentThread()) {
+                            STATEMENTS.incrementAndGet();
+                        }
+                        Object result = invoke(method, target, args);
+                        if (type == Connection.class && (method.getName().startsWith("prepare")
+                                || method.getName().equals("createStatement"))) {
+                            return wrapStatement(method, result);
+                        }
+                        return result;
+                    }));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <S> S wrapStatement(Method method, Object statement) {
+            return countingProxy((Class<S>) method.getReturnType(), (S) statement);
+        }
+
+        private static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
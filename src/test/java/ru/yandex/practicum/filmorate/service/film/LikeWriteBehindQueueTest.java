@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dto.WriteBehindStatsDto;
+import ru.yandex.practicum.filmorate.exceptions.WriteQueueFullException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.user.UserService;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Фоновая запись отключена большим интервалом, очередь пишется в базу только явным flush
+@DirtiesContext
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval=PT1H",
+        "filmorate.likes.write-behind.capacity=2",
+        "filmorate.likes.write-behind.offer-timeout=PT0S"})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class LikeWriteBehindQueueTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStorage filmStorage;
+
+    @Test
+    void coalesceBackpressureAndFlush() {
+        long filmId = filmService.create(Film.builder()
+                .name("film")
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100L)
+                .mpa(new Mpa(1, null))
+                .build()).getId();
+        long firstUserId = createUser("first");
+        long secondUserId = createUser("second");
+        long thirdUserId = createUser("third");
+
+        filmService.addLikeToFilm(filmId, firstUserId);
+        filmService.removeLikeFromFilm(filmId, firstUserId);
+        filmService.addLikeToFilm(filmId, firstUserId);
+        filmService.addLikeToFilm(filmId, secondUserId);
+
+        //Пользователь сразу видит свой лайк, хотя в базе его еще нет
+        assertTrue(filmService.hasLike(filmId, firstUserId));
+        assertFalse(filmStorage.hasLike(filmId, firstUserId));
+        assertEquals(0, filmService.getFilmById(filmId).getLikesCount());
+
+        //Новая пара в заполненную очередь не помещается, а операция над уже ожидающей парой принимается
+        assertThrows(WriteQueueFullException.class, () -> filmService.addLikeToFilm(filmId, thirdUserId));
+        filmService.addLikeToFilm(filmId, secondUserId);
+
+        WriteBehindStatsDto stats = filmService.getLikeWriteBehindStats();
+        assertEquals(2, stats.getPending());
+        assertEquals(5, stats.getEnqueued());
+        assertEquals(3, stats.getCoalesced());
+        assertEquals(1, stats.getRejected());
+
+        filmService.flushLikeWriteBehind();
+        assertTrue(filmStorage.hasLike(filmId, firstUserId));
+        assertTrue(filmStorage.hasLike(filmId, secondUserId));
+        assertEquals(2, filmService.getFilmById(filmId).getLikesCount());
+
+        //Лайк и его снятие до записи не меняют базу, снятие существующего лайка записывается
+        filmService.addLikeToFilm(filmId, thirdUserId);
+        filmService.removeLikeFromFilm(filmId, thirdUserId);
+        filmService.removeLikeFromFilm(filmId, firstUserId);
+        assertFalse(filmService.hasLike(filmId, firstUserId));
+        filmService.flushLikeWriteBehind();
+        assertFalse(filmStorage.hasLike(filmId, firstUserId));
+        assertFalse(filmStorage.hasLike(filmId, thirdUserId));
+        assertEquals(1, filmService.getFilmById(filmId).getLikesCount());
+
+        stats = filmService.getLikeWriteBehindStats();
+        assertEquals(0, stats.getPending());
+        assertEquals(3, stats.getWritten());
+    }
+
+    private long createUser(String login) {
+        return userService.create(User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+}
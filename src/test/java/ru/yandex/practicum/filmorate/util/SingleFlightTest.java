@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    @Test
+    public void concurrentCallsShareOneExecutionTest() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Integer> leader = executor.submit(() -> flight.execute("film", 0, () -> {
+                started.countDown();
+                await(release);
+                return executions.incrementAndGet();
+            }));
+            started.await();
+            Future<Integer> follower = executor.submit(() -> flight.execute("film", 0, executions::incrementAndGet));
+            while (flight.getCollapsed() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS));
+            assertEquals(1, follower.get(5, TimeUnit.SECONDS), "Второй вызов должен получить результат первого");
+        }
+        assertEquals(1, executions.get(), "Вызов выполнен больше одного раза");
+        assertEquals(1, flight.getCalls());
+        assertEquals(1, flight.getCollapsed());
+    }
+
+    @Test
+    public void callStartedBeforeWriteIsNotSharedTest() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Integer> stale = executor.submit(() -> flight.execute("film", 0, () -> {
+                started.countDown();
+                await(release);
+                return 0;
+            }));
+            started.await();
+            //Запись завершилась после начала первого вызова: вызывающий со следующей версией читает сам
+            assertEquals(1, flight.execute("film", 1, () -> 1), "Получен результат чтения до записи");
+            release.countDown();
+            assertEquals(0, stale.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, flight.getCalls());
+        assertEquals(0, flight.getCollapsed());
+    }
+
+    @Test
+    public void failureIsSharedAndNotRememberedTest() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        IllegalStateException failure = new IllegalStateException("нет фильма");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Integer> leader = executor.submit(() -> flight.execute("film", 0, () -> {
+                started.countDown();
+                await(release);
+                throw failure;
+            }));
+            started.await();
+            Future<Integer> follower = executor.submit(() -> flight.execute("film", 0, () -> 1));
+            while (flight.getCollapsed() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<Integer> result : List.of(leader, follower)) {
+                Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(2, flight.execute("film", 0, () -> 2), "Ошибка не должна запоминаться");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}